@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks formatting artifact keys, and formatting and parsing the classpath state file.
+ *
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClasspathKeyBenchmark
+{
+  @Param({"10", "100", "1000", "5000"})
+  public int dependencies;
+
+  private List<Artifact> artifacts;
+
+  private File repository;
+
+  private List<ClasspathEntry> entries;
+
+  private String state;
+
+  @Setup
+  public void setUp() throws IOException {
+    artifacts = Fixtures.artifacts(dependencies);
+    repository = new File("/repository");
+    entries = new ArrayList<ClasspathEntry>(dependencies);
+    for (Artifact artifact : artifacts) {
+      entries.add(new ClasspathEntry(artifact.getGroupId(), artifact.getArtifactId(), "jar", artifact.getClassifier(),
+          artifact.getBaseVersion(), artifact.getFile(), 123456, "0123456789abcdef0123456789abcdef01234567"));
+    }
+    String formatted = ClasspathUtils.format(entries, repository);
+    state = formatted.substring(ClasspathUtils.HEADER.length() + 1);
+  }
+
+  @Benchmark
+  public void formatArtifactKey(final Blackhole blackhole) {
+    for (Artifact artifact : artifacts) {
+      blackhole.consume(ClasspathUtils.formatArtifactKey(artifact));
+    }
+  }
+
+  @Benchmark
+  public String formatState() throws IOException {
+    return ClasspathUtils.format(entries, repository);
+  }
+
+  @Benchmark
+  public List<ClasspathEntry> parseState() throws IOException {
+    return ClasspathUtils.parse(state, repository);
+  }
+}
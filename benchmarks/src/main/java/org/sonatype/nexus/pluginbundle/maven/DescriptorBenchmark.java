@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Reader;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Writer;
+
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.nexus.pluginbundle.maven.PluginDescriptorGenerator.MODEL_ENCODING;
+
+/**
+ * Benchmarks generating plugin descriptors and writing and reading them as XML.
+ *
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorBenchmark
+{
+  @Param({"10", "100", "1000", "5000"})
+  public int dependencies;
+
+  private PluginDescriptorGenerator generator;
+
+  private List<GAVCoordinate> coordinates;
+
+  private PluginMetadata metadata;
+
+  private byte[] xml;
+
+  @Setup
+  public void setUp() throws IOException {
+    generator = new PluginDescriptorGenerator(new DefaultBuildContext());
+    coordinates = Fixtures.coordinates(dependencies);
+    metadata = generate();
+    xml = write();
+  }
+
+  @Benchmark
+  public PluginMetadata generate() throws IOException {
+    PluginDescriptorGenerationRequest request = new PluginDescriptorGenerationRequest();
+    request.setGroupId("org.example");
+    request.setArtifactId("example-plugin");
+    request.setVersion("1.0");
+    request.setName("Example Plugin");
+    request.addLicense("ASL 2.0", "http://www.apache.org/licenses/LICENSE-2.0");
+    for (int i = 0; i < coordinates.size(); i++) {
+      GAVCoordinate coordinate = coordinates.get(i);
+      if (i % 10 == 0) {
+        request.addPluginDependency(coordinate);
+      }
+      else {
+        request.addClasspathDependency(coordinate);
+        request.setPackageNames(coordinate, Fixtures.packageNames(i));
+      }
+    }
+    generator.generate(request);
+    return request.getPluginMetadata();
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(xml == null ? 8192 : xml.length);
+    Writer writer = new OutputStreamWriter(output, MODEL_ENCODING);
+    new PluginModelXpp3Writer().write(writer, metadata);
+    writer.flush();
+    return output.toByteArray();
+  }
+
+  @Benchmark
+  public PluginMetadata read() throws IOException, XmlPullParserException {
+    Reader reader = new InputStreamReader(new ByteArrayInputStream(xml), MODEL_ENCODING);
+    return new PluginModelXpp3Reader().read(reader);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.assembly.model.FileItem;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks scanning synthetic jars for the Export-Package header of the OSGi metadata.
+ *
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportedPackagesBenchmark
+{
+  @Param({"10", "100", "1000", "5000"})
+  public int dependencies;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private File directory;
+
+  private List<FileItem> content;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = File.createTempFile("exported-packages", "");
+    if (!directory.delete() || !directory.mkdirs()) {
+      throw new IOException("Failed to create " + directory);
+    }
+    content = new ArrayList<FileItem>(dependencies);
+    for (int i = 0; i < dependencies; i++) {
+      FileItem item = new FileItem();
+      item.setSource(Fixtures.jar(directory, i).getPath());
+      content.add(item);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Benchmark
+  public String getExportedPackages() throws IOException {
+    return OSGiUtils.getExportedPackages(content, threads, null);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Synthetic dependencies shaped like those of real plugins, shared by the benchmarks.
+ *
+ * @since 1.4
+ */
+final class Fixtures
+{
+  private Fixtures() {
+    // empty
+  }
+
+  static String groupId(final int i) {
+    return "org.example.group" + (i % 50);
+  }
+
+  static String artifactId(final int i) {
+    return "artifact-" + i;
+  }
+
+  static String version(final int i) {
+    return "1." + (i % 10) + "." + (i % 7) + (i % 5 == 0 ? "-SNAPSHOT" : "");
+  }
+
+  static String classifier(final int i) {
+    return i % 9 == 0 ? "tests" : null;
+  }
+
+  static List<GAVCoordinate> coordinates(final int count) {
+    List<GAVCoordinate> result = new ArrayList<GAVCoordinate>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(new GAVCoordinate(groupId(i), artifactId(i), version(i), classifier(i), "jar", false, i % 3 == 0));
+    }
+    return result;
+  }
+
+  static List<Artifact> artifacts(final int count) {
+    List<Artifact> result = new ArrayList<Artifact>(count);
+    for (int i = 0; i < count; i++) {
+      DefaultArtifact artifact = new DefaultArtifact(groupId(i), artifactId(i), version(i), Artifact.SCOPE_COMPILE,
+          "jar", classifier(i), new DefaultArtifactHandler("jar"));
+      artifact.setFile(new File("/repository/" + artifactId(i) + ".jar"));
+      result.add(artifact);
+    }
+    return result;
+  }
+
+  static List<String> packageNames(final int i) {
+    List<String> result = new ArrayList<String>();
+    String base = groupId(i) + "." + artifactId(i).replace('-', '_');
+    result.add(base);
+    result.add(base + ".internal");
+    result.add(base + ".spi");
+    return result;
+  }
+
+  /**
+   * Writes a jar holding a single class in each of the packages of {@link #packageNames(int)}.
+   */
+  static File jar(final File directory, final int i) throws IOException {
+    File file = new File(directory, artifactId(i) + ".jar");
+    JarOutputStream output = new JarOutputStream(new FileOutputStream(file));
+    try {
+      for (String pkg : packageNames(i)) {
+        output.putNextEntry(new ZipEntry(pkg.replace('.', '/') + "/Type.class"));
+        output.write(new byte[256]);
+        output.closeEntry();
+      }
+      output.close();
+    }
+    finally {
+      IOUtil.close(output);
+    }
+    return file;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks hashing and equality of {@link GAVCoordinate}, as used by the dependency sets of descriptor requests.
+ *
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GAVCoordinateBenchmark
+{
+  @Param({"10", "100", "1000", "5000"})
+  public int dependencies;
+
+  private List<GAVCoordinate> coordinates;
+
+  private List<GAVCoordinate> copies;
+
+  private Set<GAVCoordinate> set;
+
+  @Setup
+  public void setUp() {
+    coordinates = Fixtures.coordinates(dependencies);
+    copies = Fixtures.coordinates(dependencies);
+    set = new HashSet<GAVCoordinate>(coordinates);
+  }
+
+  @Benchmark
+  public void hashCode(final Blackhole blackhole) {
+    for (GAVCoordinate coordinate : coordinates) {
+      blackhole.consume(coordinate.hashCode());
+    }
+  }
+
+  @Benchmark
+  public void equals(final Blackhole blackhole) {
+    for (int i = 0; i < dependencies; i++) {
+      blackhole.consume(coordinates.get(i).equals(copies.get(i)));
+    }
+  }
+
+  @Benchmark
+  public Set<GAVCoordinate> buildSet() {
+    return new HashSet<GAVCoordinate>(coordinates);
+  }
+
+  @Benchmark
+  public void lookup(final Blackhole blackhole) {
+    for (GAVCoordinate copy : copies) {
+      blackhole.consume(set.contains(copy));
+    }
+  }
+}
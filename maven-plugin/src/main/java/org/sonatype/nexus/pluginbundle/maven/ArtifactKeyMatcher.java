@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * Precompiled matcher of artifact keys ({@code <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>}, see
+ * {@link ClasspathUtils#formatArtifactKey}) against a set of patterns.
+ *
+ * Matching cost depends on the length of the key only, not on the number of patterns.
+ *
+ * @since 1.4
+ */
+public abstract class ArtifactKeyMatcher
+{
+  private static final char COLON = ':';
+
+  /**
+   * Returns a matcher of keys starting with any of the given ids followed by a colon, usually {@code
+   * groupId:artifactId}; ie. {@code key.startsWith(id + ":")}.
+   */
+  public static ArtifactKeyMatcher ids(final @Nullable Collection<String> ids) {
+    return new IdMatcher(ids);
+  }
+
+  /**
+   * Returns a matcher of keys starting with any of the given prefixes; ie. {@code key.startsWith(prefix)}.
+   */
+  public static ArtifactKeyMatcher prefixes(final @Nullable Collection<String> prefixes) {
+    return new PrefixMatcher(prefixes);
+  }
+
+  public abstract boolean matches(String key);
+
+  /**
+   * Looks up each colon delimited prefix of the key in a hash set.
+   */
+  private static class IdMatcher
+      extends ArtifactKeyMatcher
+  {
+    private final Set<String> ids;
+
+    private IdMatcher(final @Nullable Collection<String> ids) {
+      this.ids = ids == null ? new HashSet<String>() : new HashSet<String>(ids);
+    }
+
+    @Override
+    public boolean matches(final String key) {
+      if (ids.isEmpty()) {
+        return false;
+      }
+      for (int i = key.indexOf(COLON); i != -1; i = key.indexOf(COLON, i + 1)) {
+        if (ids.contains(key.substring(0, i))) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Walks the key down a character trie of the prefixes.
+   */
+  private static class PrefixMatcher
+      extends ArtifactKeyMatcher
+  {
+    private final Node root = new Node();
+
+    private PrefixMatcher(final @Nullable Collection<String> prefixes) {
+      if (prefixes != null) {
+        for (String prefix : prefixes) {
+          Node node = root;
+          for (int i = 0; i < prefix.length(); i++) {
+            node = node.child(prefix.charAt(i));
+          }
+          node.terminal = true;
+        }
+      }
+    }
+
+    @Override
+    public boolean matches(final String key) {
+      Node node = root;
+      for (int i = 0; node != null; i++) {
+        if (node.terminal) {
+          return true;
+        }
+        if (i == key.length() || node.children == null) {
+          return false;
+        }
+        node = node.children.get(key.charAt(i));
+      }
+      return false;
+    }
+  }
+
+  private static class Node
+  {
+    private Map<Character, Node> children;
+
+    private boolean terminal;
+
+    private Node child(final char c) {
+      if (children == null) {
+        children = new HashMap<Character, Node>();
+      }
+      Node node = children.get(c);
+      if (node == null) {
+        node = new Node();
+        children.put(c, node);
+      }
+      return node;
+    }
+  }
+}
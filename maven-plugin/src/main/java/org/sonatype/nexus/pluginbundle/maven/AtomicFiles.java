@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Writes files through a temporary sibling file which replaces the target once complete, so readers, including
+ * concurrent builds, never see a partially written file.
+ *
+ * @since 1.4
+ */
+public class AtomicFiles
+{
+  private static final String ENCODING = "UTF-8";
+
+  private AtomicFiles() {
+    // empty
+  }
+
+  /**
+   * Creates a unique temporary file next to the given file, creating its directory if needed.
+   */
+  public static File createTemp(final File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    directory.mkdirs();
+    return File.createTempFile("." + file.getName() + "-", ".tmp", directory);
+  }
+
+  /**
+   * Replaces the given file with the given temporary file.
+   */
+  public static void replace(final File temp, final File file) throws IOException {
+    if (!temp.renameTo(file)) {
+      // rename does not replace existing files on all platforms
+      file.delete();
+      if (!temp.renameTo(file)) {
+        throw new IOException("Failed to replace " + file);
+      }
+    }
+  }
+
+  /**
+   * Replaces the given file with the given lines in UTF-8, each terminated by a newline.
+   */
+  public static void writeLines(final File file, final List<String> lines) throws IOException {
+    File temp = createTemp(file);
+    try {
+      Writer output = null;
+      try {
+        output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), ENCODING));
+        for (String line : lines) {
+          output.write(line);
+          output.write('\n');
+        }
+        // failing to flush must not replace the file
+        output.close();
+      }
+      finally {
+        IOUtil.close(output);
+      }
+      replace(temp, file);
+    }
+    finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * Returns the lines of the given UTF-8 file.
+   */
+  public static List<String> readLines(final File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    Reader input = null;
+    try {
+      input = new InputStreamReader(new FileInputStream(file), ENCODING);
+      BufferedReader reader = new BufferedReader(input);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+/**
+ * Cache of the banned {@code groupId:artifactId} dependencies computed for a banned root artifact.
+ *
+ * Lists are shared by all modules of a build session, and collected at most once per root coordinate even when
+ * modules are built concurrently. Lists of release coordinates are also persisted, so later builds do not need to
+ * collect the dependency graph of the root artifact at all.
+ *
+ * @since 1.4
+ */
+public class BannedDependencyCache
+{
+  private static final String HEADER = "# banned dependencies of ";
+
+  private final SessionCache<List<String>> lists = new SessionCache<List<String>>();
+
+  /**
+   * Returns the cache attached to the given session, creating it if needed.
+   */
+  public static BannedDependencyCache get(final RepositorySystemSession session) {
+    return SessionCache.attach(session, BannedDependencyCache.class);
+  }
+
+  /**
+   * Returns the banned dependencies of the given root coordinate, collecting them with the given collector if they
+   * are neither cached in this session nor, for release coordinates, in the given directory.
+   *
+   * @param directory Directory of persisted lists, may be {@code null} to only cache in this session.
+   */
+  public List<String> get(final String coordinate,
+                          final @Nullable File directory,
+                          final Callable<List<String>> collector)
+      throws Exception
+  {
+    try {
+      return lists.get(coordinate, new Callable<List<String>>()
+      {
+        public List<String> call() throws Exception {
+          return Collections.unmodifiableList(load(coordinate, directory, collector));
+        }
+      });
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while collecting banned dependencies", e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw (Error) e.getCause();
+    }
+  }
+
+  private static List<String> load(final String coordinate,
+                                   final @Nullable File directory,
+                                   final Callable<List<String>> collector)
+      throws Exception
+  {
+    File file = directory != null && isRelease(coordinate) ? entryFile(directory, coordinate) : null;
+    if (file != null && file.isFile()) {
+      try {
+        List<String> lines = AtomicFiles.readLines(file);
+        if (!lines.isEmpty() && lines.get(0).equals(HEADER + coordinate)) {
+          return lines.subList(1, lines.size());
+        }
+      }
+      catch (IOException e) {
+        // unreadable entry, collect again
+      }
+    }
+
+    List<String> banned = collector.call();
+    if (file != null) {
+      try {
+        write(file, coordinate, banned);
+      }
+      catch (IOException e) {
+        // the cache is an optimization only
+      }
+    }
+    return banned;
+  }
+
+  /**
+   * Only release coordinates are immutable; snapshots, ranges and meta versions may resolve differently over time.
+   */
+  static boolean isRelease(final String coordinate) {
+    try {
+      DefaultArtifact artifact = new DefaultArtifact(coordinate);
+      String version = artifact.getVersion();
+      return !artifact.isSnapshot()
+          && version.length() > 0
+          && version.indexOf('[') == -1 && version.indexOf('(') == -1
+          && !"LATEST".equals(version) && !"RELEASE".equals(version);
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static File entryFile(final File directory, final String coordinate) {
+    return new File(directory, coordinate.replaceAll("[^A-Za-z0-9._-]", "_") + ".txt");
+  }
+
+  private static void write(final File file, final String coordinate, final List<String> banned) throws IOException {
+    List<String> lines = new ArrayList<String>(banned.size() + 1);
+    lines.add(HEADER + coordinate);
+    lines.addAll(banned);
+    AtomicFiles.writeLines(file, lines);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Utility methods to read and write a pre-computed list of banned {@code groupId:artifactId} dependencies.
+ *
+ * The list is a UTF-8 text file with one sorted {@code groupId:artifactId} per line; blank lines and lines starting
+ * with {@code #} are ignored.
+ *
+ * @since 1.4
+ */
+public class BannedListUtils
+{
+  public static final String TYPE = "txt";
+
+  public static final String DEFAULT_CLASSIFIER = "banned";
+
+  private static final String ENCODING = "UTF-8";
+
+  private BannedListUtils() {
+    // empty
+  }
+
+  /**
+   * Returns the sorted {@code groupId:artifactId} of the resolved runtime dependencies of the banned root project.
+   *
+   * Runtime resolution of the project reaches the same dependencies as collecting the dependency graph of its artifact
+   * with runtime scope, as generate-metadata does without a list: both keep the optional dependencies of the root but
+   * none of theirs, and leave out provided and test dependencies with everything only they pull in.
+   */
+  public static Set<String> select(final Collection<Artifact> artifacts) {
+    Set<String> ids = new TreeSet<String>();
+    for (Artifact artifact : artifacts) {
+      ids.add(String.format("%s:%s", artifact.getGroupId(), artifact.getArtifactId()));
+    }
+    return ids;
+  }
+
+  public static List<String> read(final File file) throws IOException {
+    List<String> ids = new ArrayList<String>();
+    Reader input = null;
+    try {
+      input = new InputStreamReader(new FileInputStream(file), ENCODING);
+      BufferedReader reader = new BufferedReader(input);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0 && !line.startsWith("#")) {
+          ids.add(line);
+        }
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+    return ids;
+  }
+
+  public static void write(final BuildContext buildContext, final Collection<String> ids, final File file)
+      throws IOException
+  {
+    file.getParentFile().mkdirs();
+
+    Writer output = null;
+    try {
+      output = new BufferedWriter(new OutputStreamWriter(buildContext.newFileOutputStream(file), ENCODING));
+      for (String id : new TreeSet<String>(ids)) {
+        output.write(id);
+        output.write('\n');
+      }
+    }
+    finally {
+      IOUtil.close(output);
+    }
+  }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Records wall time, CPU time and allocated bytes of the phases of a mojo execution, and reports them as JSON for the
+ * module and for the whole reactor.
+ *
+ * CPU time and allocated bytes are those of the thread running the mojo, so work handed to other threads (eg. the
+ * package scan) only counts as wall time; either is {@code -1} if the JVM does not measure it. While a Java Flight
+ * Recorder is running, every phase is also committed as {@code org.sonatype.nexus.pluginbundle.Phase} event.
+ *
+ * @since 1.4
+ */
+public class BuildMetrics
+{
+  /**
+   * Report of a module, under its build directory.
+   */
+  public static final String MODULE_REPORT = "nexus-plugin-bundle/metrics.json";
+
+  /**
+   * Report of the reactor, under the build directory of the execution root.
+   */
+  public static final String REACTOR_REPORT = "nexus-plugin-bundle-metrics.json";
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private static final Method ALLOCATED_BYTES = getAllocatedBytesMethod();
+
+  /**
+   * Phases of all modules of the current build by module, so each report covers all executions so far.
+   */
+  private static final Map<String, List<Record>> reactor = new LinkedHashMap<String, List<Record>>();
+
+  private static Object reactorBuild;
+
+  private final boolean enabled;
+
+  private final String module;
+
+  private final String goal;
+
+  private final List<Record> records = new ArrayList<Record>();
+
+  /**
+   * @param enabled If {@code false}, phases are not measured and nothing is reported.
+   */
+  public BuildMetrics(final boolean enabled, final String module, final String goal) {
+    this.enabled = enabled;
+    this.module = module;
+    this.goal = goal;
+  }
+
+  public Phase start(final String name) {
+    return new Phase(name);
+  }
+
+  public List<Record> getRecords() {
+    return Collections.unmodifiableList(records);
+  }
+
+  /**
+   * Adds the phases of this execution to the reports of the module and the reactor, and rewrites both.
+   *
+   * @param build Identity of the current build, phases of previous builds in the same JVM are dropped.
+   */
+  public void report(final Object build, final File moduleReport, final File reactorReport) throws IOException {
+    if (!enabled) {
+      return;
+    }
+
+    synchronized (reactor) {
+      if (!build.equals(reactorBuild)) {
+        reactor.clear();
+        reactorBuild = build;
+      }
+      List<Record> moduleRecords = reactor.get(module);
+      if (moduleRecords == null) {
+        moduleRecords = new ArrayList<Record>();
+        reactor.put(module, moduleRecords);
+      }
+      moduleRecords.addAll(records);
+      records.clear();
+
+      StringBuilder buf = new StringBuilder();
+      appendModule(buf, "", module, moduleRecords);
+      write(moduleReport, buf.append('\n'));
+
+      buf.setLength(0);
+      buf.append("{\n  \"modules\": [");
+      String separator = "\n";
+      for (Map.Entry<String, List<Record>> entry : reactor.entrySet()) {
+        buf.append(separator).append("    ");
+        appendModule(buf, "    ", entry.getKey(), entry.getValue());
+        separator = ",\n";
+      }
+      buf.append("\n  ],\n  \"totals\": [");
+      separator = "\n";
+      for (Record total : getTotals()) {
+        buf.append(separator).append("    ");
+        total.append(buf);
+        separator = ",\n";
+      }
+      buf.append("\n  ]\n}\n");
+      write(reactorReport, buf);
+    }
+  }
+
+  /**
+   * Sums up the phases of all modules by goal and phase.
+   */
+  private static List<Record> getTotals() {
+    Map<String, Record> totals = new LinkedHashMap<String, Record>();
+    for (List<Record> moduleRecords : reactor.values()) {
+      for (Record record : moduleRecords) {
+        String key = record.goal + ':' + record.phase;
+        Record total = totals.get(key);
+        if (total == null) {
+          totals.put(key, new Record(record.goal, record.phase, 1, record.wallNanos, record.cpuNanos,
+              record.allocatedBytes));
+        }
+        else {
+          totals.put(key, new Record(record.goal, record.phase, total.count + 1, total.wallNanos + record.wallNanos,
+              sum(total.cpuNanos, record.cpuNanos), sum(total.allocatedBytes, record.allocatedBytes)));
+        }
+      }
+    }
+    return new ArrayList<Record>(totals.values());
+  }
+
+  private static long sum(final long a, final long b) {
+    return a < 0 || b < 0 ? -1 : a + b;
+  }
+
+  private static void appendModule(final StringBuilder buf,
+                                   final String indent,
+                                   final String module,
+                                   final List<Record> records)
+  {
+    buf.append("{\n").append(indent).append("  \"module\": ");
+    appendString(buf, module);
+    buf.append(",\n").append(indent).append("  \"phases\": [");
+    String separator = "\n";
+    for (Record record : records) {
+      buf.append(separator).append(indent).append("    ");
+      record.append(buf);
+      separator = ",\n";
+    }
+    buf.append('\n').append(indent).append("  ]\n").append(indent).append('}');
+  }
+
+  static void appendString(final StringBuilder buf, final String value) {
+    buf.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        buf.append(String.format("\\u%04x", (int) c));
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    buf.append('"');
+  }
+
+  private static void write(final File file, final CharSequence content) throws IOException {
+    file.getParentFile().mkdirs();
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      writer.write(content.toString());
+    }
+    finally {
+      IOUtil.close(writer);
+    }
+  }
+
+  private static long cpuTime() {
+    try {
+      if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+        return THREADS.getCurrentThreadCpuTime();
+      }
+    }
+    catch (UnsupportedOperationException e) {
+      // ignore
+    }
+    return -1;
+  }
+
+  private static long allocatedBytes() {
+    if (ALLOCATED_BYTES != null) {
+      try {
+        return (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+      }
+      catch (Exception e) {
+        // ignore
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Allocated bytes are only measured by HotSpot, through {@code com.sun.management.ThreadMXBean}.
+   */
+  @Nullable
+  private static Method getAllocatedBytesMethod() {
+    try {
+      Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+      if (type.isInstance(THREADS)) {
+        Method method = type.getMethod("getThreadAllocatedBytes", long.class);
+        method.invoke(THREADS, Thread.currentThread().getId());
+        return method;
+      }
+    }
+    catch (Exception e) {
+      // not available
+    }
+    return null;
+  }
+
+  /**
+   * A phase being measured, recorded when {@link #end ended}.
+   */
+  public class Phase
+  {
+    private final String name;
+
+    private final long wallStart;
+
+    private final long cpuStart;
+
+    private final long allocatedStart;
+
+    private final Object event;
+
+    private boolean ended;
+
+    private Phase(final String name) {
+      this.name = name;
+      if (enabled) {
+        this.event = FlightRecorderEvents.begin();
+        this.wallStart = System.nanoTime();
+        this.cpuStart = cpuTime();
+        this.allocatedStart = allocatedBytes();
+      }
+      else {
+        this.event = null;
+        this.wallStart = 0;
+        this.cpuStart = -1;
+        this.allocatedStart = -1;
+      }
+    }
+
+    public void end() {
+      if (!enabled || ended) {
+        return;
+      }
+      ended = true;
+
+      long wall = System.nanoTime() - wallStart;
+      long cpu = cpuStart < 0 ? -1 : cpuTime() - cpuStart;
+      long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+      Record record = new Record(goal, name, 1, wall, cpu, allocated);
+      records.add(record);
+      FlightRecorderEvents.commit(event, module, record);
+    }
+  }
+
+  /**
+   * Measurements of a phase, or the sum of several.
+   */
+  public static class Record
+  {
+    private final String goal;
+
+    private final String phase;
+
+    private final int count;
+
+    private final long wallNanos;
+
+    private final long cpuNanos;
+
+    private final long allocatedBytes;
+
+    private Record(final String goal,
+                   final String phase,
+                   final int count,
+                   final long wallNanos,
+                   final long cpuNanos,
+                   final long allocatedBytes)
+    {
+      this.goal = goal;
+      this.phase = phase;
+      this.count = count;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getGoal() {
+      return goal;
+    }
+
+    public String getPhase() {
+      return phase;
+    }
+
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    public long getCpuNanos() {
+      return cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    private void append(final StringBuilder buf) {
+      buf.append("{\"goal\": ");
+      appendString(buf, goal);
+      buf.append(", \"phase\": ");
+      appendString(buf, phase);
+      if (count > 1) {
+        buf.append(", \"count\": ").append(count);
+      }
+      buf.append(", \"wallNanos\": ").append(wallNanos)
+          .append(", \"cpuNanos\": ").append(cpuNanos)
+          .append(", \"allocatedBytes\": ").append(allocatedBytes)
+          .append('}');
+    }
+  }
+
+  /**
+   * Emits phases as Java Flight Recorder events. The JFR API is only available on newer JVMs than this plugin
+   * targets, so the event type is defined at runtime through {@code jdk.jfr.EventFactory} by reflection.
+   */
+  private static class FlightRecorderEvents
+  {
+    private static final String EVENT_NAME = "org.sonatype.nexus.pluginbundle.Phase";
+
+    private static boolean initialized;
+
+    private static Object factory;
+
+    private static Method newEvent;
+
+    private static Method begin;
+
+    private static Method end;
+
+    private static Method set;
+
+    private static Method commit;
+
+    /**
+     * Begins an event if a recording may be running, returns {@code null} otherwise.
+     */
+    @Nullable
+    private static synchronized Object begin() {
+      try {
+        if (!initialized) {
+          initialized = true;
+          Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+          if (!(Boolean) recorder.getMethod("isInitialized").invoke(null)) {
+            // no recording was ever started, check again next build
+            initialized = false;
+            return null;
+          }
+          factory = createFactory();
+          newEvent = factory.getClass().getMethod("newEvent");
+          Class<?> event = Class.forName("jdk.jfr.Event");
+          begin = event.getMethod("begin");
+          end = event.getMethod("end");
+          set = event.getMethod("set", int.class, Object.class);
+          commit = event.getMethod("commit");
+        }
+        if (factory == null) {
+          return null;
+        }
+        Object event = newEvent.invoke(factory);
+        begin.invoke(event);
+        return event;
+      }
+      catch (Throwable e) {
+        // JFR not available
+        factory = null;
+        return null;
+      }
+    }
+
+    private static void commit(@Nullable final Object event, final String module, final Record record) {
+      if (event == null) {
+        return;
+      }
+      try {
+        end.invoke(event);
+        set.invoke(event, 0, module);
+        set.invoke(event, 1, record.goal);
+        set.invoke(event, 2, record.phase);
+        set.invoke(event, 3, record.cpuNanos);
+        set.invoke(event, 4, record.allocatedBytes);
+        commit.invoke(event);
+      }
+      catch (Throwable e) {
+        // ignore
+      }
+    }
+
+    private static Object createFactory() throws Exception {
+      Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+      Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+      List<Object> annotations = new ArrayList<Object>();
+      annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"), EVENT_NAME));
+      annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), "Plugin Bundle Phase"));
+      annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"Nexus Plugin Bundle"}));
+
+      Constructor<?> field = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class);
+      List<Object> fields = Arrays.asList(
+          field.newInstance(String.class, "module"),
+          field.newInstance(String.class, "goal"),
+          field.newInstance(String.class, "phase"),
+          field.newInstance(long.class, "cpuNanos"),
+          field.newInstance(long.class, "allocatedBytes")
+      );
+
+      return Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class, List.class)
+          .invoke(null, annotations, fields);
+    }
+  }
+}
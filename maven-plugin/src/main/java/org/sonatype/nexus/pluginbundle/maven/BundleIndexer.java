@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.binary.PluginIndex;
+import org.sonatype.plugins.model.io.binary.PluginModelBinaryReader;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Reader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Builds a {@link PluginIndex} of the plugin bundles in a directory, re-reading only bundles that changed since a
+ * previous index.
+ *
+ * A bundle is considered unchanged if its size and modification time match the previous index, or else if its
+ * content hash does.
+ *
+ * @since 1.4
+ */
+public class BundleIndexer
+{
+  public static final String BUNDLE_SUFFIX = "-" + CreateBundleMojo.BUNDLE_ID + "." + CreateBundleMojo.BUNDLE_TYPE;
+
+  private static final String BINARY_DESCRIPTOR = "META-INF/nexus/" + PluginDescriptorGenerator.BINARY_DESCRIPTOR_NAME;
+
+  private static final String DESCRIPTOR = "META-INF/nexus/plugin.xml";
+
+  private int reused;
+
+  private int read;
+
+  private final List<File> skipped = new ArrayList<File>();
+
+  public PluginIndex index(final File directory, final @Nullable PluginIndex previous) throws IOException {
+    File[] files = directory.listFiles(new FileFilter()
+    {
+      public boolean accept(final File file) {
+        return file.isFile() && file.getName().endsWith(BUNDLE_SUFFIX);
+      }
+    });
+    if (files == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    Arrays.sort(files);
+
+    List<PluginIndex.Entry> entries = new ArrayList<PluginIndex.Entry>();
+    for (File file : files) {
+      PluginIndex.Entry entry = previous == null ? null : previous.getEntry(file.getName());
+      if (entry != null && entry.getSize() == file.length() && entry.getLastModified() == file.lastModified()) {
+        reused++;
+        entries.add(entry);
+        continue;
+      }
+
+      String hash = Digests.sha1(file);
+      PluginMetadata metadata;
+      if (entry != null && entry.getHash().equals(hash)) {
+        reused++;
+        metadata = entry.getMetadata();
+      }
+      else {
+        metadata = readDescriptor(file);
+        if (metadata == null) {
+          skipped.add(file);
+          continue;
+        }
+        read++;
+      }
+      entries.add(new PluginIndex.Entry(file.getName(), file.length(), file.lastModified(), hash, metadata));
+    }
+    return new PluginIndex(entries);
+  }
+
+  /**
+   * Returns the number of bundles taken over from the previous index.
+   */
+  public int getReused() {
+    return reused;
+  }
+
+  /**
+   * Returns the number of bundles whose descriptor was read.
+   */
+  public int getRead() {
+    return read;
+  }
+
+  /**
+   * Returns the bundles without plugin descriptor, which are not indexed.
+   */
+  public List<File> getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Reads the descriptor of the plugin jar at the top of the bundle (see {@link CreateBundleMojo}), in whichever form
+   * comes first.
+   */
+  @Nullable
+  static PluginMetadata readDescriptor(final File bundle) throws IOException {
+    ZipFile zip = new ZipFile(bundle);
+    try {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        int slash = name.indexOf('/');
+        if (entry.isDirectory() || slash == -1 || name.indexOf('/', slash + 1) != -1 || !name.endsWith(".jar")) {
+          continue;
+        }
+        ZipInputStream jar = new ZipInputStream(zip.getInputStream(entry));
+        try {
+          PluginMetadata metadata = readDescriptor(jar);
+          if (metadata != null) {
+            return metadata;
+          }
+        }
+        finally {
+          IOUtil.close(jar);
+        }
+      }
+      return null;
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  @Nullable
+  private static PluginMetadata readDescriptor(final ZipInputStream jar) throws IOException {
+    for (ZipEntry entry = jar.getNextEntry(); entry != null; entry = jar.getNextEntry()) {
+      if (BINARY_DESCRIPTOR.equals(entry.getName())) {
+        return new PluginModelBinaryReader().read(jar);
+      }
+      if (DESCRIPTOR.equals(entry.getName())) {
+        try {
+          return new PluginModelXpp3Reader().read(jar);
+        }
+        catch (XmlPullParserException e) {
+          throw new IOException("Invalid plugin descriptor: " + e.getMessage());
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Writes plugin bundles straight from the bundled files, without staging them like the assembly archiver does.
+ *
+ * Files are deflated concurrently (scatter), small ones into memory and larger ones into temporary files, and appended
+ * to the bundle in order as soon as they are ready (gather), so heap use stays bounded whatever the size of the files.
+ * Parent directory entries are added automatically.
+ * Bundles are plain zip files without zip64 extensions, so they are limited to 65535 entries and 4 GiB.
+ *
+ * Aligned bundles (see {@link #setAligned}) store nested jars uncompressed, as they are compressed already, with their
+ * data starting at a multiple of the alignment, padded by an extra field of the local header. The bundle ends with an
+ * index of these jars, so they can be read in place from a memory mapped bundle without extracting it:
+ *
+ * <pre>
+ * index := "nexus-plugin-bundle-index 1" LF (offset SP length SP path LF)*
+ * </pre>
+ *
+ * where {@code offset} is the position of the first byte of the jar in the bundle and {@code length} its size, both
+ * in decimal.
+ *
+ * @since 1.4
+ */
+public class BundleWriter
+{
+  public static final String INDEX_HEADER = "nexus-plugin-bundle-index 1";
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+
+  private static final int LOCAL_HEADER_SIZE = 30;
+
+  private static final int CENTRAL_HEADER = 0x02014b50;
+
+  private static final int END_HEADER = 0x06054b50;
+
+  private static final int VERSION = 20;
+
+  private static final int UTF8_NAMES = 0x0800;
+
+  private static final int STORED = 0;
+
+  private static final int DEFLATED = 8;
+
+  private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+  private static final long MAX_SIZE = 0xffffffffL;
+
+  private static final int MAX_ENTRIES = 0xffff;
+
+  /**
+   * Files larger than this are deflated into a temporary file instead of memory.
+   */
+  private static final int SPILL_SIZE = 256 * 1024;
+
+  /**
+   * Header id of the padding extra field, as used by Android's zipalign.
+   */
+  private static final int ALIGNMENT_EXTRA = 0xd935;
+
+  private static final int ALIGNMENT_EXTRA_SIZE = 6;
+
+  /**
+   * Padding is less than the alignment plus the extra field header, which must fit the 16 bit extra field length.
+   */
+  private static final int MAX_ALIGNMENT = 0x8000;
+
+  private final int threads;
+
+  private final Long timestamp;
+
+  private final Map<String, File> files = new LinkedHashMap<String, File>();
+
+  private int alignment;
+
+  private String indexPath;
+
+  /**
+   * @param threads   Number of threads deflating files concurrently.
+   * @param timestamp Optional time of all entries, see {@link ZipNormalizer#parseTimestamp}. If set, entries are
+   *                  also sorted by name so identical content gives identical bundles. Otherwise entries keep the
+   *                  order they were added in and the last modified time of their file.
+   */
+  public BundleWriter(final int threads, final @Nullable Long timestamp) {
+    this.threads = Math.max(1, threads);
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Adds a file to the bundle.
+   *
+   * @param path Path of the entry, separated by {@code /}.
+   */
+  public void add(final String path, final File file) {
+    files.put(path, file);
+  }
+
+  /**
+   * Stores nested jars uncompressed and aligned, and adds an index of them.
+   *
+   * @param alignment Alignment of the jar data in bytes, eg. the page size, at most 32 KiB.
+   * @param indexPath Path of the index entry, written last.
+   */
+  public void setAligned(final int alignment, final String indexPath) {
+    if (alignment <= 0 || alignment > MAX_ALIGNMENT) {
+      throw new IllegalArgumentException("Invalid alignment: " + alignment);
+    }
+    this.alignment = alignment;
+    this.indexPath = indexPath;
+  }
+
+  /**
+   * Writes the bundle, replacing the given file only once complete.
+   */
+  public void write(final File file) throws IOException {
+    Map<String, Entry> entries = getEntries();
+
+    File temp = AtomicFiles.createTemp(file);
+
+    ExecutorService executor = Parallel.newExecutor(threads, "nexus-plugin-bundle-deflate");
+
+    Output output = null;
+    try {
+      output = new Output(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+
+      // keep a few more files in flight than threads, so workers do not wait for the output
+      LinkedList<Future<Entry>> pending = new LinkedList<Future<Entry>>();
+      Iterator<Entry> next = new ArrayList<Entry>(entries.values()).iterator();
+      while (next.hasNext() || !pending.isEmpty()) {
+        while (next.hasNext() && pending.size() < 2 * threads) {
+          final Entry entry = next.next();
+          pending.add(executor.submit(new Callable<Entry>()
+          {
+            public Entry call() throws Exception {
+              return entry.prepare();
+            }
+          }));
+        }
+        writeLocal(output, pending.removeFirst().get());
+      }
+
+      if (indexPath != null) {
+        Entry index = new Entry(indexPath, null, getTime(System.currentTimeMillis()), false);
+        index.setData(getIndex(entries.values()));
+        addDirectories(entries, indexPath, index.time);
+        for (Entry directory : entries.values()) {
+          if (directory.offset == -1) {
+            writeLocal(output, directory);
+          }
+        }
+        entries.put(indexPath, index);
+        writeLocal(output, index);
+      }
+
+      if (entries.size() > MAX_ENTRIES) {
+        throw new IOException("Too many bundle entries: " + entries.size());
+      }
+      writeCentral(output, entries.values());
+      output.close();
+      AtomicFiles.replace(temp, file);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing bundle");
+    }
+    catch (ExecutionException e) {
+      throw Parallel.propagate(e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+      IOUtil.close(output);
+      temp.delete();
+      for (Entry entry : entries.values()) {
+        entry.discard();
+      }
+    }
+  }
+
+  /**
+   * Returns the entries to write by path, with their parent directories preceding them.
+   */
+  private Map<String, Entry> getEntries() {
+    List<String> paths = new ArrayList<String>(files.keySet());
+    if (timestamp != null) {
+      Collections.sort(paths);
+    }
+
+    Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    for (String path : paths) {
+      File file = files.get(path);
+      int time = getTime(file.lastModified());
+      addDirectories(entries, path, time);
+      entries.put(path, new Entry(path, file, time, alignment > 0 && path.endsWith(".jar")));
+    }
+    return entries;
+  }
+
+  private static void addDirectories(final Map<String, Entry> entries, final String path, final int time) {
+    for (int i = path.indexOf('/'); i != -1 && i < path.length() - 1; i = path.indexOf('/', i + 1)) {
+      String directory = path.substring(0, i + 1);
+      if (!entries.containsKey(directory)) {
+        entries.put(directory, new Entry(directory, null, time, false));
+      }
+    }
+  }
+
+  private int getTime(final long lastModified) {
+    if (timestamp != null) {
+      return dosTime(ZipNormalizer.toLocalTime(timestamp));
+    }
+    return dosTime(lastModified);
+  }
+
+  private static byte[] getIndex(final Collection<Entry> entries) throws IOException {
+    StringBuilder buf = new StringBuilder(INDEX_HEADER).append('\n');
+    for (Entry entry : entries) {
+      if (entry.aligned) {
+        buf.append(entry.offset + LOCAL_HEADER_SIZE + entry.nameBytes.length + entry.padding).append(' ')
+            .append(entry.size).append(' ')
+            .append(entry.name).append('\n');
+      }
+    }
+    return buf.toString().getBytes("UTF-8");
+  }
+
+  private void writeLocal(final Output output, final Entry entry) throws IOException {
+    if (output.position > MAX_SIZE) {
+      throw new IOException("Bundle too large at entry: " + entry.name);
+    }
+    entry.offset = output.position;
+    if (entry.aligned) {
+      int unaligned = (int) ((entry.offset + LOCAL_HEADER_SIZE + entry.nameBytes.length) % alignment);
+      entry.padding = unaligned == 0 ? 0 : alignment - unaligned;
+      // small alignments need several units to fit the extra field header
+      while (entry.padding > 0 && entry.padding < ALIGNMENT_EXTRA_SIZE) {
+        entry.padding += alignment;
+      }
+    }
+    output.writeInt(LOCAL_HEADER);
+    output.writeShort(VERSION);
+    output.writeShort(UTF8_NAMES);
+    output.writeShort(entry.method);
+    output.writeInt(entry.time);
+    output.writeInt((int) entry.crc);
+    output.writeInt((int) entry.compressedSize);
+    output.writeInt((int) entry.size);
+    output.writeShort(entry.nameBytes.length);
+    output.writeShort(entry.padding);
+    output.write(entry.nameBytes);
+    if (entry.padding > 0) {
+      output.writeShort(ALIGNMENT_EXTRA);
+      output.writeShort(entry.padding - 4);
+      output.writeShort(alignment);
+      output.write(new byte[entry.padding - ALIGNMENT_EXTRA_SIZE]);
+    }
+    if (entry.data != null) {
+      output.write(entry.data);
+      entry.data = null;
+    }
+    else if (entry.spill != null) {
+      if (!copy(entry.spill, entry.compressedSize, output)) {
+        throw new IOException("Temporary file changed while writing bundle: " + entry.spill);
+      }
+      entry.discard();
+    }
+    else if (!copy(entry.file, entry.size, output)) {
+      throw new IOException("File changed while writing bundle: " + entry.file);
+    }
+  }
+
+  /**
+   * Copies the given file, returning whether it had the expected length.
+   */
+  private static boolean copy(final File file, final long length, final OutputStream output) throws IOException {
+    long copied = 0;
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] bytes = new byte[8192];
+      for (int n = input.read(bytes); n != -1; n = input.read(bytes)) {
+        output.write(bytes, 0, n);
+        copied += n;
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+    return copied == length;
+  }
+
+  private static void writeCentral(final Output output, final Collection<Entry> entries) throws IOException {
+    long start = output.position;
+    for (Entry entry : entries) {
+      output.writeInt(CENTRAL_HEADER);
+      output.writeShort(VERSION);
+      output.writeShort(VERSION);
+      output.writeShort(UTF8_NAMES);
+      output.writeShort(entry.method);
+      output.writeInt(entry.time);
+      output.writeInt((int) entry.crc);
+      output.writeInt((int) entry.compressedSize);
+      output.writeInt((int) entry.size);
+      output.writeShort(entry.nameBytes.length);
+      output.writeShort(0);
+      output.writeShort(0);
+      output.writeShort(0);
+      output.writeShort(0);
+      output.writeInt(entry.file == null ? DIRECTORY_ATTRIBUTE : 0);
+      output.writeInt((int) entry.offset);
+      output.write(entry.nameBytes);
+    }
+    long end = output.position;
+    if (end > MAX_SIZE) {
+      throw new IOException("Bundle too large: " + end + " bytes");
+    }
+    output.writeInt(END_HEADER);
+    output.writeShort(0);
+    output.writeShort(0);
+    output.writeShort(entries.size());
+    output.writeShort(entries.size());
+    output.writeInt((int) (end - start));
+    output.writeInt((int) start);
+    output.writeShort(0);
+  }
+
+  /**
+   * Converts to MS-DOS date and time fields in the default time zone, as {@link java.util.zip.ZipEntry} does.
+   */
+  private static int dosTime(final long time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25
+        | (calendar.get(Calendar.MONTH) + 1) << 21
+        | calendar.get(Calendar.DAY_OF_MONTH) << 16
+        | calendar.get(Calendar.HOUR_OF_DAY) << 11
+        | calendar.get(Calendar.MINUTE) << 5
+        | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  private static class Entry
+  {
+    private final String name;
+
+    private final byte[] nameBytes;
+
+    private final File file;
+
+    private final int time;
+
+    private final boolean aligned;
+
+    private int method = STORED;
+
+    private long crc;
+
+    private long size;
+
+    private long compressedSize;
+
+    private long offset = -1;
+
+    private int padding;
+
+    private byte[] data = new byte[0];
+
+    private File spill;
+
+    private boolean discarded;
+
+    private Entry(final String name, final @Nullable File file, final int time, final boolean aligned) {
+      this.name = name;
+      this.file = file;
+      this.time = time;
+      this.aligned = aligned;
+      try {
+        this.nameBytes = name.getBytes("UTF-8");
+      }
+      catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Deflates the file of this entry into memory or a temporary file, or only checksums it if it is to be stored.
+     */
+    private Entry prepare() throws IOException {
+      if (file == null) {
+        return this;
+      }
+      long length = file.length();
+      if (length > MAX_SIZE) {
+        throw new IOException("Bundle entry too large: " + file);
+      }
+
+      CRC32 checksum = new CRC32();
+      ByteArrayOutputStream buff = null;
+      DeflaterOutputStream deflated = null;
+      Deflater deflater = null;
+      try {
+        if (!aligned) {
+          deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+          if (length > SPILL_SIZE) {
+            deflated = new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(createSpill())),
+                deflater, 8192);
+          }
+          else {
+            buff = new ByteArrayOutputStream((int) length + 64);
+            deflated = new DeflaterOutputStream(buff, deflater, 8192);
+          }
+        }
+        InputStream input = new FileInputStream(file);
+        try {
+          byte[] bytes = new byte[8192];
+          for (int n = input.read(bytes); n != -1; n = input.read(bytes)) {
+            checksum.update(bytes, 0, n);
+            if (deflated != null) {
+              deflated.write(bytes, 0, n);
+            }
+            size += n;
+            if (size > MAX_SIZE) {
+              throw new IOException("Bundle entry too large: " + file);
+            }
+          }
+        }
+        finally {
+          IOUtil.close(input);
+        }
+        if (deflated != null) {
+          deflated.close();
+          method = DEFLATED;
+          compressedSize = deflater.getBytesWritten();
+        }
+      }
+      finally {
+        IOUtil.close(deflated);
+        if (deflater != null) {
+          deflater.end();
+        }
+      }
+
+      if (compressedSize > MAX_SIZE) {
+        throw new IOException("Bundle entry too large: " + file);
+      }
+      crc = checksum.getValue();
+      data = buff != null ? buff.toByteArray() : null;
+      if (deflated == null) {
+        compressedSize = size;
+      }
+      return finishSpill();
+    }
+
+    private synchronized File createSpill() throws IOException {
+      if (discarded) {
+        throw new InterruptedIOException("Bundle write aborted");
+      }
+      spill = File.createTempFile("nexus-plugin-bundle-", ".deflated");
+      return spill;
+    }
+
+    /**
+     * Deletes the temporary file if the bundle was aborted while this entry was deflated.
+     */
+    private synchronized Entry finishSpill() throws IOException {
+      if (discarded) {
+        discard();
+        throw new InterruptedIOException("Bundle write aborted");
+      }
+      return this;
+    }
+
+    /**
+     * Releases the deflated data once written, or when the bundle is aborted.
+     */
+    private synchronized void discard() {
+      discarded = true;
+      data = null;
+      if (spill != null) {
+        spill.delete();
+        spill = null;
+      }
+    }
+
+    private void setData(final byte[] bytes) {
+      CRC32 checksum = new CRC32();
+      checksum.update(bytes);
+      crc = checksum.getValue();
+      size = bytes.length;
+      compressedSize = bytes.length;
+      data = bytes;
+    }
+  }
+
+  /**
+   * Little endian output keeping track of its position.
+   */
+  private static class Output
+      extends OutputStream
+  {
+    private final OutputStream output;
+
+    private long position;
+
+    private Output(final OutputStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      output.write(b);
+      position++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      output.write(b, off, len);
+      position += len;
+    }
+
+    private void writeShort(final int value) throws IOException {
+      write(value & 0xff);
+      write((value >>> 8) & 0xff);
+    }
+
+    private void writeInt(final int value) throws IOException {
+      writeShort(value & 0xffff);
+      writeShort((value >>> 16) & 0xffff);
+    }
+
+    @Override
+    public void close() throws IOException {
+      output.close();
+    }
+  }
+}
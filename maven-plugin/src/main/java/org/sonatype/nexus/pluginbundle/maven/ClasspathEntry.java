@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+/**
+ * A non-plugin dependency recorded in the plugin classpath state, see {@link ClasspathUtils}.
+ *
+ * @since 1.4
+ */
+public class ClasspathEntry
+{
+  /**
+   * Size of entries without a single file to measure, eg. the output directory of a reactor module.
+   */
+  public static final long UNKNOWN_SIZE = -1;
+
+  private final String groupId;
+
+  private final String artifactId;
+
+  private final String extension;
+
+  private final String classifier;
+
+  private final String version;
+
+  private final File file;
+
+  private final long size;
+
+  private final String checksum;
+
+  public ClasspathEntry(final String groupId,
+                        final String artifactId,
+                        final @Nullable String extension,
+                        final @Nullable String classifier,
+                        final String version,
+                        final File file,
+                        final long size,
+                        final @Nullable String checksum)
+  {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.extension = extension == null || extension.length() == 0 ? "jar" : extension;
+    this.classifier = classifier == null || classifier.length() == 0 ? null : classifier;
+    this.version = version;
+    this.file = file;
+    this.size = size;
+    this.checksum = checksum;
+  }
+
+  public String getGroupId() {
+    return groupId;
+  }
+
+  public String getArtifactId() {
+    return artifactId;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  @Nullable
+  public String getClassifier() {
+    return classifier;
+  }
+
+  /**
+   * The base version, eg. {@code 1.0-SNAPSHOT} rather than a timestamped snapshot version.
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Size of the file when the state was written, or {@link #UNKNOWN_SIZE}.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * SHA-256 of the file when the state was written, or {@code null} if it was not recorded.
+   */
+  @Nullable
+  public String getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * {@code <groupId>:<artifactId>:<extension>[:<classifier>]:<version>}, as formatted by
+   * {@link ClasspathUtils#formatArtifactKey}.
+   */
+  public String getKey() {
+    StringBuilder buff = new StringBuilder(groupId.length() + artifactId.length() + version.length() + 16);
+    buff.append(groupId).append(ClasspathUtils.COLON).append(artifactId).append(ClasspathUtils.COLON).append(extension);
+    if (classifier != null) {
+      buff.append(ClasspathUtils.COLON).append(classifier);
+    }
+    return buff.append(ClasspathUtils.COLON).append(version).toString();
+  }
+
+  /**
+   * Whether the file no longer matches the recorded size, ie. it changed since the state was written.
+   */
+  public boolean isStale() {
+    if (size == UNKNOWN_SIZE) {
+      return !file.exists();
+    }
+    return !file.isFile() || file.length() != size;
+  }
+
+  @Override
+  public String toString() {
+    return getKey() + " (" + file + ")";
+  }
+}
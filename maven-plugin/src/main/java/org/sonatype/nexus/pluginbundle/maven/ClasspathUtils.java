@@ -13,30 +13,37 @@
 
 package org.sonatype.nexus.pluginbundle.maven;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.plugin.assembly.model.FileItem;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.StringUtils;
 
 /**
- * Utility methods to read and write a mapping document for non-plugin dependency artifacts used in an application
- * plugin.
+ * Utility methods to read and write the classpath state of an application plugin, the non-plugin dependency
+ * artifacts which {@link GenerateMetadataMojo} resolved and {@link CreateBundleMojo} bundles.
+ *
+ * The state is a UTF-8 text file starting with the {@link #HEADER} line, followed by one line per artifact holding
+ * tab separated group id, artifact id, extension, classifier, base version, size, SHA-256 (when recorded) and path of
+ * the file, sorted by artifact key. Paths of files in the local repository are relative to it, so the state stays valid when the
+ * build directory is moved to a machine with another local repository. Properties files mapping artifact keys to
+ * absolute paths, as written before version 1.4, are still read.
  *
  * @since 1.0
  */
@@ -47,12 +54,30 @@ public class ClasspathUtils
    */
   private static final String FILE_NAME = "nexus-plugin-bundle/plugin.classpath";
 
+  /**
+   * First line of the classpath state, telling it from the legacy properties format.
+   *
+   * @since 1.4
+   */
+  public static final String HEADER = "nexus-plugin-bundle-classpath 1";
+
+  private static final String ENCODING = "UTF-8";
+
+  private static final int FIELDS = 8;
+
   public static final String COLON = ":";
 
   public static final String DASH = "-";
 
   public static final String DOT = ".";
 
+  private static final Comparator<ClasspathEntry> BY_KEY = new Comparator<ClasspathEntry>()
+  {
+    public int compare(final ClasspathEntry a, final ClasspathEntry b) {
+      return a.getKey().compareTo(b.getKey());
+    }
+  };
+
   private ClasspathUtils() {
     // empty
   }
@@ -78,94 +103,245 @@ public class ClasspathUtils
     return buff.toString();
   }
 
-  private static Artifact formatArtifactFromKey(final String key, final Properties artifacts) {
-    Pattern p = Pattern.compile("([^: ]+):([^: ]+)(:([^: ]*)(:([^: ]+))?)?:([^: ]+)");
-    Matcher m = p.matcher(key);
-    if (!m.matches()) {
-      throw new IllegalArgumentException("Bad artifact coordinates " + key
-          + ", expected format is <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>");
-    }
-    String groupId = m.group(1);
-    String artifactId = m.group(2);
-    String extension = m.group(4);
-    extension = (extension == null || extension.length() < 1) ? "jar" : extension;
-    String classifier = m.group(6);
-    classifier = (classifier == null || classifier.length() < 1) ? "" : classifier;
-    String version = m.group(7);
-    final DefaultArtifact result = new DefaultArtifact(groupId, artifactId, version, null, extension, classifier, null);
-    result.setFile(new File(artifacts.getProperty(key)));
-    return result;
-  }
-
-  public static FileItem createFileItemForKey(final String key, final Properties artifacts) {
-    Artifact artifact = ClasspathUtils.formatArtifactFromKey(key, artifacts);
-
-    String sourcePath = artifact.getFile().getAbsolutePath();
-
+  /**
+   * @since 1.4
+   */
+  public static FileItem createFileItem(final ClasspathEntry entry) {
     FileItem fileItem = new FileItem();
-    fileItem.setSource(sourcePath);
+    fileItem.setSource(entry.getFile().getAbsolutePath());
 
     StringBuilder buff = new StringBuilder();
 
-    buff.append(artifact.getArtifactId())
+    buff.append(entry.getArtifactId())
         .append(DASH)
-        .append(artifact.getBaseVersion());
+        .append(entry.getVersion());
 
-    if (!StringUtils.isBlank(artifact.getClassifier())) {
-      buff.append(DASH).append(artifact.getClassifier());
+    if (entry.getClassifier() != null) {
+      buff.append(DASH).append(entry.getClassifier());
     }
 
-    buff.append(DOT).append(artifact.getType());
+    buff.append(DOT).append(entry.getExtension());
 
     fileItem.setDestName(buff.toString());
 
     return fileItem;
   }
 
-  public static Properties read(final MavenProject project)
+  /**
+   * Returns the classpath state file of the given project.
+   */
+  public static File getFile(final MavenProject project) {
+    return new File(project.getBuild().getDirectory(), FILE_NAME);
+  }
+
+  /**
+   * Reads the classpath state of the given project, sorted by artifact key.
+   *
+   * @param localRepository Local repository to resolve relative paths against.
+   * @since 1.4
+   */
+  public static List<ClasspathEntry> read(final MavenProject project, final File localRepository)
       throws IOException
   {
-    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+    File file = getFile(project);
     if (!file.exists()) {
       throw new IOException("Missing classpath file: " + file.getAbsolutePath());
     }
 
-    Properties props = new Properties();
-
-    InputStream input = null;
+    byte[] bytes;
+    InputStream input = new FileInputStream(file);
     try {
-      input = new BufferedInputStream(new FileInputStream(file));
-      props.load(input);
+      bytes = IOUtil.toByteArray(input);
     }
     finally {
       IOUtil.close(input);
     }
 
-    return props;
+    byte[] header = (HEADER + "\n").getBytes(ENCODING);
+    if (startsWith(bytes, header)) {
+      String content = new String(bytes, header.length, bytes.length - header.length, ENCODING);
+      return parse(content, localRepository);
+    }
+    return parseLegacy(bytes);
   }
 
-  public static void write(final BuildContext buildContext, final Set<Artifact> classpathArtifacts,
-                           final MavenProject project)
+  private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+    if (bytes.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the artifact lines of the classpath state, ie. everything after the header line.
+   */
+  static List<ClasspathEntry> parse(final String content, final File localRepository) throws IOException {
+    List<ClasspathEntry> entries = new ArrayList<ClasspathEntry>();
+    String[] fields = new String[FIELDS];
+    int length = content.length();
+    for (int start = 0, line = 2; start < length; line++) {
+      int end = content.indexOf('\n', start);
+      if (end == -1) {
+        end = length;
+      }
+      int next = end + 1;
+      if (end > start && content.charAt(end - 1) == '\r') {
+        end--;
+      }
+      if (end > start) {
+        // the path is last and taken as is
+        int count = 0;
+        int from = start;
+        while (count < FIELDS - 1) {
+          int tab = content.indexOf('\t', from);
+          if (tab == -1 || tab >= end) {
+            break;
+          }
+          fields[count++] = content.substring(from, tab);
+          from = tab + 1;
+        }
+        fields[count++] = content.substring(from, end);
+        if (count != FIELDS) {
+          throw new IOException("Malformed classpath state at line " + line + ": " + content.substring(start, end));
+        }
+        entries.add(createEntry(fields, localRepository, line));
+      }
+      start = next;
+    }
+    return entries;
+  }
+
+  private static ClasspathEntry createEntry(final String[] fields, final File localRepository, final int line)
       throws IOException
   {
+    long size;
+    try {
+      size = Long.parseLong(fields[5]);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Malformed size at line " + line + " of classpath state: " + fields[5]);
+    }
+    String path = fields[7];
+    File file = new File(path);
+    if (!file.isAbsolute()) {
+      file = new File(localRepository, path);
+    }
+    return new ClasspathEntry(fields[0], fields[1], fields[2], fields[3], fields[4], file, size,
+        fields[6].length() == 0 ? null : fields[6]);
+  }
+
+  /**
+   * Parses the properties format written before version 1.4, mapping artifact keys to absolute paths.
+   */
+  private static List<ClasspathEntry> parseLegacy(final byte[] bytes) throws IOException {
     Properties props = new Properties();
+    props.load(new ByteArrayInputStream(bytes));
+
+    List<ClasspathEntry> entries = new ArrayList<ClasspathEntry>(props.size());
+    for (Map.Entry<Object, Object> entry : props.entrySet()) {
+      entries.add(parseKey(entry.getKey().toString(), new File(entry.getValue().toString())));
+    }
+    Collections.sort(entries, BY_KEY);
+    return entries;
+  }
 
+  /**
+   * Parses {@code <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>}.
+   */
+  static ClasspathEntry parseKey(final String key, final File file) throws IOException {
+    // one more part than allowed, to tell too many apart
+    String[] parts = new String[6];
+    int count = 0;
+    for (int from = 0; count < parts.length; count++) {
+      int colon = key.indexOf(':', from);
+      if (colon == -1) {
+        parts[count++] = key.substring(from);
+        break;
+      }
+      parts[count] = key.substring(from, colon);
+      from = colon + 1;
+    }
+    boolean valid = count >= 3 && count <= 5 && key.indexOf(' ') == -1
+        && parts[0].length() > 0 && parts[1].length() > 0 && parts[count - 1].length() > 0
+        && (count < 5 || parts[3].length() > 0);
+    if (!valid) {
+      throw new IOException("Bad artifact coordinates " + key
+          + ", expected format is <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>");
+    }
+    return new ClasspathEntry(parts[0], parts[1], count > 3 ? parts[2] : null, count > 4 ? parts[3] : null,
+        parts[count - 1], file, ClasspathEntry.UNKNOWN_SIZE, null);
+  }
+
+  /**
+   * Writes the classpath state of the given project.
+   *
+   * @param localRepository Local repository, files in it are recorded by relative path.
+   * @param checksums       SHA-256 of the files already computed for the plugin descriptor, files without one are
+   *                        recorded by size only.
+   * @since 1.4
+   */
+  public static void write(final BuildContext buildContext, final Set<Artifact> classpathArtifacts,
+                           final MavenProject project, final File localRepository,
+                           final Map<File, String> checksums)
+      throws IOException
+  {
+    List<ClasspathEntry> entries = new ArrayList<ClasspathEntry>(classpathArtifacts.size());
     for (Artifact artifact : classpathArtifacts) {
       File file = artifact.getFile();
-      String name = formatArtifactKey(artifact);
-      props.setProperty(name, file.getAbsolutePath());
+      boolean measurable = file.isFile();
+      entries.add(new ClasspathEntry(artifact.getGroupId(), artifact.getArtifactId(),
+          artifact.getArtifactHandler().getExtension(), artifact.getClassifier(), artifact.getBaseVersion(),
+          file.getAbsoluteFile(), measurable ? file.length() : ClasspathEntry.UNKNOWN_SIZE,
+          measurable ? checksums.get(file) : null));
     }
 
-    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+    File file = getFile(project);
     file.getParentFile().mkdirs();
 
     OutputStream output = null;
     try {
-      output = new BufferedOutputStream(buildContext.newFileOutputStream(file));
-      props.store(output, null);
+      output = buildContext.newFileOutputStream(file);
+      output.write(format(entries, localRepository).getBytes(ENCODING));
     }
     finally {
       IOUtil.close(output);
     }
   }
+
+  /**
+   * Formats the given entries as classpath state, sorted by artifact key so the same classpath always gives the
+   * same file.
+   */
+  static String format(final List<ClasspathEntry> entries, final File localRepository) throws IOException {
+    List<ClasspathEntry> sorted = new ArrayList<ClasspathEntry>(entries);
+    Collections.sort(sorted, BY_KEY);
+
+    String repository = localRepository.getAbsolutePath() + File.separator;
+    StringBuilder buff = new StringBuilder(HEADER.length() + 1 + sorted.size() * 128);
+    buff.append(HEADER).append('\n');
+    for (ClasspathEntry entry : sorted) {
+      String path = entry.getFile().getAbsolutePath();
+      if (path.startsWith(repository)) {
+        path = path.substring(repository.length()).replace(File.separatorChar, '/');
+      }
+      if (path.indexOf('\t') != -1 || path.indexOf('\n') != -1 || path.indexOf('\r') != -1) {
+        throw new IOException("Unsupported character in path of classpath dependency: " + path);
+      }
+
+      buff.append(entry.getGroupId()).append('\t')
+          .append(entry.getArtifactId()).append('\t')
+          .append(entry.getExtension()).append('\t')
+          .append(entry.getClassifier() == null ? "" : entry.getClassifier()).append('\t')
+          .append(entry.getVersion()).append('\t')
+          .append(entry.getSize()).append('\t')
+          .append(entry.getChecksum() == null ? "" : entry.getChecksum()).append('\t')
+          .append(path).append('\n');
+    }
+    return buff.toString();
+  }
 }
@@ -16,13 +16,10 @@ package org.sonatype.nexus.pluginbundle.maven;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 
-import org.apache.maven.execution.MavenSession;
+import javax.annotation.Nullable;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.assembly.archive.AssemblyArchiver;
@@ -49,8 +46,18 @@ public class CreateBundleMojo
 
   public static final String BUNDLE_ID = "bundle";
 
-  @Component
-  private MavenSession session;
+  public static final String ARCHIVER_ASSEMBLY = "assembly";
+
+  public static final String ARCHIVER_NATIVE = "native";
+
+  public static final String FORMAT_ZIP = "zip";
+
+  public static final String FORMAT_ALIGNED = "aligned";
+
+  /**
+   * Path of the index of aligned bundles, relative to the plugin directory of the bundle.
+   */
+  public static final String INDEX_PATH = "META-INF/bundle.index";
 
   @Component
   private AssemblyArchiver assemblyArchiver;
@@ -75,7 +82,98 @@ public class CreateBundleMojo
   @Parameter
   private File assemblyDescriptor;
 
+  /**
+   * Number of threads used to scan the bundled jars for exported packages. Each thread holds at most one jar open at
+   * a time, so this also caps the number of open file handles.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "exportScanThreads", defaultValue = "4")
+  private int exportScanThreads;
+
+  /**
+   * Maximum number of jars retained in the persistent package cache, or {@code 0} to disable the cache.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "packageCacheSize", defaultValue = "10000")
+  private int packageCacheSize;
+
+  /**
+   * Creates byte-identical bundles from identical content: entries are sorted by name and stamped with
+   * {@link #outputTimestamp}, or 1980-01-01T00:00:00Z if not set. Setting {@code project.build.outputTimestamp}
+   * enables this as well.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "reproducible", defaultValue = "false")
+  private boolean reproducible;
+
+  /**
+   * Time of the entries of reproducible bundles, either seconds since the epoch or an ISO-8601 date and time.
+   *
+   * @since 1.4
+   */
+  @Parameter(defaultValue = "${project.build.outputTimestamp}")
+  private String outputTimestamp;
+
+  /**
+   * Archiver creating the bundle, either {@code assembly} to stage and zip the content with the assembly archiver, or
+   * {@code native} to stream the bundled files straight into the bundle, deflating them in parallel. Bundles of an
+   * {@link #assemblyDescriptor} are always created by the assembly archiver.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bundleArchiver", defaultValue = ARCHIVER_ASSEMBLY)
+  private String bundleArchiver;
+
+  /**
+   * Number of threads deflating the bundled files with the {@code native} archiver.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bundleThreads", defaultValue = "4")
+  private int bundleThreads;
+
+  /**
+   * Format of the bundle, either {@code zip} to deflate all content, or {@code aligned} to store the bundled jars
+   * uncompressed at offsets aligned to {@link #bundleAlignment}, with an index of their offsets in
+   * {@value #INDEX_PATH}, so they can be read in place from a memory mapped bundle. Aligned bundles are always created
+   * by the {@code native} archiver.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bundleFormat", defaultValue = FORMAT_ZIP)
+  private String bundleFormat;
+
+  /**
+   * Alignment of the jars in {@code aligned} bundles, in bytes.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bundleAlignment", defaultValue = "4096")
+  private int bundleAlignment;
+
+  /**
+   * Directory to write the bundle into exploded, eg. the plugin repository of a development Nexus. If set, the bundle
+   * is neither zipped nor attached to the project. Dependencies from the local repository are hard linked where
+   * possible, and unchanged files are not written again.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "explodedDirectory")
+  private File explodedDirectory;
+
   public void execute() throws MojoExecutionException, MojoFailureException {
+    try {
+      createBundle();
+    }
+    finally {
+      reportMetrics();
+    }
+  }
+
+  private void createBundle() throws MojoExecutionException, MojoFailureException {
     // skip if wrong packaging
     if (!isNexusPluginPacakging()) {
       return;
@@ -86,6 +184,9 @@ public class CreateBundleMojo
     }
     bundle.initDefaults(project, session);
 
+    Long timestamp = getReproducibleTimestamp();
+    boolean nativeArchiver = isNativeArchiver();
+
     Assembly assembly = createAssembly();
     assembly.addFormat(BUNDLE_TYPE);
     assembly.setId(BUNDLE_ID);
@@ -94,20 +195,20 @@ public class CreateBundleMojo
     List<FileItem> classPathItems = new ArrayList<FileItem>();
 
     // Write included plugin dependencies into the the /dependencies directory
+    BuildMetrics.Phase phase = getMetrics().start("classpath");
     try {
-      Properties artifacts = ClasspathUtils.read(project);
-
-      // build list of keys and sort for better display
-      List<String> artifactKeys = new ArrayList<String>(mapOf(artifacts).keySet());
-      Collections.sort(artifactKeys);
+      List<ClasspathEntry> entries = ClasspathUtils.read(project, getLocalRepository());
 
       String outputDirectory = String.format("%s-%s/dependencies", project.getArtifactId(), project.getVersion());
 
-      if (!artifacts.isEmpty()) {
-        getLog().info("Including " + artifacts.size() + " dependencies:");
-        for (String key : artifactKeys) {
-          getLog().info(" + " + key);
-          FileItem fileItem = ClasspathUtils.createFileItemForKey(key, artifacts);
+      if (!entries.isEmpty()) {
+        getLog().info("Including " + entries.size() + " dependencies:");
+        for (ClasspathEntry entry : entries) {
+          getLog().info(" + " + entry.getKey());
+          if (entry.isStale()) {
+            getLog().warn("Dependency changed since the plugin metadata was generated: " + entry.getFile());
+          }
+          FileItem fileItem = ClasspathUtils.createFileItem(entry);
           fileItem.setOutputDirectory(outputDirectory);
           classPathItems.add(fileItem);
           assembly.addFile(fileItem);
@@ -117,6 +218,7 @@ public class CreateBundleMojo
     catch (IOException e) {
       throw new MojoExecutionException("Failed to create plugin bundle: " + e.getMessage(), e);
     }
+    phase.end();
 
     // Add the main plugin artifact
     FileItem fileItem = new FileItem();
@@ -125,10 +227,17 @@ public class CreateBundleMojo
     classPathItems.add(fileItem);
     assembly.addFile(fileItem);
 
+    PackageCache packageCache = null;
+    if (packageCacheSize > 0) {
+      packageCache = new PackageCache(new File(cacheDirectory, "packages"), packageCacheSize,
+          new File(project.getBuild().getDirectory()));
+    }
+
+    FileItem osgiItem = new FileItem();
+    phase = getMetrics().start("osgi-metadata");
     try {
       // Add OSGi metadata (optimized for exploded plugin bundle)
-      FileItem osgiItem = new FileItem();
-      osgiItem.setSource(OSGiUtils.updateMetadata(project, classPathItems));
+      osgiItem.setSource(OSGiUtils.updateMetadata(project, classPathItems, exportScanThreads, packageCache));
       osgiItem.setOutputDirectory(fileItem.getOutputDirectory() + "/META-INF");
       osgiItem.setDestName("MANIFEST.MF");
       assembly.addFile(osgiItem);
@@ -136,27 +245,142 @@ public class CreateBundleMojo
     catch (IOException e) {
       throw new MojoExecutionException("Failed to create plugin bundle: " + e.getMessage(), e);
     }
+    finally {
+      if (packageCache != null) {
+        packageCache.evict();
+      }
+    }
+    phase.end();
+
+    if (explodedDirectory != null) {
+      phase = getMetrics().start("explode");
+      explode(classPathItems, osgiItem);
+      phase.end();
+      return;
+    }
 
-    // Generate the bundle assembly
     File assemblyFile;
-    try {
-      assemblyFile = assemblyArchiver
-          .createArchive(assembly, bundle.getAssemblyFileName(assembly), BUNDLE_TYPE, bundle);
+    if (nativeArchiver) {
+      // Write the bundle straight from the bundled files
+      assemblyFile = new File(bundle.getOutputDirectory(), bundle.getAssemblyFileName(assembly) + "." + BUNDLE_TYPE);
+      phase = getMetrics().start("archive");
+      BundleWriter writer = new BundleWriter(bundleThreads, timestamp);
+      if (FORMAT_ALIGNED.equals(bundleFormat)) {
+        writer.setAligned(bundleAlignment, fileItem.getOutputDirectory() + "/" + INDEX_PATH);
+      }
+      for (FileItem item : classPathItems) {
+        writer.add(getPath(item), new File(item.getSource()));
+      }
+      writer.add(getPath(osgiItem), new File(osgiItem.getSource()));
+      try {
+        writer.write(assemblyFile);
+      }
+      catch (IOException e) {
+        throw new MojoExecutionException("Failed to create plugin bundle: " + e.getMessage(), e);
+      }
+      phase.end();
     }
-    catch (Exception e) {
-      throw new MojoExecutionException("Failed to create plugin bundle: " + e.getMessage(), e);
+    else {
+      // Generate the bundle assembly
+      phase = getMetrics().start("archive");
+      try {
+        assemblyFile = assemblyArchiver
+            .createArchive(assembly, bundle.getAssemblyFileName(assembly), BUNDLE_TYPE, bundle);
+      }
+      catch (Exception e) {
+        throw new MojoExecutionException("Failed to create plugin bundle: " + e.getMessage(), e);
+      }
+      phase.end();
+
+      if (timestamp != null) {
+        phase = getMetrics().start("normalize");
+        try {
+          ZipNormalizer.normalize(assemblyFile, timestamp);
+        }
+        catch (IOException e) {
+          throw new MojoExecutionException("Failed to normalize plugin bundle: " + e.getMessage(), e);
+        }
+        phase.end();
+      }
     }
 
     // Attach bundle assembly to the project
     projectHelper.attachArtifact(project, BUNDLE_TYPE, assembly.getId(), assemblyFile);
   }
 
-  private static Map<String, String> mapOf(final Properties props) {
-    Map<String, String> map = new HashMap<String, String>(props.size());
-    for (Object key : props.keySet()) {
-      map.put(key.toString(), props.get(key).toString());
+  /**
+   * Returns the entry time of reproducible bundles, or {@code null} if bundles are not to be made reproducible.
+   */
+  @Nullable
+  private Long getReproducibleTimestamp() throws MojoFailureException {
+    Long timestamp;
+    try {
+      timestamp = ZipNormalizer.parseTimestamp(outputTimestamp);
+    }
+    catch (IllegalArgumentException e) {
+      throw new MojoFailureException(e.getMessage());
+    }
+    if (timestamp == null && reproducible) {
+      timestamp = ZipNormalizer.DEFAULT_TIMESTAMP;
+    }
+    return timestamp;
+  }
+
+  private void explode(final List<FileItem> classPathItems, final FileItem osgiItem) throws MojoExecutionException {
+    String localRepository = getLocalRepository().getPath() + File.separator;
+
+    ExplodedBundleWriter writer = new ExplodedBundleWriter();
+    for (FileItem item : classPathItems) {
+      File file = new File(item.getSource());
+      writer.add(getPath(item), file, file.getAbsolutePath().startsWith(localRepository));
+    }
+    writer.add(getPath(osgiItem), new File(osgiItem.getSource()), false);
+
+    try {
+      writer.write(explodedDirectory);
+    }
+    catch (IOException e) {
+      throw new MojoExecutionException("Failed to write exploded plugin bundle: " + e.getMessage(), e);
     }
-    return map;
+    getLog().info("Exploded bundle into " + explodedDirectory + ": " + writer.getLinked() + " linked, "
+        + writer.getCopied() + " copied, " + writer.getUnchanged() + " unchanged, " + writer.getDeleted()
+        + " deleted");
+  }
+
+  private boolean isNativeArchiver() throws MojoFailureException {
+    if (FORMAT_ALIGNED.equals(bundleFormat)) {
+      if (assemblyDescriptor != null) {
+        throw new MojoFailureException("Bundle format " + FORMAT_ALIGNED + " does not support an assembly descriptor");
+      }
+      if (bundleAlignment <= 0 || bundleAlignment > 32 * 1024) {
+        throw new MojoFailureException("Invalid bundle alignment: " + bundleAlignment + ", expected 1 to 32768 bytes");
+      }
+      return true;
+    }
+    if (!FORMAT_ZIP.equals(bundleFormat)) {
+      throw new MojoFailureException("Unknown bundle format: " + bundleFormat + ", expected one of: "
+          + FORMAT_ZIP + ", " + FORMAT_ALIGNED);
+    }
+    if (ARCHIVER_NATIVE.equals(bundleArchiver)) {
+      if (assemblyDescriptor != null) {
+        getLog().info("Using assembly archiver for custom assembly descriptor");
+        return false;
+      }
+      return true;
+    }
+    if (!ARCHIVER_ASSEMBLY.equals(bundleArchiver)) {
+      throw new MojoFailureException("Unknown bundle archiver: " + bundleArchiver + ", expected one of: "
+          + ARCHIVER_ASSEMBLY + ", " + ARCHIVER_NATIVE);
+    }
+    return false;
+  }
+
+  /**
+   * Returns the path of the given item in the bundle.
+   */
+  private static String getPath(final FileItem item) {
+    String name = item.getDestName() != null ? item.getDestName() : new File(item.getSource()).getName();
+    return item.getOutputDirectory() + "/" + name;
   }
 
   private Assembly createAssembly() throws MojoExecutionException {
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * The resolved dependency graph of a project, rebuilt from the dependency trails of its resolved artifacts.
+ *
+ * @since 1.4
+ */
+public class DependencyGraph
+{
+  /**
+   * Callback for {@link DependencyGraph#accept(Visitor)}.
+   */
+  public interface Visitor
+  {
+    /**
+     * @return {@code false} to skip the dependencies of the given artifact.
+     */
+    boolean visit(Artifact artifact) throws MojoFailureException;
+  }
+
+  private static final Comparator<Artifact> BY_ID = new Comparator<Artifact>()
+  {
+    public int compare(final Artifact a, final Artifact b) {
+      return a.getId().compareTo(b.getId());
+    }
+  };
+
+  private final List<Artifact> roots = new ArrayList<Artifact>();
+
+  private final Map<String, List<Artifact>> children = new HashMap<String, List<Artifact>>();
+
+  public DependencyGraph(final Collection<Artifact> artifacts) {
+    Set<String> ids = new HashSet<String>();
+    for (Artifact artifact : artifacts) {
+      ids.add(artifact.getId());
+    }
+
+    // trails end with the path from the project to the artifact; direct dependencies only have the project before them
+    for (Artifact artifact : artifacts) {
+      List<String> trail = artifact.getDependencyTrail();
+      String parent = trail != null && trail.size() >= 2 ? trail.get(trail.size() - 2) : null;
+      if (parent == null || !ids.contains(parent)) {
+        roots.add(artifact);
+        continue;
+      }
+      List<Artifact> siblings = children.get(parent);
+      if (siblings == null) {
+        siblings = new ArrayList<Artifact>();
+        children.put(parent, siblings);
+      }
+      siblings.add(artifact);
+    }
+
+    Collections.sort(roots, BY_ID);
+    for (List<Artifact> siblings : children.values()) {
+      Collections.sort(siblings, BY_ID);
+    }
+  }
+
+  /**
+   * Visits each artifact once, depth first from the direct dependencies of the project and in id order among
+   * siblings, so the order does not depend on the order of the resolved artifacts.
+   */
+  public void accept(final Visitor visitor) throws MojoFailureException {
+    LinkedList<Artifact> stack = new LinkedList<Artifact>(roots);
+    Set<String> visited = new HashSet<String>();
+    while (!stack.isEmpty()) {
+      Artifact artifact = stack.removeFirst();
+      if (!visited.add(artifact.getId()) || !visitor.visit(artifact)) {
+        continue;
+      }
+      List<Artifact> next = children.get(artifact.getId());
+      if (next != null) {
+        stack.addAll(0, next);
+      }
+    }
+  }
+}
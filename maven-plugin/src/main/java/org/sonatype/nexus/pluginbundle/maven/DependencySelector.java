@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import static org.apache.maven.artifact.Artifact.SCOPE_COMPILE;
+import static org.apache.maven.artifact.Artifact.SCOPE_PROVIDED;
+import static org.apache.maven.artifact.Artifact.SCOPE_RUNTIME;
+import static org.apache.maven.artifact.Artifact.SCOPE_TEST;
+import static org.sonatype.nexus.pluginbundle.maven.MojoSupport.NEXUS_PLUGIN;
+
+/**
+ * Selects the plugin and classpath dependencies of a plugin from its resolved artifacts, for
+ * {@link GenerateMetadataMojo}. Provided and test dependencies are left out with everything they pull in, banned and
+ * user excluded dependencies are left out by key.
+ *
+ * @since 1.4
+ */
+public class DependencySelector
+{
+  /**
+   * Decides which keys are banned or excluded, and receives the selected dependencies in selection order.
+   */
+  public interface Callback
+  {
+    boolean isBanned(String key);
+
+    boolean isExcluded(String key);
+
+    void addPluginDependency(Artifact artifact) throws MojoFailureException;
+
+    void addClasspathDependency(Artifact artifact) throws MojoFailureException;
+  }
+
+  private final Callback callback;
+
+  private final Log log;
+
+  private final Set<Artifact> classpathArtifacts = new LinkedHashSet<Artifact>();
+
+  private final Set<String> excludedArtifactIds = new HashSet<String>();
+
+  private final Set<String> userExcludesIds = new HashSet<String>();
+
+  private final Set<String> autoBannedIds = new HashSet<String>();
+
+  private final Set<String> pluginIds = new HashSet<String>();
+
+  public DependencySelector(final Callback callback, final Log log) {
+    this.callback = callback;
+    this.log = log;
+  }
+
+  /**
+   * Selects the classpath dependencies by checking the dependency trail of each artifact for excluded ancestors.
+   */
+  public void selectFromDependencyTrails(final List<Artifact> artifacts) throws MojoFailureException {
+    // FIXME: Drop need for label, the following is already complex and hard to comprehend
+    artifactLoop:
+    for (Artifact artifact : artifacts) {
+      final String artifactKey = ClasspathUtils.formatArtifactKey(artifact);
+
+      if (artifact.getType().equals(NEXUS_PLUGIN)) {
+        callback.addPluginDependency(artifact);
+
+        excludedArtifactIds.add(artifactKey);
+        pluginIds.add(artifactKey);
+      }
+      else if (SCOPE_PROVIDED.equals(artifact.getScope()) || SCOPE_TEST.equals(artifact.getScope())) {
+        excludedArtifactIds.add(artifact.getId());
+      }
+      else if (SCOPE_COMPILE.equals(artifact.getScope()) || SCOPE_RUNTIME.equals(artifact.getScope())) {
+        if (artifact.getDependencyTrail() != null) {
+          for (String trailId : artifact.getDependencyTrail()) {
+            if (excludedArtifactIds.contains(trailId)) {
+              log.debug(String.format(
+                  "Dependency artifact: %s is part of the transitive dependency set for a dependency with 'provided' or 'test' scope: %s\n" +
+                      "This artifact will be excluded from the plugin classpath", artifact.getId(), trailId));
+              continue artifactLoop;
+            }
+          }
+        }
+
+        if (callback.isBanned(artifactKey)) {
+          autoBannedIds.add(artifactKey);
+        }
+        else if (callback.isExcluded(artifactKey)) {
+          userExcludesIds.add(artifactKey);
+        }
+        else {
+          callback.addClasspathDependency(artifact);
+          classpathArtifacts.add(artifact);
+        }
+      }
+    }
+  }
+
+  /**
+   * Selects the classpath dependencies by walking the resolved dependency graph once from the project, pruning the
+   * subtrees of plugin, provided, test and banned dependencies at their roots. Siblings are visited in id order, so
+   * the result does not depend on the order of the resolved artifacts.
+   */
+  public void selectFromDependencyGraph(final List<Artifact> artifacts) throws MojoFailureException {
+    new DependencyGraph(artifacts).accept(new DependencyGraph.Visitor()
+    {
+      public boolean visit(final Artifact artifact) throws MojoFailureException {
+        String artifactKey = ClasspathUtils.formatArtifactKey(artifact);
+
+        if (artifact.getType().equals(NEXUS_PLUGIN)) {
+          callback.addPluginDependency(artifact);
+          excludedArtifactIds.add(artifactKey);
+          pluginIds.add(artifactKey);
+          return false;
+        }
+        if (SCOPE_PROVIDED.equals(artifact.getScope()) || SCOPE_TEST.equals(artifact.getScope())) {
+          excludedArtifactIds.add(artifact.getId());
+          return false;
+        }
+        if (SCOPE_COMPILE.equals(artifact.getScope()) || SCOPE_RUNTIME.equals(artifact.getScope())) {
+          if (callback.isBanned(artifactKey)) {
+            autoBannedIds.add(artifactKey);
+            return false;
+          }
+          if (callback.isExcluded(artifactKey)) {
+            userExcludesIds.add(artifactKey);
+          }
+          else {
+            callback.addClasspathDependency(artifact);
+            classpathArtifacts.add(artifact);
+          }
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * The selected classpath dependencies, in selection order.
+   */
+  public Set<Artifact> getClasspathArtifacts() {
+    return classpathArtifacts;
+  }
+
+  /**
+   * Ids and keys of the plugin, provided and test dependencies whose dependencies were left out.
+   */
+  public Set<String> getExcludedArtifactIds() {
+    return excludedArtifactIds;
+  }
+
+  public Set<String> getUserExcludesIds() {
+    return userExcludesIds;
+  }
+
+  public Set<String> getAutoBannedIds() {
+    return autoBannedIds;
+  }
+
+  public Set<String> getPluginIds() {
+    return pluginIds;
+  }
+}
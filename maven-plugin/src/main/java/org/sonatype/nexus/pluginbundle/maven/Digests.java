@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Message digests of files and bytes, in lower case hex.
+ *
+ * @since 1.4
+ */
+public class Digests
+{
+  public static final String SHA1 = "SHA-1";
+
+  public static final String SHA256 = "SHA-256";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Digests() {
+    // empty
+  }
+
+  /**
+   * Returns a new digest for the given algorithm, which every JRE supports.
+   */
+  public static MessageDigest create(final String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static String sha1(final byte[] bytes) {
+    byte[] digest = create(SHA1).digest(bytes);
+    return toHex(digest, digest.length);
+  }
+
+  public static String sha1(final File file) throws IOException {
+    return digest(SHA1, file);
+  }
+
+  /**
+   * Returns the digest of the content of the given file.
+   */
+  public static String digest(final String algorithm, final File file) throws IOException {
+    MessageDigest digest = create(algorithm);
+    InputStream input = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[65536];
+      for (int n = input.read(buffer); n != -1; n = input.read(buffer)) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+    byte[] bytes = digest.digest();
+    return toHex(bytes, bytes.length);
+  }
+
+  public static String toHex(final byte[] bytes, final int length) {
+    char[] chars = new char[length * 2];
+    for (int i = 0; i < length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+}
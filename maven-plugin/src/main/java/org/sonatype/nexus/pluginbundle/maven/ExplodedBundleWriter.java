@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Writes plugin bundles exploded into a directory, eg. the plugin repository of a development Nexus, instead of
+ * zipping them.
+ *
+ * Linkable files are hard linked when the platform supports it (Java 7 and later) and the directory is on the same
+ * file system, all others are copied. Files whose size and last modified time match the bundled file are left alone,
+ * and files no longer part of the bundle are deleted from the top-level directories of the bundle, so rewriting an
+ * unchanged bundle is close to free.
+ *
+ * @since 1.4
+ */
+public class ExplodedBundleWriter
+{
+  private static final Method TO_PATH;
+
+  private static final Method CREATE_LINK;
+
+  static {
+    Method toPath = null;
+    Method createLink = null;
+    try {
+      Class<?> path = Class.forName("java.nio.file.Path");
+      toPath = File.class.getMethod("toPath");
+      createLink = Class.forName("java.nio.file.Files").getMethod("createLink", path, path);
+    }
+    catch (Exception e) {
+      // hard links need Java 7
+    }
+    TO_PATH = toPath;
+    CREATE_LINK = createLink;
+  }
+
+  private final Map<String, File> files = new LinkedHashMap<String, File>();
+
+  private final Set<String> linkable = new HashSet<String>();
+
+  private int linked;
+
+  private int copied;
+
+  private int unchanged;
+
+  private int deleted;
+
+  /**
+   * Adds a file to the bundle.
+   *
+   * @param path Path of the file in the bundle, separated by {@code /}.
+   * @param link Whether the file may be hard linked, which is only safe for files never written in place again, like
+   *             those of the local repository.
+   */
+  public void add(final String path, final File file, final boolean link) {
+    files.put(path, file);
+    if (link) {
+      linkable.add(path);
+    }
+    else {
+      linkable.remove(path);
+    }
+  }
+
+  /**
+   * Writes the bundle into the given directory.
+   */
+  public void write(final File directory) throws IOException {
+    Set<File> roots = new HashSet<File>();
+    Set<File> targets = new HashSet<File>();
+    for (Map.Entry<String, File> entry : files.entrySet()) {
+      String path = entry.getKey();
+      int slash = path.indexOf('/');
+      if (slash > 0) {
+        roots.add(new File(directory, path.substring(0, slash)));
+      }
+      File target = new File(directory, path);
+      targets.add(target);
+      write(entry.getValue(), target, linkable.contains(path));
+    }
+
+    for (File root : roots) {
+      deleteStale(root, targets);
+    }
+  }
+
+  private void write(final File source, final File target, final boolean link) throws IOException {
+    if (target.isFile() && target.length() == source.length() && target.lastModified() == source.lastModified()) {
+      unchanged++;
+      return;
+    }
+
+    target.getParentFile().mkdirs();
+    if (target.exists() && !target.delete()) {
+      throw new IOException("Failed to delete " + target);
+    }
+
+    if (link && link(source, target)) {
+      linked++;
+      return;
+    }
+
+    copy(source, target);
+    if (!target.setLastModified(source.lastModified())) {
+      throw new IOException("Failed to set last modified time of " + target);
+    }
+    copied++;
+  }
+
+  private static boolean link(final File source, final File target) {
+    if (CREATE_LINK == null) {
+      return false;
+    }
+    try {
+      CREATE_LINK.invoke(null, TO_PATH.invoke(target), TO_PATH.invoke(source));
+      return true;
+    }
+    catch (InvocationTargetException e) {
+      // eg. another file system, or links not supported
+      return false;
+    }
+    catch (IllegalAccessException e) {
+      return false;
+    }
+  }
+
+  private static void copy(final File source, final File target) throws IOException {
+    FileInputStream input = new FileInputStream(source);
+    try {
+      FileOutputStream output = new FileOutputStream(target);
+      try {
+        FileChannel in = input.getChannel();
+        FileChannel out = output.getChannel();
+        long size = in.size();
+        for (long position = 0; position < size; ) {
+          position += in.transferTo(position, size - position, out);
+        }
+        output.close();
+      }
+      finally {
+        IOUtil.close(output);
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+  }
+
+  /**
+   * Deletes files and emptied directories below the given directory which are not part of the bundle.
+   */
+  private void deleteStale(final File directory, final Set<File> targets) throws IOException {
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        deleteStale(child, targets);
+        String[] left = child.list();
+        if (left != null && left.length == 0 && !child.delete()) {
+          throw new IOException("Failed to delete " + child);
+        }
+      }
+      else if (!targets.contains(child)) {
+        if (!child.delete()) {
+          throw new IOException("Failed to delete " + child);
+        }
+        deleted++;
+      }
+    }
+  }
+
+  public int getLinked() {
+    return linked;
+  }
+
+  public int getCopied() {
+    return copied;
+  }
+
+  public int getUnchanged() {
+    return unchanged;
+  }
+
+  public int getDeleted() {
+    return deleted;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProjectHelper;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.PACKAGE;
+import static org.apache.maven.plugins.annotations.ResolutionScope.RUNTIME;
+
+/**
+ * Generate the list of dependencies banned from plugins built against this project (usually nexus-plugin-api) and
+ * attach it to the project.
+ *
+ * Plugins can then configure {@code bannedListClassifier} to read this list instead of collecting the dependency
+ * graph of the banned root artifact on every build.
+ *
+ * @since 1.4
+ */
+@Mojo(name = "generate-banned-list", defaultPhase = PACKAGE, requiresDependencyResolution = RUNTIME)
+public class GenerateBannedListMojo
+    extends MojoSupport
+{
+  @Component
+  private BuildContext buildContext;
+
+  @Component
+  private MavenProjectHelper projectHelper;
+
+  /**
+   * Classifier of the attached banned dependency list.
+   */
+  @Parameter(property = "bannedListClassifier", defaultValue = BannedListUtils.DEFAULT_CLASSIFIER)
+  private String bannedListClassifier;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    // runtime resolution reaches the same dependencies as the graph collection done by generate-metadata
+    Set<String> ids = BannedListUtils.select(project.getArtifacts());
+
+    File file = new File(project.getBuild().getDirectory(),
+        String.format("%s-%s.%s", project.getBuild().getFinalName(), bannedListClassifier, BannedListUtils.TYPE));
+
+    getLog().info("Generating banned dependency list with " + ids.size() + " entries: " + file.getAbsolutePath());
+    try {
+      BannedListUtils.write(buildContext, ids, file);
+    }
+    catch (IOException e) {
+      throw new MojoFailureException("Failed to generate banned dependency list: " + e, e);
+    }
+
+    projectHelper.attachArtifact(project, BannedListUtils.TYPE, bannedListClassifier, file);
+  }
+}
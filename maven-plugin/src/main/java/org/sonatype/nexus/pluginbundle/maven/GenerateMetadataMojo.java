@@ -14,11 +14,19 @@
 package org.sonatype.nexus.pluginbundle.maven;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
 
 import org.sonatype.aether.RepositorySystem;
 import org.sonatype.aether.RepositorySystemSession;
@@ -28,11 +36,20 @@ import org.sonatype.aether.collection.DependencyCollectionException;
 import org.sonatype.aether.graph.Dependency;
 import org.sonatype.aether.graph.DependencyNode;
 import org.sonatype.aether.graph.DependencyVisitor;
+import org.sonatype.aether.resolution.ArtifactRequest;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+import org.sonatype.aether.resolution.ArtifactResult;
 import org.sonatype.aether.util.artifact.DefaultArtifact;
 import org.sonatype.nexus.pluginbundle.maven.scm.GitRevParseCommand;
 import org.sonatype.nexus.pluginbundle.maven.scm.GitRevParseScmResult;
+import org.sonatype.nexus.pluginbundle.maven.scm.GitRevisionReader;
 import org.sonatype.nexus.pluginbundle.maven.scm.HgDebugIdCommand;
 import org.sonatype.nexus.pluginbundle.maven.scm.HgDebugIdScmResult;
+import org.sonatype.nexus.pluginbundle.maven.scm.HgRevisionReader;
+import org.sonatype.nexus.pluginbundle.maven.scm.ScmRevision;
+import org.sonatype.nexus.pluginbundle.maven.scm.ScmRevisionCache;
+import org.sonatype.nexus.pluginbundle.maven.scm.ScmRevisions;
+import org.sonatype.nexus.pluginbundle.maven.scm.SvnRevisionReader;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
 import org.apache.maven.artifact.Artifact;
@@ -46,6 +63,7 @@ import org.apache.maven.scm.ScmException;
 import org.apache.maven.scm.ScmFileSet;
 import org.apache.maven.scm.manager.ScmManager;
 import org.apache.maven.scm.provider.ScmProviderRepository;
+import org.apache.maven.scm.provider.ScmUrlUtils;
 import org.apache.maven.scm.provider.git.AbstractGitScmProvider;
 import org.apache.maven.scm.provider.hg.HgScmProvider;
 import org.apache.maven.scm.provider.svn.AbstractSvnScmProvider;
@@ -54,10 +72,7 @@ import org.apache.maven.scm.provider.svn.command.info.SvnInfoScmResult;
 import org.apache.maven.scm.repository.ScmRepository;
 import org.codehaus.plexus.util.StringUtils;
 
-import static org.apache.maven.artifact.Artifact.SCOPE_COMPILE;
 import static org.apache.maven.artifact.Artifact.SCOPE_PROVIDED;
-import static org.apache.maven.artifact.Artifact.SCOPE_RUNTIME;
-import static org.apache.maven.artifact.Artifact.SCOPE_TEST;
 import static org.apache.maven.plugins.annotations.LifecyclePhase.PROCESS_CLASSES;
 import static org.apache.maven.plugins.annotations.ResolutionScope.TEST;
 
@@ -141,12 +156,127 @@ public class GenerateMetadataMojo
   @Parameter
   private boolean dependencyBanningEnabled = true;
 
+  /**
+   * Classifier of a banned dependency list attached to {@link #bannedRootArtifactId} by the generate-banned-list goal.
+   * When set, that list is resolved instead of collecting the dependency graph of the banned root artifact.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bannedListClassifier")
+  private String bannedListClassifier;
+
+  /**
+   * Selects the plugin classpath by walking the resolved dependency graph once, pruning the subtrees of plugin,
+   * provided, test and banned dependencies, instead of checking the dependency trail of every artifact.
+   *
+   * Unlike the default mode, dependencies only reachable through a banned dependency are excluded as well.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "dependencyGraphExclusion", defaultValue = "false")
+  private boolean dependencyGraphExclusion;
+
+  /**
+   * Records the packages contained in each classpath dependency in the plugin descriptor, so a class loader can go
+   * straight to the jar owning a package instead of probing all of them. Scanned jars are remembered in the package
+   * cache shared with {@code create-bundle}.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "recordPackageNames", defaultValue = "false")
+  private boolean recordPackageNames;
+
+  /**
+   * Records the SHA-256 and size of each classpath dependency in the plugin descriptor, so unchanged jars can be
+   * skipped when the plugin is upgraded.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "recordChecksums", defaultValue = "false")
+  private boolean recordChecksums;
+
+  /**
+   * Number of threads used to compute the checksums of classpath dependencies.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "checksumThreads", defaultValue = "4")
+  private int checksumThreads;
+
+  /**
+   * Forces the plugin metadata to be regenerated, even if none of its inputs changed since the last build.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "forceMetadata", defaultValue = "false")
+  private boolean forceMetadata;
+
+  @Parameter(defaultValue = "${plugin.version}", readonly = true)
+  private String pluginVersion;
+
+  /**
+   * Comma separated names of environment variables holding the SCM revision of the build, as set by CI servers, eg.
+   * {@code GIT_COMMIT}. The first one set is used instead of querying the SCM for the revision; the well known
+   * {@code GIT_COMMIT}, {@code SVN_REVISION} and {@code MERCURIAL_REVISION} are only used for projects of their SCM.
+   * Note {@code SVN_REVISION} is the revision of the checkout, not the last changed revision of the module.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "scmVersionVariables")
+  private String scmVersionVariables;
+
+  /**
+   * Comma separated names of environment variables holding the SCM timestamp of the build. When none is set, the
+   * timestamp is still read from the SCM.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "scmTimestampVariables")
+  private String scmTimestampVariables;
+
+  /**
+   * Properties file providing the SCM revision ({@code scm.version}) and timestamp ({@code scm.timestamp}) of the
+   * build, instead of querying the SCM. Takes precedence over {@link #scmVersionVariables}.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "scmInfoFile")
+  private File scmInfoFile;
+
+  /**
+   * Maximum time in seconds to wait for SCM details when they have to be queried from the SCM; 0 waits forever.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "scmTimeout", defaultValue = "60")
+  private int scmTimeout;
+
   /**
    * List of banned groupId:artifactId dependencies.
    */
   private List<String> bannedIds;
 
+  private ArtifactKeyMatcher bannedMatcher;
+
+  private ArtifactKeyMatcher excludesMatcher;
+
+  private PackageCache packageCache;
+
+  /**
+   * Files of the classpath dependencies to record checksums of.
+   */
+  private final Map<GAVCoordinate, File> checksumFiles = new LinkedHashMap<GAVCoordinate, File>();
+
   public void execute() throws MojoExecutionException, MojoFailureException {
+    try {
+      generateMetadata();
+    }
+    finally {
+      reportMetrics();
+    }
+  }
+
+  private void generateMetadata() throws MojoExecutionException, MojoFailureException {
     // skip if wrong packaging
     if (!isNexusPluginPacakging()) {
       return;
@@ -168,39 +298,67 @@ public class GenerateMetadataMojo
       }
     }
 
+    File outputDir = new File(project.getBuild().getOutputDirectory());
+    File file = new File(outputDir, "META-INF/nexus/plugin.xml");
+    request.setOutputFile(file);
+
+    List<Artifact> artifacts = project.getTestArtifacts();
+
+    // skip if nothing changed since the last build
+    BuildMetrics.Phase phase = getMetrics().start("fingerprint");
+    String fingerprint = fingerprint(request, artifacts);
+    boolean upToDate = !forceMetadata && isUpToDate(fingerprint);
+    phase.end();
+    if (upToDate) {
+      getLog().info("Metadata descriptor is up-to-date: " + file.getAbsolutePath());
+      return;
+    }
+
     // dependencies
     if (bannedRootArtifactId != null) {
       if (!dependencyBanningEnabled) {
         getLog().debug("Dependency banning is disabled");
       }
       else {
+        phase = getMetrics().start("banned-dependencies");
         try {
-          bannedIds = collectBannedDependencies();
+          bannedIds = getBannedDependencies();
         }
-        catch (DependencyCollectionException e) {
+        catch (Exception e) {
           throw new MojoFailureException(e.getMessage(), e);
         }
+        phase.end();
       }
     }
-    Set<Artifact> classpathArtifacts = fillInDependencies(request);
+    phase = getMetrics().start("dependencies");
+    Set<Artifact> classpathArtifacts = fillInDependencies(request, artifacts);
+    phase.end();
+
+    Map<File, String> checksums = Collections.emptyMap();
+    if (recordChecksums) {
+      phase = getMetrics().start("checksums");
+      checksums = recordChecksums(request);
+      phase.end();
+    }
 
     // scm information
+    phase = getMetrics().start("scm");
     fillScmInfo(request);
-
-    File outputDir = new File(project.getBuild().getOutputDirectory());
-    File file = new File(outputDir, "META-INF/nexus/plugin.xml");
-    request.setOutputFile(file);
+    phase.end();
 
     getLog().info("Generating metadata descriptor: " + file.getAbsolutePath());
+    phase = getMetrics().start("descriptor");
     try {
       new PluginDescriptorGenerator(buildContext).generate(request);
     }
     catch (Exception e) {
       throw new MojoFailureException("Failed to generate plugin metadata file: " + e, e);
     }
+    phase.end();
 
+    phase = getMetrics().start("state-files");
     try {
-      ClasspathUtils.write(buildContext, classpathArtifacts, project);
+      ClasspathUtils.write(buildContext, classpathArtifacts, project, getLocalRepository(), checksums);
     }
     catch (Exception e) {
       throw new MojoFailureException("Failed to generate plugin classpath file: " + e, e);
@@ -212,87 +370,118 @@ public class GenerateMetadataMojo
     catch (Exception e) {
       throw new MojoFailureException("Failed to generate OSGi metadata file: " + e, e);
     }
+
+    try {
+      MetadataFingerprint.write(buildContext, project, fingerprint);
+    }
+    catch (Exception e) {
+      getLog().warn("Failed to write metadata fingerprint: " + e);
+    }
+    phase.end();
   }
 
-  private Set<Artifact> fillInDependencies(final PluginDescriptorGenerationRequest request)
+  /**
+   * Computes the fingerprint of all inputs which contribute to the generated metadata.
+   */
+  private String fingerprint(final PluginDescriptorGenerationRequest request, final List<Artifact> artifacts) {
+    MetadataFingerprint fingerprint = new MetadataFingerprint()
+        .add("pluginVersion", pluginVersion)
+        .add("groupId", request.getGroupId())
+        .add("artifactId", request.getArtifactId())
+        .add("version", request.getVersion())
+        .add("name", request.getName())
+        .add("description", request.getDescription())
+        .add("pluginSiteUrl", request.getPluginSiteURL())
+        .add("licenses", new TreeMap<String, String>(request.getLicenses()).entrySet())
+        .add("outputFile", request.getOutputFile())
+        .add("buildDirectory", project.getBuild().getDirectory())
+        .add("finalName", project.getBuild().getFinalName())
+        .add("classpathDependencyExcludes", classpathDependencyExcludes)
+        .add("sharedDependencies", sharedDependencies)
+        .add("bannedRootArtifactId", bannedRootArtifactId)
+        .add("dependencyBanningEnabled", dependencyBanningEnabled)
+        .add("bannedListClassifier", bannedListClassifier)
+        .add("dependencyGraphExclusion", dependencyGraphExclusion)
+        .add("recordPackageNames", recordPackageNames)
+        .add("recordChecksums", recordChecksums);
+
+    ScmRevision external = getExternalScmRevision();
+    if (external != null) {
+      fingerprint.add("scmVersion", external.getVersion())
+          .add("scmTimestamp", external.getTimestamp());
+    }
+    if (project.getScm() != null) {
+      fingerprint.add("scm", project.getScm().getDeveloperConnection())
+          .add("username", username);
+      if (external == null || external.getTimestamp() == null) {
+        fingerprint.addScmHead(project.getBasedir());
+      }
+    }
+
+    if (artifacts != null) {
+      for (Artifact artifact : artifacts) {
+        fingerprint.add(artifact);
+      }
+    }
+
+    return fingerprint.compute();
+  }
+
+  /**
+   * Checks whether all generated files exist and were generated from inputs matching the given fingerprint.
+   */
+  private boolean isUpToDate(final String fingerprint) {
+    File descriptor = new File(project.getBuild().getOutputDirectory(), "META-INF/nexus/plugin.xml");
+    if (!descriptor.isFile()
+        || !PluginDescriptorGenerator.getBinaryFile(descriptor).isFile()
+        || !ClasspathUtils.getFile(project).isFile()
+        || !OSGiUtils.getFile(project).isFile()) {
+      return false;
+    }
+    return fingerprint.equals(MetadataFingerprint.read(project));
+  }
+
+  private Set<Artifact> fillInDependencies(final PluginDescriptorGenerationRequest request,
+                                          final List<Artifact> artifacts)
       throws MojoFailureException
   {
-    List<Artifact> artifacts = project.getTestArtifacts();
-    Set<Artifact> classpathArtifacts = new HashSet<Artifact>();
+    Set<Artifact> classpathArtifacts = new LinkedHashSet<Artifact>();
     if (artifacts != null) {
 
-      Set<String> excludedArtifactIds = new HashSet<String>();
-      Set<String> userExcludesIds = new HashSet<String>();
-      Set<String> autoBannedIds = new HashSet<String>();
-      Set<String> pluginIds = new HashSet<String>();
+      bannedMatcher = ArtifactKeyMatcher.ids(bannedIds);
+      excludesMatcher = ArtifactKeyMatcher.prefixes(classpathDependencyExcludes);
 
-      // FIXME: Drop need for label, the following is already complex and hard to comprehend
-      artifactLoop:
-      for (Artifact artifact : artifacts) {
-        final String artifactKey = ClasspathUtils.formatArtifactKey(artifact);
-        boolean excluded = isExcluded(artifactKey);
-        boolean banned = isBanned(artifactKey);
-
-        if (artifact.getType().equals(NEXUS_PLUGIN)) {
-          if (!SCOPE_PROVIDED.equals(artifact.getScope())) {
-            throw new MojoFailureException(
-                "Nexus plugin dependency must use 'provided' scope: " + artifact.getDependencyConflictId());
-          }
+      DependencySelector selector = new DependencySelector(new DependencySelector.Callback()
+      {
+        public boolean isBanned(final String key) {
+          return GenerateMetadataMojo.this.isBanned(key);
+        }
 
-          // plugin inter-dependencies will use baseVersion, and let PluginManager resolve them runtime
-          request.addPluginDependency(new GAVCoordinate(
-              artifact.getGroupId(),
-              artifact.getArtifactId(),
-              artifact.getBaseVersion(),
-              artifact.getClassifier(),
-              artifact.getType(),
-              artifact.isOptional(),
-              false
-          ));
-
-          excludedArtifactIds.add(artifactKey);
-          pluginIds.add(artifactKey);
+        public boolean isExcluded(final String key) {
+          return GenerateMetadataMojo.this.isExcluded(key);
         }
-        else if (SCOPE_PROVIDED.equals(artifact.getScope()) || SCOPE_TEST.equals(artifact.getScope())) {
-          excludedArtifactIds.add(artifact.getId());
+
+        public void addPluginDependency(final Artifact artifact) throws MojoFailureException {
+          GenerateMetadataMojo.this.addPluginDependency(request, artifact);
         }
-        else if (SCOPE_COMPILE.equals(artifact.getScope()) || SCOPE_RUNTIME.equals(artifact.getScope())) {
-          if (artifact.getDependencyTrail() != null) {
-            for (String trailId : artifact.getDependencyTrail()) {
-              if (excludedArtifactIds.contains(trailId)) {
-                getLog().debug(String.format(
-                    "Dependency artifact: %s is part of the transitive dependency set for a dependency with 'provided' or 'test' scope: %s\n" +
-                        "This artifact will be excluded from the plugin classpath", artifact.getId(), trailId));
-                continue artifactLoop;
-              }
-            }
-          }
 
-          if (banned) {
-            autoBannedIds.add(artifactKey);
-          }
-          else if (excluded) {
-            userExcludesIds.add(artifactKey);
-          }
-          else {
-            boolean isShared = sharedDependencies != null &&
-                sharedDependencies.contains(artifact.getGroupId() + ":" + artifact.getArtifactId());
-
-            // classpath dependencies uses baseVersion, and let PluginManager resolve them runtime
-            // this enables easy development turnaround, by not having recompiling the plugin to drop-in newer snapshot
-            request.addClasspathDependency(new GAVCoordinate(
-                artifact.getGroupId(),
-                artifact.getArtifactId(),
-                artifact.getBaseVersion(),
-                artifact.getClassifier(),
-                artifact.getType(),
-                false,
-                isShared
-            ));
-            classpathArtifacts.add(artifact);
-          }
+        public void addClasspathDependency(final Artifact artifact) throws MojoFailureException {
+          GenerateMetadataMojo.this.addClasspathDependency(request, artifact);
         }
+      }, getLog());
+
+      if (dependencyGraphExclusion) {
+        selector.selectFromDependencyGraph(artifacts);
+      }
+      else {
+        selector.selectFromDependencyTrails(artifacts);
       }
+      classpathArtifacts.addAll(selector.getClasspathArtifacts());
+
+      Set<String> excludedArtifactIds = selector.getExcludedArtifactIds();
+      Set<String> userExcludesIds = selector.getUserExcludesIds();
+      Set<String> autoBannedIds = selector.getAutoBannedIds();
+      Set<String> pluginIds = selector.getPluginIds();
 
       if (!pluginIds.isEmpty()) {
         List<String> ids = new ArrayList<String>(pluginIds);
@@ -335,27 +524,161 @@ public class GenerateMetadataMojo
     return classpathArtifacts;
   }
 
+  private void addPluginDependency(final PluginDescriptorGenerationRequest request, final Artifact artifact)
+      throws MojoFailureException
+  {
+    if (!SCOPE_PROVIDED.equals(artifact.getScope())) {
+      throw new MojoFailureException(
+          "Nexus plugin dependency must use 'provided' scope: " + artifact.getDependencyConflictId());
+    }
+
+    // plugin inter-dependencies will use baseVersion, and let PluginManager resolve them runtime
+    request.addPluginDependency(new GAVCoordinate(
+        artifact.getGroupId(),
+        artifact.getArtifactId(),
+        artifact.getBaseVersion(),
+        artifact.getClassifier(),
+        artifact.getType(),
+        artifact.isOptional(),
+        false
+    ));
+  }
+
+  private void addClasspathDependency(final PluginDescriptorGenerationRequest request, final Artifact artifact)
+      throws MojoFailureException
+  {
+    boolean isShared = sharedDependencies != null &&
+        sharedDependencies.contains(artifact.getGroupId() + ":" + artifact.getArtifactId());
+
+    // classpath dependencies uses baseVersion, and let PluginManager resolve them runtime
+    // this enables easy development turnaround, by not having recompiling the plugin to drop-in newer snapshot
+    GAVCoordinate coordinate = new GAVCoordinate(
+        artifact.getGroupId(),
+        artifact.getArtifactId(),
+        artifact.getBaseVersion(),
+        artifact.getClassifier(),
+        artifact.getType(),
+        false,
+        isShared
+    );
+    request.addClasspathDependency(coordinate);
+
+    if (recordPackageNames) {
+      request.setPackageNames(coordinate, getPackageNames(artifact));
+    }
+    if (recordChecksums && artifact.getFile() != null && artifact.getFile().isFile()) {
+      checksumFiles.put(coordinate, artifact.getFile());
+    }
+  }
+
+  /**
+   * Records the SHA-256 of all classpath dependency files, computed concurrently, and returns them by file so the
+   * classpath state can reuse them. Directories, ie. the output of reactor modules not yet packaged, are left out.
+   */
+  private Map<File, String> recordChecksums(final PluginDescriptorGenerationRequest request)
+      throws MojoFailureException
+  {
+    List<File> files = new ArrayList<File>(checksumFiles.values());
+    List<String> digests;
+    try {
+      digests = Parallel.map(files, checksumThreads, "nexus-plugin-bundle-checksum",
+          new Parallel.Function<File, String>()
+          {
+            public String apply(final File file) throws Exception {
+              return Digests.digest(Digests.SHA256, file);
+            }
+          });
+    }
+    catch (IOException e) {
+      throw new MojoFailureException("Failed to compute checksums of classpath dependencies: " + e, e);
+    }
+    Map<File, String> checksums = new HashMap<File, String>();
+    int i = 0;
+    for (Map.Entry<GAVCoordinate, File> entry : checksumFiles.entrySet()) {
+      String digest = digests.get(i++);
+      request.setChecksum(entry.getKey(), digest, entry.getValue().length());
+      checksums.put(entry.getValue(), digest);
+    }
+    return checksums;
+  }
+
+  private List<String> getPackageNames(final Artifact artifact) throws MojoFailureException {
+    File file = artifact.getFile();
+    if (file == null) {
+      throw new MojoFailureException("Classpath dependency is not resolved: " + artifact.getId());
+    }
+    if (packageCache == null) {
+      // eviction is left to create-bundle, which shares the cache
+      packageCache = new PackageCache(new File(cacheDirectory, "packages"), Integer.MAX_VALUE,
+          new File(project.getBuild().getDirectory()));
+    }
+    try {
+      return OSGiUtils.getPackages(file, packageCache);
+    }
+    catch (IOException e) {
+      throw new MojoFailureException("Failed to scan packages of " + file + ": " + e, e);
+    }
+  }
+
   protected boolean isBanned(final String key) {
-    if (bannedIds != null) {
-      for (String exclude : bannedIds) {
-        // check if artifact key is banned, append ":" to ensure we only get full groupId:artifactId matches
-        if (key.startsWith(exclude + ":")) {
-          return true;
-        }
-      }
+    if (bannedMatcher == null) {
+      bannedMatcher = ArtifactKeyMatcher.ids(bannedIds);
     }
-    return false;
+    // only full groupId:artifactId matches
+    return bannedMatcher.matches(key);
   }
 
   protected boolean isExcluded(final String key) {
-    if (classpathDependencyExcludes != null) {
-      for (String exclude : classpathDependencyExcludes) {
-        if (key.startsWith(exclude)) {
-          return true;
-        }
+    if (excludesMatcher == null) {
+      excludesMatcher = ArtifactKeyMatcher.prefixes(classpathDependencyExcludes);
+    }
+    return excludesMatcher.matches(key);
+  }
+
+  /**
+   * Returns the banned dependencies, collecting them only once per build session and banned root artifact.
+   */
+  private List<String> getBannedDependencies() throws Exception {
+    if (!StringUtils.isEmpty(bannedListClassifier)) {
+      if (repositorySystemSession == null) {
+        return resolveBannedList();
       }
+      Callable<List<String>> resolver = new Callable<List<String>>()
+      {
+        public List<String> call() throws Exception {
+          return resolveBannedList();
+        }
+      };
+      // the resolved list already lives in the local repository, no need to persist it again
+      return BannedDependencyCache.get(repositorySystemSession)
+          .get(bannedRootArtifactId + ":" + bannedListClassifier, null, resolver);
+    }
+
+    if (repositorySystemSession == null) {
+      return collectBannedDependencies();
     }
-    return false;
+    Callable<List<String>> collector = new Callable<List<String>>()
+    {
+      public List<String> call() throws Exception {
+        return collectBannedDependencies();
+      }
+    };
+    return BannedDependencyCache.get(repositorySystemSession)
+        .get(bannedRootArtifactId, new File(cacheDirectory, "banned"), collector);
+  }
+
+  /**
+   * Reads the banned dependencies from the list attached to the banned root artifact by generate-banned-list.
+   */
+  private List<String> resolveBannedList() throws ArtifactResolutionException, IOException {
+    org.sonatype.aether.artifact.Artifact root = new DefaultArtifact(bannedRootArtifactId);
+    org.sonatype.aether.artifact.Artifact list = new DefaultArtifact(root.getGroupId(), root.getArtifactId(),
+        bannedListClassifier, BannedListUtils.TYPE, root.getVersion());
+    getLog().debug("Resolving banned dependency list: " + list);
+
+    ArtifactRequest request = new ArtifactRequest(list, project.getRemoteProjectRepositories(), null);
+    ArtifactResult result = repositorySession.resolveArtifact(repositorySystemSession, request);
+    return BannedListUtils.read(result.getArtifact().getFile());
   }
 
   private List<String> collectBannedDependencies() throws DependencyCollectionException {
@@ -392,6 +715,21 @@ public class GenerateMetadataMojo
   // SCM
 
   protected void fillScmInfo(final PluginDescriptorGenerationRequest request) {
+    // details provided by the build environment need no SCM access at all
+    ScmRevision external = getExternalScmRevision();
+    if (external != null) {
+      getLog().debug("Using SCM details from build environment: " + external);
+      request.setScmVersion(external.getVersion());
+      request.setScmTimestamp(external.getTimestamp());
+      if (external.getTimestamp() != null) {
+        if (project.getScm() != null && !StringUtils.isEmpty(project.getScm().getDeveloperConnection())) {
+          request.setScmUrl(project.getScm().getDeveloperConnection());
+        }
+        return;
+      }
+      // only the version was provided, the timestamp still comes from the SCM
+    }
+
     if (project.getScm() == null) {
       getLog().warn("No SCM information defined in POM; unable to determine SCM details");
       return;
@@ -412,28 +750,77 @@ public class GenerateMetadataMojo
     try {
       final ScmRepository repository = getScmRepository(url);
 
-      getLog().info("Fetching SCM details");
-
       final String provider = repository.getProvider();
 
-      if ("svn".equals(provider)) {
-        fillSvnScmInfo(request, repository);
-      }
-      else if ("git".equals(provider)) {
-        fillGitScmInfo(request, repository);
-      }
-      else if ("hg".equals(provider)) {
-        fillHgScmInfo(request, repository);
+      // modules of the same working copy share the SCM details, only look them up once per build
+      Callable<ScmRevision> loader = new Callable<ScmRevision>()
+      {
+        public ScmRevision call() throws Exception {
+          getLog().info("Fetching SCM details");
+          return ScmRevisions.callWithTimeout(new Callable<ScmRevision>()
+          {
+            public ScmRevision call() throws Exception {
+              return getScmRevision(provider, repository);
+            }
+          }, scmTimeout);
+        }
+      };
+
+      ScmRevision revision = repositorySystemSession != null
+          ? ScmRevisionCache.get(repositorySystemSession)
+              .get(ScmRevisionCache.getKey(provider, project.getBasedir()), loader)
+          : loader.call();
+
+      if (revision != null) {
+        request.setScmVersion(external != null ? external.getVersion() : revision.getVersion());
+        request.setScmTimestamp(revision.getTimestamp());
       }
 
       request.setScmUrl(url);
     }
-    catch (ScmException e) {
+    catch (Exception e) {
       getLog().warn("Failed to get SCM information: " + e.getMessage());
       getLog().debug(e);
     }
   }
 
+  /**
+   * Returns the SCM details provided by {@link #scmInfoFile} or the environment, or {@code null} if there are none.
+   */
+  @Nullable
+  private ScmRevision getExternalScmRevision() {
+    String provider = null;
+    if (project.getScm() != null) {
+      String url = project.getScm().getDeveloperConnection();
+      if (!StringUtils.isEmpty(url) && ScmUrlUtils.isValid(url)) {
+        provider = ScmUrlUtils.getProvider(url);
+      }
+    }
+
+    Map<String, String> environment = System.getenv();
+    try {
+      return ScmRevisions.read(scmInfoFile, provider, scmVersionVariables, scmTimestampVariables, environment);
+    }
+    catch (IOException e) {
+      getLog().warn("Failed to read SCM details from " + scmInfoFile + ": " + e);
+      return ScmRevisions.readEnvironment(provider, scmVersionVariables, scmTimestampVariables, environment);
+    }
+  }
+
+  @Nullable
+  protected ScmRevision getScmRevision(final String provider, final ScmRepository repository) throws ScmException {
+    if ("svn".equals(provider)) {
+      return getSvnScmRevision(repository);
+    }
+    else if ("git".equals(provider)) {
+      return getGitScmRevision(repository);
+    }
+    else if ("hg".equals(provider)) {
+      return getHgScmRevision(repository);
+    }
+    return null;
+  }
+
   protected ScmRepository getScmRepository(final String url) throws ScmException {
     ScmRepository repository = scmManager.makeScmRepository(url);
 
@@ -450,9 +837,18 @@ public class GenerateMetadataMojo
     return repository;
   }
 
-  protected void fillSvnScmInfo(final PluginDescriptorGenerationRequest request, final ScmRepository repository)
-      throws ScmException
-  {
+  protected ScmRevision getSvnScmRevision(final ScmRepository repository) throws ScmException {
+    try {
+      ScmRevision revision = SvnRevisionReader.read(project.getBasedir());
+      if (revision != null) {
+        return revision;
+      }
+      getLog().debug("Unsupported svn working copy format; falling back to svn command");
+    }
+    catch (Exception e) {
+      getLog().debug("Failed to read svn working copy; falling back to svn command", e);
+    }
+
     AbstractSvnScmProvider provider = (AbstractSvnScmProvider) scmManager.getProviderByType("svn");
 
     SvnInfoScmResult result = provider.info(
@@ -464,13 +860,21 @@ public class GenerateMetadataMojo
 
     SvnInfoItem info = (SvnInfoItem) result.getInfoItems().get(0);
 
-    request.setScmVersion(info.getLastChangedRevision());
-    request.setScmTimestamp(info.getLastChangedDate());
+    return new ScmRevision(info.getLastChangedRevision(), info.getLastChangedDate());
   }
 
-  protected void fillGitScmInfo(final PluginDescriptorGenerationRequest request, final ScmRepository repository)
-      throws ScmException
-  {
+  protected ScmRevision getGitScmRevision(final ScmRepository repository) throws ScmException {
+    try {
+      ScmRevision revision = GitRevisionReader.read(project.getBasedir());
+      if (revision != null) {
+        return revision;
+      }
+      getLog().debug("Unsupported git repository layout; falling back to git command");
+    }
+    catch (Exception e) {
+      getLog().debug("Failed to read git repository; falling back to git command", e);
+    }
+
     AbstractGitScmProvider provider = (AbstractGitScmProvider) scmManager.getProviderByType("git");
 
     GitRevParseCommand cmd = new GitRevParseCommand();
@@ -484,13 +888,21 @@ public class GenerateMetadataMojo
       throw new ScmException(result.getCommandOutput());
     }
 
-    request.setScmVersion(result.getChangeSetHash());
-    request.setScmTimestamp(result.getChangeSetDate());
+    return new ScmRevision(result.getChangeSetHash(), result.getChangeSetDate());
   }
 
-  protected void fillHgScmInfo(final PluginDescriptorGenerationRequest request, final ScmRepository repository)
-      throws ScmException
-  {
+  protected ScmRevision getHgScmRevision(final ScmRepository repository) throws ScmException {
+    try {
+      ScmRevision revision = HgRevisionReader.read(project.getBasedir());
+      if (revision != null) {
+        return revision;
+      }
+      getLog().debug("Unsupported hg repository format; falling back to hg command");
+    }
+    catch (Exception e) {
+      getLog().debug("Failed to read hg repository; falling back to hg command", e);
+    }
+
     HgScmProvider provider = (HgScmProvider) scmManager.getProviderByType("hg");
 
     HgDebugIdCommand cmd = new HgDebugIdCommand();
@@ -504,7 +916,6 @@ public class GenerateMetadataMojo
       throw new ScmException(result.getCommandOutput());
     }
 
-    request.setScmVersion(result.getChangeSetHash());
-    request.setScmTimestamp(result.getChangeSetDate());
+    return new ScmRevision(result.getChangeSetHash(), result.getChangeSetDate());
   }
-}
\ No newline at end of file
+}
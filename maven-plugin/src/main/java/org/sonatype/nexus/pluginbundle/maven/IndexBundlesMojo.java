@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.sonatype.plugins.model.io.binary.PluginIndex;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Index a directory of plugin bundles (see {@code create-bundle}) into a single file holding the descriptor and
+ * content hash of each bundle and the dependency edges between them.
+ *
+ * An existing index is updated incrementally, only bundles that changed since are read again.
+ *
+ * @since 1.4
+ */
+@Mojo(name = "index-bundles", requiresProject = false)
+public class IndexBundlesMojo
+    extends MojoSupport
+{
+  public static final String DEFAULT_INDEX_NAME = "plugin-index.bin";
+
+  /**
+   * Directory containing the plugin bundles to index.
+   */
+  @Parameter(property = "bundleDirectory", required = true)
+  private File bundleDirectory;
+
+  /**
+   * Index file, defaults to {@code plugin-index.bin} in the bundle directory.
+   */
+  @Parameter(property = "indexFile")
+  private File indexFile;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (indexFile == null) {
+      indexFile = new File(bundleDirectory, DEFAULT_INDEX_NAME);
+    }
+
+    PluginIndex previous = null;
+    if (indexFile.isFile()) {
+      try {
+        previous = read(indexFile);
+      }
+      catch (IOException e) {
+        getLog().warn("Ignoring unreadable plugin index " + indexFile + ": " + e);
+      }
+    }
+
+    BundleIndexer indexer = new BundleIndexer();
+    PluginIndex index;
+    try {
+      index = indexer.index(bundleDirectory, previous);
+      write(index, indexFile);
+    }
+    catch (IOException e) {
+      throw new MojoExecutionException("Failed to index plugin bundles: " + e.getMessage(), e);
+    }
+
+    for (File file : indexer.getSkipped()) {
+      getLog().warn("Not indexing bundle without plugin descriptor: " + file.getName());
+    }
+    for (PluginIndex.Edge edge : index.getEdges()) {
+      if (edge.getTo() == null && !edge.getDependency().isOptional()) {
+        getLog().warn(String.format("Plugin %s depends on missing plugin %s:%s:%s", edge.getFrom().getName(),
+            edge.getDependency().getGroupId(), edge.getDependency().getArtifactId(),
+            edge.getDependency().getVersion()));
+      }
+    }
+    getLog().info(String.format("Indexed %d bundles (%d read, %d unchanged) into %s", index.getEntries().size(),
+        indexer.getRead(), indexer.getReused(), indexFile.getAbsolutePath()));
+  }
+
+  private static PluginIndex read(final File file) throws IOException {
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file));
+      return PluginIndex.read(input);
+    }
+    finally {
+      IOUtil.close(input);
+    }
+  }
+
+  /**
+   * Writes the index to a temporary file first, so readers never see a partial index.
+   */
+  private static void write(final PluginIndex index, final File file) throws IOException {
+    File temp = AtomicFiles.createTemp(file);
+    try {
+      OutputStream output = null;
+      try {
+        output = new BufferedOutputStream(new FileOutputStream(temp));
+        index.write(output);
+        // failing to flush must not replace the index
+        output.close();
+      }
+      finally {
+        IOUtil.close(output);
+      }
+      AtomicFiles.replace(temp, file);
+    }
+    finally {
+      temp.delete();
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.Collection;
+
+import org.sonatype.nexus.pluginbundle.maven.scm.GitRevisionReader;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Fingerprint of everything {@link GenerateMetadataMojo} reads, used to skip regeneration of the plugin metadata
+ * when nothing relevant has changed since the last build.
+ *
+ * @since 1.4
+ */
+public class MetadataFingerprint
+{
+  /**
+   * Where the last fingerprint is written (under project.build.directory).
+   */
+  private static final String FILE_NAME = "nexus-plugin-bundle/metadata.fingerprint";
+
+  private static final String ENCODING = "UTF-8";
+
+  private final MessageDigest digest = Digests.create(Digests.SHA1);
+
+  public MetadataFingerprint add(final String name, final Object value) {
+    update(name);
+    update("=");
+    update(String.valueOf(value));
+    update("\n");
+    return this;
+  }
+
+  public MetadataFingerprint add(final String name, final Collection<?> values) {
+    if (values == null) {
+      return add(name, (Object) null);
+    }
+    for (Object value : values) {
+      add(name, value);
+    }
+    return this;
+  }
+
+  /**
+   * Adds the artifact coordinates and scope, its dependency trail, as well as the size and last modified time of
+   * the resolved file.
+   */
+  public MetadataFingerprint add(final Artifact artifact) {
+    add("artifact", artifact.getId());
+    add("key", ClasspathUtils.formatArtifactKey(artifact));
+    add("scope", artifact.getScope());
+    add("optional", artifact.isOptional());
+    add("trail", artifact.getDependencyTrail());
+
+    File file = artifact.getFile();
+    if (file != null) {
+      add("file", file.getAbsolutePath());
+      add("size", file.length());
+      add("modified", file.lastModified());
+    }
+    return this;
+  }
+
+  /**
+   * Adds the current SCM revision of the working copy containing the given directory, as far as it can be determined
+   * without invoking the SCM tooling.
+   */
+  public MetadataFingerprint addScmHead(final File basedir) {
+    for (File dir = basedir.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+      try {
+        File git = new File(dir, ".git");
+        if (git.exists()) {
+          return add("git", readGitHead(dir));
+        }
+        File hg = new File(dir, ".hg");
+        if (hg.isDirectory()) {
+          return add("hg", readHead(new File(hg, "dirstate"), 40));
+        }
+        File svn = new File(dir, ".svn");
+        if (svn.isDirectory()) {
+          File db = new File(svn, "wc.db");
+          if (!db.exists()) {
+            db = new File(svn, "entries");
+          }
+          return add("svn", db.length() + "@" + db.lastModified());
+        }
+      }
+      catch (IOException e) {
+        // unreadable working copy metadata, force regeneration
+        return add("scm", Long.toString(System.currentTimeMillis()));
+      }
+    }
+    return add("scm", null);
+  }
+
+  private static String readGitHead(final File basedir) throws IOException {
+    File gitDir = GitRevisionReader.findRepository(basedir);
+    return gitDir == null ? null : GitRevisionReader.resolveHead(gitDir);
+  }
+
+  private static String readHead(final File file, final int length) throws IOException {
+    byte[] bytes = new byte[length];
+    int count = 0;
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file));
+      int n;
+      while (count < length && (n = input.read(bytes, count, length - count)) != -1) {
+        count += n;
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+    return Digests.toHex(bytes, count);
+  }
+
+  public String compute() {
+    byte[] bytes = digest.digest();
+    return Digests.toHex(bytes, bytes.length);
+  }
+
+  private void update(final String value) {
+    try {
+      digest.update(value.getBytes(ENCODING));
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns the previously stored fingerprint, or {@code null} if there is none.
+   */
+  public static String read(final MavenProject project) {
+    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return StringUtils.trim(FileUtils.fileRead(file, ENCODING));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  public static void write(final BuildContext buildContext, final MavenProject project, final String fingerprint)
+      throws IOException
+  {
+    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+    file.getParentFile().mkdirs();
+
+    OutputStream output = null;
+    try {
+      output = new BufferedOutputStream(buildContext.newFileOutputStream(file));
+      output.write(fingerprint.getBytes(ENCODING));
+    }
+    finally {
+      IOUtil.close(output);
+    }
+  }
+}
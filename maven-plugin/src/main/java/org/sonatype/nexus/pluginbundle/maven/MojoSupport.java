@@ -13,8 +13,14 @@
 
 package org.sonatype.nexus.pluginbundle.maven;
 
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 /**
@@ -30,6 +36,32 @@ public abstract class MojoSupport
   @Component
   protected MavenProject project;
 
+  @Component
+  protected MavenSession session;
+
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+  protected MojoExecution mojoExecution;
+
+  /**
+   * Directory of caches shared between builds.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "cacheDirectory", defaultValue = "${settings.localRepository}/.cache/nexus-plugin-bundle")
+  protected File cacheDirectory;
+
+  /**
+   * Records wall time, CPU time and allocated bytes of the phases of each goal, in
+   * {@code target/nexus-plugin-bundle/metrics.json} of each module and {@code target/nexus-plugin-bundle-metrics.json}
+   * of the execution root for the whole reactor.
+   *
+   * @since 1.4
+   */
+  @Parameter(property = "bundleMetrics", defaultValue = "false")
+  protected boolean bundleMetrics;
+
+  private BuildMetrics metrics;
+
   protected boolean isNexusPluginPacakging() {
     if (!project.getPackaging().equals(NEXUS_PLUGIN)) {
       getLog().warn("Project is not of packaging type: " + NEXUS_PLUGIN);
@@ -37,4 +69,36 @@ public abstract class MojoSupport
     }
     return true;
   }
+
+  /**
+   * @since 1.4
+   */
+  protected File getLocalRepository() {
+    return new File(session.getLocalRepository().getBasedir()).getAbsoluteFile();
+  }
+
+  protected BuildMetrics getMetrics() {
+    if (metrics == null) {
+      metrics = new BuildMetrics(bundleMetrics, project.getId(), mojoExecution.getGoal());
+    }
+    return metrics;
+  }
+
+  /**
+   * Adds the phases recorded so far to the module and reactor reports.
+   */
+  protected void reportMetrics() {
+    if (metrics == null) {
+      return;
+    }
+    Object build = session.getRequest().getStartTime() != null ? session.getRequest().getStartTime() : session;
+    try {
+      metrics.report(build,
+          new File(project.getBuild().getDirectory(), BuildMetrics.MODULE_REPORT),
+          new File(session.getExecutionRootDirectory(), "target/" + BuildMetrics.REACTOR_REPORT));
+    }
+    catch (IOException e) {
+      getLog().warn("Failed to write build metrics: " + e);
+    }
+  }
 }
@@ -15,17 +15,22 @@ package org.sonatype.nexus.pluginbundle.maven;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
 
+import javax.annotation.Nullable;
+
 import org.sonatype.plexus.build.incremental.BuildContext;
 import org.sonatype.plugins.model.ClasspathDependency;
 import org.sonatype.plugins.model.PluginDependency;
@@ -54,14 +59,37 @@ public class OSGiUtils
     // empty
   }
 
+  /**
+   * Returns the OSGi metadata file of the given project.
+   */
+  public static File getFile(final MavenProject project) {
+    return new File(project.getBuild().getDirectory(), FILE_NAME);
+  }
+
   /**
    * Updates the OSGi metadata wrt the assembled content.
    * 
    * @return Path to OSGi manifest
    */
   public static String updateMetadata(final MavenProject project, final List<FileItem> content) throws IOException {
+    return updateMetadata(project, content, 1, null);
+  }
 
-    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+  /**
+   * Updates the OSGi metadata wrt the assembled content, scanning the content with the given number of threads.
+   *
+   * @param cache Optional cache of previously scanned jars, may be {@code null}.
+   * @return Path to OSGi manifest
+   * @since 1.4
+   */
+  public static String updateMetadata(final MavenProject project,
+                                      final List<FileItem> content,
+                                      final int threads,
+                                      final @Nullable PackageCache cache)
+      throws IOException
+  {
+
+    File file = getFile(project);
     if (!file.exists()) {
       throw new IOException("Missing metadata file: " + file.getAbsolutePath());
     }
@@ -79,7 +107,7 @@ public class OSGiUtils
 
     Attributes attributes = mf.getMainAttributes();
 
-    String exportedPackages = getExportedPackages(content);
+    String exportedPackages = getExportedPackages(content, threads, cache);
     if (exportedPackages.length() > 0) {
       attributes.putValue(Constants.EXPORT_PACKAGE, exportedPackages);
     }
@@ -87,7 +115,7 @@ public class OSGiUtils
     OutputStream output = null;
     try {
       output = new BufferedOutputStream(new FileOutputStream(file));
-      mf.write(output);
+      writeSorted(mf, output);
     }
     finally {
       IOUtil.close(output);
@@ -117,19 +145,54 @@ public class OSGiUtils
       attributes.putValue(Constants.REQUIRE_BUNDLE, requiredBundles);
     }
 
-    File file = new File(project.getBuild().getDirectory(), FILE_NAME);
+    File file = getFile(project);
     file.getParentFile().mkdirs();
 
     OutputStream output = null;
     try {
       output = new BufferedOutputStream(buildContext.newFileOutputStream(file));
-      mf.write(output);
+      writeSorted(mf, output);
     }
     finally {
       IOUtil.close(output);
     }
   }
 
+  /**
+   * Writes the manifest with its main attributes sorted by name, as {@link Manifest#write} follows hash order.
+   */
+  static void writeSorted(final Manifest mf, final OutputStream output) throws IOException {
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    mf.write(buff);
+    String[] lines = buff.toString("UTF-8").split("\r\n", -1);
+
+    // join continuation lines to their header, the main section ends at the first empty line
+    List<String> headers = new ArrayList<String>();
+    int i = 0;
+    for (; i < lines.length && lines[i].length() > 0; i++) {
+      if (lines[i].startsWith(" ") && !headers.isEmpty()) {
+        headers.set(headers.size() - 1, headers.get(headers.size() - 1) + "\r\n" + lines[i]);
+      }
+      else {
+        headers.add(lines[i]);
+      }
+    }
+
+    // Manifest-Version has to stay first
+    if (headers.size() > 1) {
+      Collections.sort(headers.subList(1, headers.size()));
+    }
+
+    StringBuilder buf = new StringBuilder();
+    for (String header : headers) {
+      buf.append(header).append("\r\n");
+    }
+    for (; i < lines.length - 1; i++) {
+      buf.append(lines[i]).append("\r\n");
+    }
+    output.write(buf.toString().getBytes("UTF-8"));
+  }
+
   /**
    * Generates a Bundle-ClassPath header for the Nexus plugin.
    */
@@ -165,30 +228,91 @@ public class OSGiUtils
 
   /**
    * Generates an Export-Package header for the given content.
+   *
+   * Content is scanned concurrently by up to {@code threads} workers, each holding at most one jar open at a time,
+   * and the results are merged in content order so the header is the same as when scanned serially.
    */
-  private static String getExportedPackages(final List<FileItem> content) throws IOException {
+  static String getExportedPackages(final List<FileItem> content,
+                                    final int threads,
+                                    final @Nullable PackageCache cache)
+      throws IOException
+  {
     StringBuilder buf = new StringBuilder();
-    for (FileItem i : content) {
-      Jar jar = null;
-      try {
-        jar = new Jar(new File(i.getSource()));
-        for (String pkg : jar.getPackages()) {
-          if (pkg.length() > 0 &&
-              !pkg.startsWith("META") &&
-              !pkg.startsWith("OSGI") &&
-              !pkg.startsWith("docs") &&
-              !pkg.startsWith("static")) {
-            if (buf.length() > 0) {
-              buf.append(',');
-            }
-            buf.append(pkg);
+    for (List<String> packages : getPackages(content, threads, cache)) {
+      for (String pkg : packages) {
+        if (pkg.length() > 0 &&
+            !pkg.startsWith("META") &&
+            !pkg.startsWith("OSGI") &&
+            !pkg.startsWith("docs") &&
+            !pkg.startsWith("static")) {
+          if (buf.length() > 0) {
+            buf.append(',');
           }
+          buf.append(pkg);
         }
       }
-      finally {
-        Closeables.closeQuietly(jar);
-      }
     }
     return buf.toString();
   }
+
+  private static List<List<String>> getPackages(final List<FileItem> content,
+                                                final int threads,
+                                                final @Nullable PackageCache cache)
+      throws IOException
+  {
+    return Parallel.map(content, threads, "nexus-plugin-bundle-scan", new Parallel.Function<FileItem, List<String>>()
+    {
+      public List<String> apply(final FileItem item) throws Exception {
+        return getPackages(new File(item.getSource()), cache);
+      }
+    });
+  }
+
+  /**
+   * Returns the packages contained in the given jar or directory like {@link #getPackages(File)}, looking them up in
+   * the given cache first and storing them there if missing.
+   *
+   * @param cache Cache of package lists, may be {@code null} to always scan the file.
+   */
+  static List<String> getPackages(final File file, final @Nullable PackageCache cache) throws IOException {
+    if (cache == null) {
+      return getPackages(file);
+    }
+
+    List<String> packages = cache.get(file);
+    if (packages == null) {
+      packages = getPackages(file);
+      try {
+        cache.put(file, packages);
+      }
+      catch (IOException e) {
+        // cache is best-effort only
+      }
+    }
+    return packages;
+  }
+
+  /**
+   * Returns the packages contained in the given jar or directory, in sorted order.
+   */
+  private static List<String> getPackages(final File file) throws IOException {
+    try {
+      List<String> packages = ZipPackageEnumerator.getPackages(file);
+      if (packages != null) {
+        return packages;
+      }
+    }
+    catch (IOException e) {
+      // let bnd have a go at it
+    }
+
+    Jar jar = null;
+    try {
+      jar = new Jar(file);
+      return new ArrayList<String>(jar.getPackages());
+    }
+    finally {
+      Closeables.closeQuietly(jar);
+    }
+  }
 }
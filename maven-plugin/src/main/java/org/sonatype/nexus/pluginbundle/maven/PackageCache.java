@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persistent cache of the packages contained in jar files, shared between builds.
+ *
+ * Entries are keyed by path, size and last modified time of the jar, and record the SHA-1 of its content. Released
+ * jars are trusted as long as the key matches; for snapshots the content hash is verified on every lookup.
+ * Entries are written atomically so concurrent builds can share the cache, and the least recently used entries are
+ * evicted once the cache grows beyond its configured size.
+ *
+ * @since 1.4
+ */
+public class PackageCache
+{
+  private static final String ENCODING = "UTF-8";
+
+  private static final String EXTENSION = ".packages";
+
+  private static final String SNAPSHOT = "SNAPSHOT";
+
+  private final File directory;
+
+  private final int maxEntries;
+
+  private final String volatilePath;
+
+  /**
+   * @param directory     Directory holding the cache entries.
+   * @param maxEntries    Number of entries retained by {@link #evict()}.
+   * @param volatileDir   Directory of build output which is never cached, may be {@code null}.
+   */
+  public PackageCache(final File directory, final int maxEntries, final File volatileDir) {
+    this.directory = directory;
+    this.maxEntries = maxEntries;
+    this.volatilePath = volatileDir == null ? null : volatileDir.getAbsolutePath() + File.separator;
+  }
+
+  /**
+   * Returns the cached packages of the given jar, or {@code null} if the jar is not cached or has changed.
+   */
+  public List<String> get(final File file) {
+    if (!isCacheable(file)) {
+      return null;
+    }
+
+    File entry = entryFile(file);
+    if (!entry.isFile()) {
+      return null;
+    }
+
+    try {
+      List<String> lines = AtomicFiles.readLines(entry);
+      if (lines.size() < 4
+          || !lines.get(0).equals(file.getAbsolutePath())
+          || !lines.get(1).equals(String.valueOf(file.length()))
+          || !lines.get(2).equals(String.valueOf(file.lastModified()))) {
+        return null;
+      }
+      if (isSnapshot(file) && !lines.get(3).equals(Digests.sha1(file))) {
+        return null;
+      }
+
+      // mark as recently used
+      entry.setLastModified(System.currentTimeMillis());
+
+      return new ArrayList<String>(lines.subList(4, lines.size()));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stores the packages of the given jar.
+   */
+  public void put(final File file, final List<String> packages) throws IOException {
+    if (!isCacheable(file)) {
+      return;
+    }
+
+    List<String> lines = new ArrayList<String>(packages.size() + 4);
+    lines.add(file.getAbsolutePath());
+    lines.add(String.valueOf(file.length()));
+    lines.add(String.valueOf(file.lastModified()));
+    lines.add(Digests.sha1(file));
+    lines.addAll(packages);
+    AtomicFiles.writeLines(entryFile(file), lines);
+  }
+
+  /**
+   * Removes the least recently used entries exceeding the maximum size of the cache. Temporary files of entries
+   * being written by concurrent builds are left alone.
+   */
+  public void evict() {
+    File[] entries = directory.listFiles(new FileFilter()
+    {
+      public boolean accept(final File file) {
+        return file.getName().endsWith(EXTENSION);
+      }
+    });
+    if (entries == null || entries.length <= maxEntries) {
+      return;
+    }
+
+    final long[] modified = new long[entries.length];
+    Integer[] order = new Integer[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      modified[i] = entries[i].lastModified();
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>()
+    {
+      public int compare(final Integer a, final Integer b) {
+        return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+      }
+    });
+
+    int excess = entries.length - maxEntries;
+    for (int i = 0; i < excess; i++) {
+      entries[order[i]].delete();
+    }
+  }
+
+  private boolean isCacheable(final File file) {
+    return maxEntries > 0 && file.isFile()
+        && (volatilePath == null || !file.getAbsolutePath().startsWith(volatilePath));
+  }
+
+  private static boolean isSnapshot(final File file) {
+    return file.getAbsolutePath().indexOf(SNAPSHOT) != -1;
+  }
+
+  private File entryFile(final File file) {
+    String key = file.getAbsolutePath() + '\n' + file.length() + '\n' + file.lastModified();
+    try {
+      return new File(directory, Digests.sha1(key.getBytes(ENCODING)) + EXTENSION);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs file processing tasks on a bounded pool of daemon threads, so a stuck task can not keep the build JVM alive.
+ *
+ * @since 1.4
+ */
+public class Parallel
+{
+  /**
+   * Computes the result for one input.
+   */
+  public interface Function<I, O>
+  {
+    O apply(I input) throws Exception;
+  }
+
+  private Parallel() {
+    // empty
+  }
+
+  /**
+   * Applies the given function to all inputs, by up to {@code threads} workers named after the given prefix, and
+   * returns the results in the order of the inputs.
+   *
+   * @throws IOException the failure of the first failed input, in input order.
+   */
+  public static <I, O> List<O> map(final List<I> inputs,
+                                   final int threads,
+                                   final String name,
+                                   final Function<I, O> function)
+      throws IOException
+  {
+    List<O> result = new ArrayList<O>(inputs.size());
+
+    if (threads <= 1 || inputs.size() <= 1) {
+      for (I input : inputs) {
+        try {
+          result.add(function.apply(input));
+        }
+        catch (Exception e) {
+          throw propagate(e);
+        }
+      }
+      return result;
+    }
+
+    ExecutorService executor = newExecutor(Math.min(threads, inputs.size()), name);
+    try {
+      List<Future<O>> futures = new ArrayList<Future<O>>(inputs.size());
+      for (final I input : inputs) {
+        futures.add(executor.submit(new Callable<O>()
+        {
+          public O call() throws Exception {
+            return function.apply(input);
+          }
+        }));
+      }
+      for (Future<O> future : futures) {
+        result.add(future.get());
+      }
+      return result;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + name + " threads");
+    }
+    catch (ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns a fixed pool of daemon threads named {@code <name>-<n>}.
+   */
+  public static ExecutorService newExecutor(final int threads, final String name) {
+    return Executors.newFixedThreadPool(threads, new ThreadFactory()
+    {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Rethrows the given failure of a task if it is unchecked, otherwise returns it as {@link IOException} to throw.
+   */
+  public static IOException propagate(final Throwable cause) {
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    IOException ioe = new IOException(String.valueOf(cause));
+    ioe.initCause(cause);
+    return ioe;
+  }
+}
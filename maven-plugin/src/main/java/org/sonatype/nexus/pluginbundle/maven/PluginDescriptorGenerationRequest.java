@@ -15,7 +15,9 @@ package org.sonatype.nexus.pluginbundle.maven;
 
 import java.io.File;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,11 +49,17 @@ public class PluginDescriptorGenerationRequest
 
   private String scmTimestamp;
 
-  private final Map<String, String> licenses = new HashMap<String, String>();
+  private final Map<String, String> licenses = new LinkedHashMap<String, String>();
 
-  private final Set<GAVCoordinate> classpathDependencies = new HashSet<GAVCoordinate>();
+  private final Set<GAVCoordinate> classpathDependencies = new LinkedHashSet<GAVCoordinate>();
 
-  private final Set<GAVCoordinate> pluginDependencies = new HashSet<GAVCoordinate>();
+  private final Set<GAVCoordinate> pluginDependencies = new LinkedHashSet<GAVCoordinate>();
+
+  private final Map<GAVCoordinate, List<String>> packageNames = new HashMap<GAVCoordinate, List<String>>();
+
+  private final Map<GAVCoordinate, String> sha256s = new HashMap<GAVCoordinate, String>();
+
+  private final Map<GAVCoordinate, Long> sizes = new HashMap<GAVCoordinate, Long>();
 
   /**
    * The character encoding of the source files, may be {@code null} or empty to use platform's default encoding.
@@ -132,6 +140,49 @@ public class PluginDescriptorGenerationRequest
     return classpathDependencies;
   }
 
+  /**
+   * @since 1.4
+   */
+  public void setPackageNames(GAVCoordinate coordinate, List<String> names) {
+    packageNames.put(coordinate, names);
+  }
+
+  /**
+   * Returns the packages contained in the given classpath dependency, or {@code null} if not recorded.
+   *
+   * @since 1.4
+   */
+  public List<String> getPackageNames(GAVCoordinate coordinate) {
+    return packageNames.get(coordinate);
+  }
+
+  /**
+   * @since 1.4
+   */
+  public void setChecksum(GAVCoordinate coordinate, String sha256, long size) {
+    sha256s.put(coordinate, sha256);
+    sizes.put(coordinate, size);
+  }
+
+  /**
+   * Returns the SHA-256 of the file of the given classpath dependency, or {@code null} if not recorded.
+   *
+   * @since 1.4
+   */
+  public String getSha256(GAVCoordinate coordinate) {
+    return sha256s.get(coordinate);
+  }
+
+  /**
+   * Returns the size of the file of the given classpath dependency, or -1 if not recorded.
+   *
+   * @since 1.4
+   */
+  public long getSize(GAVCoordinate coordinate) {
+    Long size = sizes.get(coordinate);
+    return size == null ? -1 : size;
+  }
+
   public void addPluginDependency(GAVCoordinate coordinate) {
     getPluginDependencies().add(coordinate);
   }
@@ -16,8 +16,11 @@ package org.sonatype.nexus.pluginbundle.maven;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 import org.sonatype.plexus.build.incremental.BuildContext;
@@ -25,12 +28,13 @@ import org.sonatype.plugins.model.ClasspathDependency;
 import org.sonatype.plugins.model.PluginDependency;
 import org.sonatype.plugins.model.PluginLicense;
 import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.binary.PluginModelBinaryWriter;
 import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Writer;
 
 import org.codehaus.plexus.util.IOUtil;
 
 /**
- * Generates nexus plugin descriptor XML file.
+ * Generates nexus plugin descriptor XML file, and its binary form next to it.
  *
  * @since 1.0
  */
@@ -40,6 +44,13 @@ public class PluginDescriptorGenerator
 
   public static final String APPLICATION_ID = "nexus";
 
+  /**
+   * Name of the binary descriptor, written to the directory of the XML descriptor.
+   *
+   * @since 1.4
+   */
+  public static final String BINARY_DESCRIPTOR_NAME = "plugin.bin";
+
   private final BuildContext buildContext;
 
   public PluginDescriptorGenerator(final BuildContext buildContext) {
@@ -83,6 +94,12 @@ public class PluginDescriptorGenerator
         entry.setClassifier(dependency.getClassifier());
         entry.setType(dependency.getType());
         entry.setShared(dependency.isShared());
+        List<String> packageNames = request.getPackageNames(dependency);
+        if (packageNames != null) {
+          entry.setPackageNames(new ArrayList<String>(packageNames));
+        }
+        entry.setSha256(request.getSha256(dependency));
+        entry.setSize(request.getSize(dependency));
         metadata.addClasspathDependency(entry);
       }
     }
@@ -100,9 +117,19 @@ public class PluginDescriptorGenerator
 
     if (request.getOutputFile() != null) {
       write(metadata, request.getOutputFile());
+      writeBinary(metadata, getBinaryFile(request.getOutputFile()));
     }
   }
 
+  /**
+   * Returns the binary descriptor written along the given XML descriptor.
+   *
+   * @since 1.4
+   */
+  public static File getBinaryFile(final File outputFile) {
+    return new File(outputFile.getParentFile(), BINARY_DESCRIPTOR_NAME);
+  }
+
   private void write(final PluginMetadata metadata, final File outputFile) throws IOException {
     outputFile.getParentFile().mkdirs();
     Writer output = null;
@@ -115,4 +142,15 @@ public class PluginDescriptorGenerator
       IOUtil.close(output);
     }
   }
+
+  private void writeBinary(final PluginMetadata metadata, final File outputFile) throws IOException {
+    OutputStream output = null;
+    try {
+      output = buildContext.newFileOutputStream(outputFile);
+      new PluginModelBinaryWriter().write(output, metadata);
+    }
+    finally {
+      IOUtil.close(output);
+    }
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.SessionData;
+
+/**
+ * Values computed at most once per key, even when modules are built concurrently ({@code mvn -T}); concurrent
+ * callers for the same key wait for the first one to finish. Failures are cached as well.
+ *
+ * @since 1.4
+ */
+public class SessionCache<V>
+{
+  private final ConcurrentMap<String, FutureTask<V>> values = new ConcurrentHashMap<String, FutureTask<V>>();
+
+  /**
+   * Returns the instance of the given type attached to the given session, creating it with its public no-argument
+   * constructor if needed.
+   */
+  public static <T> T attach(final RepositorySystemSession session, final Class<T> type) {
+    SessionData data = session.getData();
+    String key = type.getName();
+    while (true) {
+      Object value = data.get(key);
+      if (type.isInstance(value)) {
+        return type.cast(value);
+      }
+      T created;
+      try {
+        created = type.newInstance();
+      }
+      catch (Exception e) {
+        throw new IllegalStateException("Failed to create " + key, e);
+      }
+      if (data.set(key, value, created)) {
+        return created;
+      }
+    }
+  }
+
+  /**
+   * Returns the value with the given key, computing it with the given loader if this is the first request.
+   *
+   * @throws ExecutionException if the loader failed, now or for an earlier request.
+   */
+  public V get(final String key, final Callable<V> loader) throws InterruptedException, ExecutionException {
+    FutureTask<V> task = values.get(key);
+    if (task == null) {
+      FutureTask<V> created = new FutureTask<V>(loader);
+      task = values.putIfAbsent(key, created);
+      if (task == null) {
+        task = created;
+        task.run();
+      }
+    }
+    return task.get();
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Rewrites zip files so identical content always gives identical bytes: entries are sorted by name, stamped with a
+ * fixed time and stripped of extra fields and comments, which carry file system permissions and owners.
+ *
+ * Stored entries stay stored, all others are deflated.
+ *
+ * @since 1.4
+ */
+public class ZipNormalizer
+{
+  /**
+   * Entry time used when no timestamp is configured, 1980-01-01T00:00:00Z, the earliest time a zip entry can carry.
+   */
+  public static final long DEFAULT_TIMESTAMP = 315532800000L;
+
+  private ZipNormalizer() {
+    // empty
+  }
+
+  /**
+   * Normalizes the given zip file in place.
+   */
+  public static void normalize(final File file, final long timestamp) throws IOException {
+    File tmp = AtomicFiles.createTemp(file);
+    try {
+      write(file, tmp, timestamp);
+      AtomicFiles.replace(tmp, file);
+    }
+    finally {
+      tmp.delete();
+    }
+  }
+
+  private static void write(final File file, final File tmp, final long timestamp) throws IOException {
+    ZipFile zip = new ZipFile(file);
+    try {
+      List<ZipEntry> entries = new ArrayList<ZipEntry>();
+      for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+        entries.add(e.nextElement());
+      }
+      Collections.sort(entries, new Comparator<ZipEntry>()
+      {
+        public int compare(final ZipEntry a, final ZipEntry b) {
+          return a.getName().compareTo(b.getName());
+        }
+      });
+
+      long time = toLocalTime(timestamp);
+
+      ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        byte[] buff = new byte[8192];
+        for (ZipEntry source : entries) {
+          ZipEntry entry = new ZipEntry(source.getName());
+          entry.setTime(time);
+          if (source.getMethod() == ZipEntry.STORED) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(source.getSize());
+            entry.setCompressedSize(source.getSize());
+            entry.setCrc(source.getCrc());
+          }
+          output.putNextEntry(entry);
+          InputStream input = zip.getInputStream(source);
+          try {
+            for (int n = input.read(buff); n != -1; n = input.read(buff)) {
+              output.write(buff, 0, n);
+            }
+          }
+          finally {
+            IOUtil.close(input);
+          }
+          output.closeEntry();
+        }
+        output.close();
+      }
+      finally {
+        IOUtil.close(output);
+      }
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  /**
+   * Zip entry times are local date and time fields, this shifts the given timestamp so every build machine writes the
+   * same fields, those of the timestamp in UTC.
+   */
+  static long toLocalTime(final long timestamp) {
+    return timestamp - TimeZone.getDefault().getOffset(timestamp);
+  }
+
+  /**
+   * Parses a {@code project.build.outputTimestamp} value, either seconds since the epoch or an ISO-8601 date and time
+   * with offset, eg. {@code 2013-03-14T10:42:33Z}.
+   *
+   * @return The timestamp in milliseconds, or {@code null} if not set. As with other maven plugins, a single
+   *         character value counts as not set, to allow overriding an inherited timestamp.
+   * @throws IllegalArgumentException if the value is neither.
+   */
+  @Nullable
+  public static Long parseTimestamp(final @Nullable String value) {
+    if (value == null || value.trim().length() < 2) {
+      return null;
+    }
+
+    String trimmed = value.trim();
+    if (trimmed.matches("\\d+")) {
+      return Long.parseLong(trimmed) * 1000;
+    }
+
+    // SimpleDateFormat only understands RFC 822 offsets
+    String rfc822 = trimmed.replaceFirst("Z$", "+0000").replaceFirst("([+-]\\d\\d):(\\d\\d)$", "$1$2");
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+    format.setLenient(false);
+    try {
+      return format.parse(rfc822).getTime();
+    }
+    catch (ParseException e) {
+      throw new IllegalArgumentException("Invalid output timestamp: " + value
+          + ", expected seconds since the epoch or an ISO-8601 date like 2013-03-14T10:42:33Z");
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+/**
+ * Enumerates the packages of a jar by reading only its zip central directory.
+ *
+ * The central directory is streamed through a fixed size buffer, so memory use is bounded by the number of distinct
+ * packages rather than by the size or number of entries of the jar. The result matches bnd's
+ * {@code Jar.getPackages()}: one package for every directory holding at least one file, ordered by path.
+ *
+ * @since 1.4
+ */
+public class ZipPackageEnumerator
+{
+  private static final int END_SIGNATURE = 0x06054b50;
+
+  private static final int END_SIZE = 22;
+
+  private static final int MAX_COMMENT = 0xffff;
+
+  private static final int ENTRY_SIGNATURE = 0x02014b50;
+
+  private static final int ENTRY_SIZE = 46;
+
+  private static final int BUFFER_SIZE = 128 * 1024;
+
+  private ZipPackageEnumerator() {
+    // empty
+  }
+
+  /**
+   * Returns the packages of the given jar, or {@code null} if it is not a plain zip file this enumerator understands
+   * (directories, zip64, multi-disk archives, ...), in which case callers should fall back to bnd.
+   */
+  @Nullable
+  public static List<String> getPackages(final File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return getPackages(raf.getChannel());
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  private static List<String> getPackages(final FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size < END_SIZE) {
+      return null;
+    }
+
+    // locate the end of central directory record, which is followed by a comment of up to 64k
+    int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+    ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, tail, size - tailSize);
+
+    int end = -1;
+    for (int i = tailSize - END_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_SIGNATURE && i + END_SIZE + (tail.getShort(i + 20) & 0xffff) <= tailSize) {
+        end = i;
+        break;
+      }
+    }
+    if (end == -1) {
+      return null;
+    }
+
+    int disk = tail.getShort(end + 4) & 0xffff;
+    int startDisk = tail.getShort(end + 6) & 0xffff;
+    int entries = tail.getShort(end + 10) & 0xffff;
+    long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+    long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+    if (disk != 0 || startDisk != 0 || entries == 0xffff || directorySize == 0xffffffffL
+        || directoryOffset == 0xffffffffL) {
+      return null;
+    }
+
+    // tolerate data prepended to the archive, as java.util.zip does
+    long endPosition = size - tailSize + end;
+    long position = endPosition - directorySize;
+    if (position < 0) {
+      return null;
+    }
+
+    Set<String> directories = new TreeSet<String>();
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    long bufferStart = 0;
+    buffer.limit(0);
+    byte[] previous = new byte[0];
+    int previousLength = -1;
+    byte[] name = new byte[256];
+
+    for (int n = 0; n < entries; n++) {
+      if (position + ENTRY_SIZE > endPosition) {
+        return null;
+      }
+      if (position < bufferStart || position + ENTRY_SIZE > bufferStart + buffer.limit()) {
+        bufferStart = fill(channel, buffer, position, endPosition);
+      }
+
+      int offset = (int) (position - bufferStart);
+      if (buffer.getInt(offset) != ENTRY_SIGNATURE) {
+        return null;
+      }
+      int nameLength = buffer.getShort(offset + 28) & 0xffff;
+      int extraLength = buffer.getShort(offset + 30) & 0xffff;
+      int commentLength = buffer.getShort(offset + 32) & 0xffff;
+
+      if (position + ENTRY_SIZE + nameLength > bufferStart + buffer.limit()) {
+        bufferStart = fill(channel, buffer, position, endPosition);
+        offset = 0;
+        if (ENTRY_SIZE + nameLength > buffer.limit()) {
+          return null;
+        }
+      }
+
+      if (name.length < nameLength) {
+        name = new byte[nameLength];
+      }
+      buffer.position(offset + ENTRY_SIZE);
+      buffer.get(name, 0, nameLength);
+
+      // only files contribute a package, which is the directory containing them
+      if (nameLength > 0 && name[nameLength - 1] != '/') {
+        int slash = lastSlash(name, nameLength);
+        if (slash != previousLength || !regionEquals(name, previous, slash)) {
+          if (previous.length < slash) {
+            previous = new byte[name.length];
+          }
+          System.arraycopy(name, 0, previous, 0, slash);
+          previousLength = slash;
+          directories.add(slash > 0 ? new String(name, 0, slash, "UTF-8") : "");
+        }
+      }
+
+      position += ENTRY_SIZE + nameLength + extraLength + commentLength;
+    }
+
+    List<String> packages = new ArrayList<String>(directories.size());
+    for (String directory : directories) {
+      packages.add(directory.replace('/', '.'));
+    }
+    return packages;
+  }
+
+  private static int lastSlash(final byte[] name, final int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (name[i] == '/') {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private static boolean regionEquals(final byte[] a, final byte[] b, final int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[i] != b[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Fills the buffer with as much of the central directory as fits, starting at the given position.
+   *
+   * @return The position of the first byte in the buffer.
+   */
+  private static long fill(final FileChannel channel, final ByteBuffer buffer, final long position, final long limit)
+      throws IOException
+  {
+    buffer.clear();
+    if (limit - position < buffer.capacity()) {
+      buffer.limit((int) (limit - position));
+    }
+    readFully(channel, buffer, position);
+    buffer.flip();
+    return position;
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException
+  {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, offset);
+      if (n < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      offset += n;
+    }
+  }
+}
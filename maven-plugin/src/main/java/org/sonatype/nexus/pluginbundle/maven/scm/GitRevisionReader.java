@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Reads the revision checked out in a git working copy directly from the repository, without forking git.
+ *
+ * Supports loose and packed refs, and commits stored as loose objects or in (version 1 and 2) pack files, including
+ * deltified ones. Anything else (alternates, reftables, ...) is reported as unsupported so callers can fall back to
+ * {@link GitRevParseCommand}.
+ *
+ * @since 1.4
+ */
+public class GitRevisionReader
+{
+  private static final String ENCODING = "UTF-8";
+
+  private static final int PACK_INDEX_MAGIC = 0xff744f63;
+
+  private static final int OBJ_COMMIT = 1;
+
+  private static final int OBJ_OFS_DELTA = 6;
+
+  private static final int OBJ_REF_DELTA = 7;
+
+  private static final int MAX_DEPTH = 64;
+
+  private GitRevisionReader() {
+    // empty
+  }
+
+  /**
+   * Returns the revision checked out in the working copy containing the given directory, or {@code null} if there
+   * is none or the repository layout is not supported.
+   */
+  @Nullable
+  public static ScmRevision read(final File basedir) throws IOException {
+    File gitDir = findRepository(basedir);
+    if (gitDir == null) {
+      return null;
+    }
+
+    String hash = resolveHead(gitDir);
+    if (hash == null || hash.length() != 40) {
+      return null;
+    }
+
+    byte[] commit = readObject(getCommonDir(gitDir), hash, OBJ_COMMIT, 0);
+    if (commit == null) {
+      return null;
+    }
+
+    return new ScmRevision(hash, getCommitterDate(commit));
+  }
+
+  /**
+   * Returns the git directory of the working copy containing the given directory, or {@code null}.
+   */
+  @Nullable
+  public static File findRepository(final File basedir) throws IOException {
+    for (File dir = basedir.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+      File git = new File(dir, ".git");
+      if (git.isDirectory()) {
+        return git;
+      }
+      if (git.isFile()) {
+        // worktree or submodule, .git is a pointer to the real git directory
+        String pointer = FileUtils.fileRead(git, ENCODING).trim();
+        if (!pointer.startsWith("gitdir:")) {
+          return null;
+        }
+        File target = new File(pointer.substring("gitdir:".length()).trim());
+        if (!target.isAbsolute()) {
+          target = new File(dir, target.getPath());
+        }
+        return target;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Resolves HEAD of the given git directory to a commit hash, or {@code null} for unborn branches.
+   */
+  @Nullable
+  public static String resolveHead(final File gitDir) throws IOException {
+    File commonDir = getCommonDir(gitDir);
+    String ref = "HEAD";
+    for (int depth = 0; depth < 5; depth++) {
+      String value = readRef(depth == 0 ? gitDir : commonDir, commonDir, ref);
+      if (value == null) {
+        return null;
+      }
+      if (!value.startsWith("ref:")) {
+        return value;
+      }
+      ref = value.substring("ref:".length()).trim();
+    }
+    return null;
+  }
+
+  private static String readRef(final File gitDir, final File commonDir, final String ref) throws IOException {
+    File loose = new File(gitDir, ref);
+    if (!loose.isFile()) {
+      loose = new File(commonDir, ref);
+    }
+    if (loose.isFile()) {
+      return FileUtils.fileRead(loose, ENCODING).trim();
+    }
+
+    File packed = new File(commonDir, "packed-refs");
+    if (packed.isFile()) {
+      for (String line : FileUtils.fileRead(packed, ENCODING).split("\n")) {
+        int space = line.indexOf(' ');
+        if (space != -1 && !line.startsWith("^") && line.substring(space + 1).equals(ref)) {
+          return line.substring(0, space);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Linked worktrees keep objects and shared refs in the main repository.
+   */
+  private static File getCommonDir(final File gitDir) throws IOException {
+    File commonDir = new File(gitDir, "commondir");
+    if (!commonDir.isFile()) {
+      return gitDir;
+    }
+    File target = new File(FileUtils.fileRead(commonDir, ENCODING).trim());
+    if (!target.isAbsolute()) {
+      target = new File(gitDir, target.getPath());
+    }
+    return target;
+  }
+
+  /**
+   * Formats the committer date of the given commit like {@code git log --format=%ci}.
+   */
+  private static String getCommitterDate(final byte[] commit) throws IOException {
+    String text = new String(commit, ENCODING);
+    int headerEnd = text.indexOf("\n\n");
+    if (headerEnd == -1) {
+      headerEnd = text.length();
+    }
+    for (String line : text.substring(0, headerEnd).split("\n")) {
+      if (line.startsWith("committer ")) {
+        // committer Name <email> 1363254153 +0100
+        String[] parts = line.substring(line.lastIndexOf('>') + 1).trim().split(" ");
+        if (parts.length != 2) {
+          return null;
+        }
+        long seconds = Long.parseLong(parts[0]);
+        String zone = parts[1];
+        int offset = Integer.parseInt(zone.substring(1, 3)) * 60 + Integer.parseInt(zone.substring(3, 5));
+        if (zone.charAt(0) == '-') {
+          offset = -offset;
+        }
+        return ScmRevision.format("yyyy-MM-dd HH:mm:ss Z", seconds * 1000L, offset);
+      }
+    }
+    return null;
+  }
+
+  // Objects
+
+  /**
+   * Reads the content of the object with the given hash, or returns {@code null} if it can not be found.
+   */
+  private static byte[] readObject(final File gitDir, final String hash, final int expectedType, final int depth)
+      throws IOException
+  {
+    if (depth > MAX_DEPTH) {
+      return null;
+    }
+
+    File loose = new File(gitDir, "objects/" + hash.substring(0, 2) + "/" + hash.substring(2));
+    if (loose.isFile()) {
+      return readLooseObject(loose, expectedType);
+    }
+
+    File[] indexes = new File(gitDir, "objects/pack").listFiles();
+    if (indexes != null) {
+      byte[] id = toBytes(hash);
+      for (File index : indexes) {
+        if (!index.getName().endsWith(".idx")) {
+          continue;
+        }
+        long offset = findOffset(index, id);
+        if (offset != -1) {
+          String name = index.getName();
+          File pack = new File(index.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+          return readPackedObject(gitDir, pack, offset, expectedType, depth);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static byte[] readLooseObject(final File file, final int expectedType) throws IOException {
+    InputStream input = null;
+    try {
+      input = new InflaterInputStream(new BufferedInputStream(new FileInputStream(file)));
+      byte[] data = IOUtil.toByteArray(input);
+      int nul = 0;
+      while (nul < data.length && data[nul] != 0) {
+        nul++;
+      }
+      String header = new String(data, 0, nul, ENCODING);
+      if (expectedType == OBJ_COMMIT && !header.startsWith("commit ")) {
+        return null;
+      }
+      byte[] content = new byte[data.length - nul - 1];
+      System.arraycopy(data, nul + 1, content, 0, content.length);
+      return content;
+    }
+    finally {
+      IOUtil.close(input);
+    }
+  }
+
+  /**
+   * Looks up the pack offset of an object in a pack index, without loading the whole index.
+   */
+  private static long findOffset(final File index, final byte[] id) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(index, "r");
+    try {
+      int version = 1;
+      long fanoutStart = 0;
+      if (file.readInt() == PACK_INDEX_MAGIC) {
+        version = file.readInt();
+        if (version != 2) {
+          return -1;
+        }
+        fanoutStart = 8;
+      }
+
+      int first = id[0] & 0xff;
+      int low = 0;
+      if (first > 0) {
+        file.seek(fanoutStart + (first - 1) * 4);
+        low = file.readInt();
+      }
+      file.seek(fanoutStart + first * 4);
+      int high = file.readInt();
+      file.seek(fanoutStart + 255 * 4);
+      int count = file.readInt();
+
+      long namesStart = fanoutStart + 256 * 4;
+      int entrySize = version == 2 ? 20 : 24;
+      int nameOffset = version == 2 ? 0 : 4;
+      byte[] name = new byte[20];
+
+      // binary search within the fan-out bucket
+      high--;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        file.seek(namesStart + (long) middle * entrySize + nameOffset);
+        file.readFully(name);
+        int compare = compare(name, id);
+        if (compare == 0) {
+          if (version == 1) {
+            file.seek(namesStart + (long) middle * entrySize);
+            return file.readInt() & 0xffffffffL;
+          }
+          long offsetsStart = namesStart + (long) count * 20 + (long) count * 4;
+          file.seek(offsetsStart + (long) middle * 4);
+          int offset = file.readInt();
+          if ((offset & 0x80000000) == 0) {
+            return offset;
+          }
+          file.seek(offsetsStart + (long) count * 4 + (long) (offset & 0x7fffffff) * 8);
+          return file.readLong();
+        }
+        if (compare < 0) {
+          low = middle + 1;
+        }
+        else {
+          high = middle - 1;
+        }
+      }
+      return -1;
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  private static byte[] readPackedObject(final File gitDir,
+                                         final File pack,
+                                         final long offset,
+                                         final int expectedType,
+                                         final int depth)
+      throws IOException
+  {
+    FileInputStream stream = new FileInputStream(pack);
+    try {
+      stream.getChannel().position(offset);
+      InputStream input = new BufferedInputStream(stream);
+
+      int c = readByte(input);
+      int type = (c >> 4) & 7;
+      long size = c & 0x0f;
+      int shift = 4;
+      while ((c & 0x80) != 0) {
+        c = readByte(input);
+        size |= (long) (c & 0x7f) << shift;
+        shift += 7;
+      }
+
+      if (type == OBJ_OFS_DELTA) {
+        c = readByte(input);
+        long distance = c & 0x7f;
+        while ((c & 0x80) != 0) {
+          c = readByte(input);
+          distance = ((distance + 1) << 7) | (c & 0x7f);
+        }
+        byte[] delta = inflate(input, size);
+        byte[] base = readPackedObject(gitDir, pack, offset - distance, expectedType, depth + 1);
+        return base == null ? null : applyDelta(base, delta);
+      }
+
+      if (type == OBJ_REF_DELTA) {
+        byte[] baseId = new byte[20];
+        for (int i = 0; i < baseId.length; i++) {
+          baseId[i] = (byte) readByte(input);
+        }
+        byte[] delta = inflate(input, size);
+        byte[] base = readObject(gitDir, toHex(baseId), expectedType, depth + 1);
+        return base == null ? null : applyDelta(base, delta);
+      }
+
+      if (type != expectedType) {
+        return null;
+      }
+      return inflate(input, size);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  private static byte[] inflate(final InputStream input, final long size) throws IOException {
+    InflaterInputStream inflater = new InflaterInputStream(input);
+    byte[] data = new byte[(int) size];
+    int count = 0;
+    while (count < data.length) {
+      int n = inflater.read(data, count, data.length - count);
+      if (n < 0) {
+        throw new EOFException("Truncated pack entry");
+      }
+      count += n;
+    }
+    return data;
+  }
+
+  /**
+   * Applies a git delta to the given base object.
+   */
+  private static byte[] applyDelta(final byte[] base, final byte[] delta) throws IOException {
+    int[] position = new int[1];
+    readVarint(delta, position); // base size
+    int size = (int) readVarint(delta, position);
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream(size);
+    int i = position[0];
+    while (i < delta.length) {
+      int op = delta[i++] & 0xff;
+      if ((op & 0x80) != 0) {
+        int copyOffset = 0;
+        int copySize = 0;
+        for (int bit = 0; bit < 4; bit++) {
+          if ((op & (1 << bit)) != 0) {
+            copyOffset |= (delta[i++] & 0xff) << (bit * 8);
+          }
+        }
+        for (int bit = 0; bit < 3; bit++) {
+          if ((op & (0x10 << bit)) != 0) {
+            copySize |= (delta[i++] & 0xff) << (bit * 8);
+          }
+        }
+        if (copySize == 0) {
+          copySize = 0x10000;
+        }
+        result.write(base, copyOffset, copySize);
+      }
+      else if (op != 0) {
+        result.write(delta, i, op);
+        i += op;
+      }
+      else {
+        throw new IOException("Invalid delta instruction");
+      }
+    }
+    return result.toByteArray();
+  }
+
+  private static long readVarint(final byte[] data, final int[] position) {
+    long value = 0;
+    int shift = 0;
+    int c;
+    do {
+      c = data[position[0]++] & 0xff;
+      value |= (long) (c & 0x7f) << shift;
+      shift += 7;
+    }
+    while ((c & 0x80) != 0);
+    return value;
+  }
+
+  private static int readByte(final InputStream input) throws IOException {
+    int c = input.read();
+    if (c < 0) {
+      throw new EOFException("Truncated pack entry");
+    }
+    return c;
+  }
+
+  private static int compare(final byte[] a, final byte[] b) {
+    for (int i = 0; i < a.length; i++) {
+      int x = a[i] & 0xff;
+      int y = b[i] & 0xff;
+      if (x != y) {
+        return x < y ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  private static byte[] toBytes(final String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  private static String toHex(final byte[] bytes) {
+    StringBuilder buff = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buff.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return buff.toString();
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.pluginbundle.maven.AtomicFiles;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Reads the revision checked out in a Mercurial working copy from {@code .hg/dirstate} and the changelog revlog,
+ * without forking hg.
+ *
+ * Supports version 1 revlogs (inline or not, with or without generaldelta) compressed with zlib. Anything else
+ * (revlog v2, zstd compression, ...) is reported as unsupported so callers can fall back to {@link HgDebugIdCommand}.
+ *
+ * @since 1.4
+ */
+public class HgRevisionReader
+{
+  private static final String ENCODING = "UTF-8";
+
+  private static final String DIRSTATE_V2 = "dirstate-v2\n";
+
+  private static final int ENTRY_SIZE = 64;
+
+  private static final int REVLOGV1 = 1;
+
+  private static final int FLAG_INLINE_DATA = 1;
+
+  private static final int FLAG_GENERALDELTA = 1 << 1;
+
+  private HgRevisionReader() {
+    // empty
+  }
+
+  /**
+   * Returns the revision checked out in the working copy containing the given directory, or {@code null} if there
+   * is none or the repository format is not supported.
+   */
+  @Nullable
+  public static ScmRevision read(final File basedir) throws IOException {
+    File hgDir = findRepository(basedir);
+    if (hgDir == null) {
+      return null;
+    }
+
+    byte[] node = readParent(new File(hgDir, "dirstate"));
+    if (node == null) {
+      return null;
+    }
+
+    File changelog = getChangelog(hgDir);
+    if (changelog == null || !changelog.isFile()) {
+      return null;
+    }
+
+    byte[] text = readRevision(changelog, node);
+    if (text == null) {
+      return null;
+    }
+
+    return new ScmRevision(toHex(node), getDate(text));
+  }
+
+  @Nullable
+  private static File findRepository(final File basedir) {
+    for (File dir = basedir.getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+      File hg = new File(dir, ".hg");
+      if (hg.isDirectory()) {
+        return hg;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the first parent of the working directory, or {@code null} if there is no checkout.
+   */
+  @Nullable
+  private static byte[] readParent(final File dirstate) throws IOException {
+    if (!dirstate.isFile()) {
+      return null;
+    }
+
+    byte[] header = new byte[DIRSTATE_V2.length() + 20];
+    InputStream input = new FileInputStream(dirstate);
+    try {
+      int count = 0;
+      int n;
+      while (count < header.length && (n = input.read(header, count, header.length - count)) != -1) {
+        count += n;
+      }
+      if (count < 20) {
+        return null;
+      }
+    }
+    finally {
+      IOUtil.close(input);
+    }
+
+    // dirstate v1 starts with the parents, the v2 docket with a marker followed by the parents
+    int offset = new String(header, 0, DIRSTATE_V2.length(), "ISO-8859-1").equals(DIRSTATE_V2)
+        ? DIRSTATE_V2.length() : 0;
+    byte[] node = new byte[20];
+    System.arraycopy(header, offset, node, 0, node.length);
+
+    for (byte b : node) {
+      if (b != 0) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static File getChangelog(final File hgDir) throws IOException {
+    File root = hgDir;
+    File sharedPath = new File(hgDir, "sharedpath");
+    if (sharedPath.isFile()) {
+      root = new File(FileUtils.fileRead(sharedPath, ENCODING).trim());
+    }
+
+    List<String> requirements = new ArrayList<String>();
+    File requires = new File(hgDir, "requires");
+    if (requires.isFile()) {
+      for (String line : AtomicFiles.readLines(requires)) {
+        if (line.trim().length() > 0) {
+          requirements.add(line.trim());
+        }
+      }
+    }
+    for (String requirement : requirements) {
+      if (!requirement.equals("revlogv1") && !requirement.equals("store") && !requirement.equals("fncache")
+          && !requirement.equals("dotencode") && !requirement.equals("generaldelta")
+          && !requirement.equals("sparserevlog") && !requirement.equals("share") && !requirement.equals("shared")
+          && !requirement.equals("share-safe") && !requirement.equals("persistent-nodemap")
+          && !requirement.equals("dirstate-v2") && !requirement.equals("largefiles")) {
+        return null;
+      }
+    }
+
+    return requirements.contains("store")
+        ? new File(root, "store/00changelog.i")
+        : new File(root, "00changelog.i");
+  }
+
+  /**
+   * Reads the full text of the revision with the given node from a revlog.
+   */
+  @Nullable
+  private static byte[] readRevision(final File index, final byte[] node) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(index, "r");
+    try {
+      int header = file.readInt();
+      if ((header & 0xffff) != REVLOGV1) {
+        return null;
+      }
+      boolean inline = (header & (FLAG_INLINE_DATA << 16)) != 0;
+      boolean generalDelta = (header & (FLAG_GENERALDELTA << 16)) != 0;
+
+      List<long[]> entries = readEntries(file, inline);
+
+      int rev = -1;
+      byte[] entryNode = new byte[20];
+      for (int i = entries.size() - 1; i >= 0 && rev == -1; i--) {
+        file.seek(entries.get(i)[3] + 32);
+        file.readFully(entryNode);
+        if (Arrays.equals(entryNode, node)) {
+          rev = i;
+        }
+      }
+      if (rev == -1) {
+        return null;
+      }
+
+      // collect the delta chain, from the full snapshot to the requested revision
+      List<Integer> chain = new ArrayList<Integer>();
+      int current = rev;
+      while (true) {
+        chain.add(current);
+        int base = (int) entries.get(current)[2];
+        if (base == current || base < 0) {
+          break;
+        }
+        current = generalDelta ? base : current - 1;
+        if (chain.size() > entries.size()) {
+          return null;
+        }
+      }
+      Collections.reverse(chain);
+
+      RandomAccessFile data = inline ? file : new RandomAccessFile(dataFile(index), "r");
+      try {
+        byte[] text = null;
+        for (int r : chain) {
+          byte[] chunk = decompress(readChunk(data, entries, r, inline));
+          if (chunk == null) {
+            return null;
+          }
+          text = text == null ? chunk : patch(text, chunk);
+        }
+        return text;
+      }
+      finally {
+        if (data != file) {
+          data.close();
+        }
+      }
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Reads the index entries as {@code [offset, compressed length, base, position of entry]}.
+   */
+  private static List<long[]> readEntries(final RandomAccessFile file, final boolean inline) throws IOException {
+    List<long[]> entries = new ArrayList<long[]>();
+    long length = file.length();
+    long position = 0;
+    byte[] entry = new byte[ENTRY_SIZE];
+    while (position + ENTRY_SIZE <= length) {
+      file.seek(position);
+      file.readFully(entry);
+      long offset = entries.isEmpty() ? 0 : (readLong(entry, 0) >>> 16);
+      long compressed = readInt(entry, 8) & 0xffffffffL;
+      long base = readInt(entry, 16);
+      entries.add(new long[]{offset, compressed, base, position});
+      position += ENTRY_SIZE + (inline ? compressed : 0);
+    }
+    return entries;
+  }
+
+  private static byte[] readChunk(final RandomAccessFile data,
+                                  final List<long[]> entries,
+                                  final int rev,
+                                  final boolean inline)
+      throws IOException
+  {
+    long[] entry = entries.get(rev);
+    long position = inline ? entry[3] + ENTRY_SIZE : entry[0];
+    byte[] chunk = new byte[(int) entry[1]];
+    data.seek(position);
+    data.readFully(chunk);
+    return chunk;
+  }
+
+  private static File dataFile(final File index) {
+    String name = index.getName();
+    return new File(index.getParentFile(), name.substring(0, name.length() - 2) + ".d");
+  }
+
+  @Nullable
+  private static byte[] decompress(final byte[] chunk) throws IOException {
+    if (chunk.length == 0 || chunk[0] == 0) {
+      return chunk;
+    }
+    if (chunk[0] == 'u') {
+      byte[] result = new byte[chunk.length - 1];
+      System.arraycopy(chunk, 1, result, 0, result.length);
+      return result;
+    }
+    if (chunk[0] != 'x') {
+      // zstd or another unsupported engine
+      return null;
+    }
+
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(chunk);
+      ByteArrayOutputStream result = new ByteArrayOutputStream(chunk.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buffer);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated revlog chunk");
+        }
+        result.write(buffer, 0, n);
+      }
+      return result.toByteArray();
+    }
+    catch (DataFormatException e) {
+      IOException ioe = new IOException("Invalid revlog chunk: " + e.getMessage());
+      ioe.initCause(e);
+      throw ioe;
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Applies a binary delta (sequence of {@code start, end, length, data} hunks) to the given text.
+   */
+  private static byte[] patch(final byte[] text, final byte[] delta) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream(text.length + delta.length);
+    int last = 0;
+    int i = 0;
+    while (i + 12 <= delta.length) {
+      int start = readInt(delta, i);
+      int end = readInt(delta, i + 4);
+      int length = readInt(delta, i + 8);
+      i += 12;
+      if (start < last || end < start || end > text.length || i + length > delta.length) {
+        throw new IOException("Invalid revlog delta");
+      }
+      result.write(text, last, start - last);
+      result.write(delta, i, length);
+      i += length;
+      last = end;
+    }
+    result.write(text, last, text.length - last);
+    return result.toByteArray();
+  }
+
+  /**
+   * Formats the date of a changelog entry like {@code hg log --template {date|isodate}}.
+   */
+  @Nullable
+  private static String getDate(final byte[] text) throws IOException {
+    // manifest node, user, date, files..., description
+    String[] lines = new String(text, ENCODING).split("\n", 4);
+    if (lines.length < 3) {
+      return null;
+    }
+    String[] parts = lines[2].split(" ");
+    if (parts.length < 2) {
+      return null;
+    }
+    long seconds = (long) Double.parseDouble(parts[0]);
+    // offset is in seconds west of UTC
+    int offset = -Integer.parseInt(parts[1]) / 60;
+    return ScmRevision.format("yyyy-MM-dd HH:mm Z", seconds * 1000L, offset);
+  }
+
+  private static int readInt(final byte[] bytes, final int offset) {
+    return ((bytes[offset] & 0xff) << 24)
+        | ((bytes[offset + 1] & 0xff) << 16)
+        | ((bytes[offset + 2] & 0xff) << 8)
+        | (bytes[offset + 3] & 0xff);
+  }
+
+  private static long readLong(final byte[] bytes, final int offset) {
+    return ((long) readInt(bytes, offset) << 32) | (readInt(bytes, offset + 4) & 0xffffffffL);
+  }
+
+  private static String toHex(final byte[] bytes) {
+    StringBuilder buff = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buff.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return buff.toString();
+  }
+}
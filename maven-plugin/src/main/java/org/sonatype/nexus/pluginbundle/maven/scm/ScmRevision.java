@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import javax.annotation.Nullable;
+
+/**
+ * The revision of a working copy and its timestamp, as read from the working copy metadata.
+ *
+ * @since 1.4
+ */
+public class ScmRevision
+{
+  private final String version;
+
+  private final String timestamp;
+
+  public ScmRevision(final String version, final @Nullable String timestamp) {
+    this.version = version;
+    this.timestamp = timestamp;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  @Nullable
+  public String getTimestamp() {
+    return timestamp;
+  }
+
+  public String toString() {
+    return version + (timestamp != null ? " (" + timestamp + ")" : "");
+  }
+
+  /**
+   * Formats the given time using the given pattern, in the time zone with given offset from UTC.
+   */
+  static String format(final String pattern, final long millis, final int offsetMinutes) {
+    int offset = Math.abs(offsetMinutes);
+    String id = String.format("GMT%s%02d:%02d", offsetMinutes < 0 ? "-" : "+", offset / 60, offset % 60);
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    format.setTimeZone(TimeZone.getTimeZone(id));
+    return format.format(new Date(millis));
+  }
+}
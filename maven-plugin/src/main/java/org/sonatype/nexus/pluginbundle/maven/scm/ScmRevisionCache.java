@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.nexus.pluginbundle.maven.SessionCache;
+
+import org.apache.maven.scm.ScmException;
+
+/**
+ * Build session wide cache of {@link ScmRevision}s, so the modules of a reactor sharing a working copy only look up
+ * the SCM details once.
+ *
+ * Entries are computed at most once, see {@link SessionCache}.
+ *
+ * @since 1.4
+ */
+public class ScmRevisionCache
+{
+  private final SessionCache<ScmRevision> revisions = new SessionCache<ScmRevision>();
+
+  /**
+   * Returns the cache attached to the given session, creating it if needed.
+   */
+  public static ScmRevisionCache get(final RepositorySystemSession session) {
+    return SessionCache.attach(session, ScmRevisionCache.class);
+  }
+
+  /**
+   * Returns the key identifying the revision of the given directory for a provider.
+   *
+   * Git and Mercurial report the revision of the whole working copy, so all directories of a working copy share the
+   * same key. Subversion reports the last changed revision of each directory, so the key is the directory itself.
+   */
+  public static String getKey(final String provider, final File basedir) throws IOException {
+    File root = null;
+    if ("git".equals(provider)) {
+      root = GitRevisionReader.findRepository(basedir);
+    }
+    else if ("hg".equals(provider)) {
+      for (File dir = basedir.getAbsoluteFile(); dir != null && root == null; dir = dir.getParentFile()) {
+        if (new File(dir, ".hg").isDirectory()) {
+          root = dir;
+        }
+      }
+    }
+    if (root == null) {
+      root = basedir;
+    }
+    return provider + ":" + root.getCanonicalPath();
+  }
+
+  /**
+   * Returns the revision with the given key, computing it with the given loader if this is the first request.
+   */
+  @Nullable
+  public ScmRevision get(final String key, final Callable<ScmRevision> loader) throws ScmException {
+    try {
+      return revisions.get(key, loader);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ScmException("Interrupted while waiting for SCM details", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ScmException) {
+        throw (ScmException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new ScmException(cause.getMessage(), cause);
+    }
+  }
+}
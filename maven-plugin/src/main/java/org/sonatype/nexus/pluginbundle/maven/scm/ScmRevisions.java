@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import org.apache.maven.scm.ScmException;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Reads SCM details provided by the build instead of the working copy, and bounds the time spent querying the SCM.
+ *
+ * @since 1.4
+ */
+public class ScmRevisions
+{
+  /**
+   * Providers of the revision variables set by common CI servers, so a variable of another SCM is not picked up.
+   */
+  private static final Map<String, String> VARIABLE_PROVIDERS = new HashMap<String, String>();
+
+  static {
+    VARIABLE_PROVIDERS.put("GIT_COMMIT", "git");
+    VARIABLE_PROVIDERS.put("SVN_REVISION", "svn");
+    VARIABLE_PROVIDERS.put("MERCURIAL_REVISION", "hg");
+  }
+
+  private ScmRevisions() {
+    // empty
+  }
+
+  /**
+   * Returns the SCM details from the given properties file if it provides them, otherwise from the environment like
+   * {@link #readEnvironment}, or {@code null} if neither does.
+   */
+  @Nullable
+  public static ScmRevision read(final @Nullable File file,
+                                 final @Nullable String provider,
+                                 final @Nullable String versionVariables,
+                                 final @Nullable String timestampVariables,
+                                 final Map<String, String> environment)
+      throws IOException
+  {
+    ScmRevision revision = file != null ? readFile(file) : null;
+    if (revision != null) {
+      return revision;
+    }
+    return readEnvironment(provider, versionVariables, timestampVariables, environment);
+  }
+
+  /**
+   * Returns the SCM details from the given properties file ({@code scm.version} and {@code scm.timestamp}), or
+   * {@code null} if the file does not exist or provides no version.
+   */
+  @Nullable
+  public static ScmRevision readFile(final File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    Properties properties = new Properties();
+    InputStream input = new FileInputStream(file);
+    try {
+      properties.load(input);
+    }
+    finally {
+      IOUtil.close(input);
+    }
+
+    String version = StringUtils.trim(properties.getProperty("scm.version"));
+    if (StringUtils.isEmpty(version)) {
+      return null;
+    }
+    return new ScmRevision(version, StringUtils.trim(properties.getProperty("scm.timestamp")));
+  }
+
+  /**
+   * Returns the SCM details from the first of the given comma separated version variables that is set, or
+   * {@code null} if none is. Well known variables of an SCM other than the given provider are skipped.
+   */
+  @Nullable
+  public static ScmRevision readEnvironment(final @Nullable String provider,
+                                           final @Nullable String versionVariables,
+                                           final @Nullable String timestampVariables,
+                                           final Map<String, String> environment)
+  {
+    if (versionVariables == null) {
+      return null;
+    }
+    for (String name : StringUtils.split(versionVariables, ", ")) {
+      String owner = VARIABLE_PROVIDERS.get(name);
+      if (owner != null && provider != null && !owner.equals(provider)) {
+        continue;
+      }
+      String version = getVariable(name, environment);
+      if (version != null) {
+        return new ScmRevision(version, getFirstVariable(timestampVariables, environment));
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getFirstVariable(final @Nullable String names, final Map<String, String> environment) {
+    if (names != null) {
+      for (String name : StringUtils.split(names, ", ")) {
+        String value = getVariable(name, environment);
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getVariable(final String name, final Map<String, String> environment) {
+    String value = StringUtils.trim(environment.get(name));
+    return StringUtils.isEmpty(value) ? null : value;
+  }
+
+  /**
+   * Runs the given SCM query, giving up after the given number of seconds so a hung SCM client can not stall the
+   * build; 0 waits forever.
+   */
+  @Nullable
+  public static ScmRevision callWithTimeout(final Callable<ScmRevision> callable, final int timeout)
+      throws Exception
+  {
+    if (timeout <= 0) {
+      return callable.call();
+    }
+
+    FutureTask<ScmRevision> task = new FutureTask<ScmRevision>(callable);
+    Thread thread = new Thread(task, "nexus-plugin-bundle-scm");
+    thread.setDaemon(true);
+    thread.start();
+    try {
+      return task.get(timeout, TimeUnit.SECONDS);
+    }
+    catch (TimeoutException e) {
+      task.cancel(true);
+      throw new ScmException("Timed out after " + timeout + " seconds");
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw (Error) e.getCause();
+    }
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads the last changed revision of a Subversion (1.7+) working copy directory straight from {@code .svn/wc.db},
+ * without forking svn.
+ *
+ * Only the parts of the SQLite file format needed to scan the {@code NODES} table are implemented. Older working
+ * copies (per-directory {@code .svn/entries}) and databases with pending journal or WAL content are reported as
+ * unsupported so callers can fall back to {@code svn info}.
+ *
+ * @since 1.4
+ */
+public class SvnRevisionReader
+{
+  private static final String MAGIC = "SQLite format 3\0";
+
+  private static final int HEADER_SIZE = 100;
+
+  private static final int UTF8 = 1;
+
+  private static final int LEAF_TABLE = 0x0d;
+
+  private static final int INTERIOR_TABLE = 0x05;
+
+  private SvnRevisionReader() {
+    // empty
+  }
+
+  /**
+   * Returns the last changed revision of the given working copy directory, or {@code null} if it is not part of a
+   * working copy or the working copy format is not supported.
+   */
+  @Nullable
+  public static ScmRevision read(final File basedir) throws IOException {
+    File dir = basedir.getAbsoluteFile();
+    File root = dir;
+    while (root != null && !new File(root, ".svn").isDirectory()) {
+      root = root.getParentFile();
+    }
+    if (root == null) {
+      return null;
+    }
+
+    File db = new File(root, ".svn/wc.db");
+    if (!db.isFile() || isNonEmpty(new File(root, ".svn/wc.db-journal"))
+        || isNonEmpty(new File(root, ".svn/wc.db-wal"))) {
+      return null;
+    }
+
+    String relpath = dir.getPath().substring(root.getPath().length()).replace(File.separatorChar, '/');
+    while (relpath.startsWith("/")) {
+      relpath = relpath.substring(1);
+    }
+
+    Database database = new Database(db);
+    try {
+      Object[] node = database.findNode(relpath);
+      if (node == null || !(node[0] instanceof Long)) {
+        return null;
+      }
+      String timestamp = null;
+      if (node[1] instanceof Long) {
+        timestamp = format((Long) node[1] / 1000L);
+      }
+      return new ScmRevision(String.valueOf(node[0]), timestamp);
+    }
+    finally {
+      database.close();
+    }
+  }
+
+  private static boolean isNonEmpty(final File file) {
+    return file.isFile() && file.length() > 0;
+  }
+
+  /**
+   * Formats the given time like the {@code Last Changed Date} of {@code svn info}.
+   */
+  static String format(final long millis) {
+    return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z (EEE, dd MMM yyyy)", Locale.US).format(new Date(millis));
+  }
+
+  /**
+   * Returns the names of the columns defined by a {@code CREATE TABLE} statement.
+   */
+  static List<String> getColumns(final String sql) {
+    String body = stripComments(sql);
+    int start = body.indexOf('(');
+    int end = body.lastIndexOf(')');
+    List<String> columns = new ArrayList<String>();
+    if (start == -1 || end < start) {
+      return columns;
+    }
+
+    int depth = 0;
+    int from = start + 1;
+    for (int i = from; i <= end; i++) {
+      char c = body.charAt(i);
+      if (c == '(') {
+        depth++;
+      }
+      else if (c == ')' && depth > 0) {
+        depth--;
+      }
+      else if ((c == ',' && depth == 0) || i == end) {
+        String definition = body.substring(from, i).trim();
+        from = i + 1;
+        String name = definition.split("\\s+", 2)[0];
+        String keyword = name.toUpperCase(Locale.ENGLISH);
+        if (name.length() == 0 || keyword.equals("CONSTRAINT") || keyword.equals("PRIMARY")
+            || keyword.equals("UNIQUE") || keyword.equals("CHECK") || keyword.equals("FOREIGN")) {
+          continue;
+        }
+        if (name.length() > 1 && "\"`[".indexOf(name.charAt(0)) != -1) {
+          name = name.substring(1, name.length() - 1);
+        }
+        columns.add(name);
+      }
+    }
+    return columns;
+  }
+
+  private static String stripComments(final String sql) {
+    StringBuilder buff = new StringBuilder(sql.length());
+    int i = 0;
+    while (i < sql.length()) {
+      if (sql.startsWith("/*", i)) {
+        int close = sql.indexOf("*/", i + 2);
+        i = close == -1 ? sql.length() : close + 2;
+        buff.append(' ');
+      }
+      else if (sql.startsWith("--", i)) {
+        int close = sql.indexOf('\n', i);
+        i = close == -1 ? sql.length() : close + 1;
+        buff.append(' ');
+      }
+      else {
+        buff.append(sql.charAt(i++));
+      }
+    }
+    return buff.toString();
+  }
+
+  /**
+   * Callback for rows of a table b-tree.
+   */
+  private interface RowVisitor
+  {
+    /**
+     * @return {@code false} to stop the scan.
+     */
+    boolean visit(Object[] values);
+  }
+
+  /**
+   * Minimal read-only access to the table b-trees of a SQLite database.
+   */
+  private static class Database
+  {
+    private final RandomAccessFile file;
+
+    private final int pageSize;
+
+    private final int usableSize;
+
+    private Database(final File db) throws IOException {
+      file = new RandomAccessFile(db, "r");
+      byte[] header = new byte[HEADER_SIZE];
+      try {
+        file.readFully(header);
+      }
+      catch (IOException e) {
+        file.close();
+        throw e;
+      }
+      if (!new String(header, 0, MAGIC.length(), "ISO-8859-1").equals(MAGIC)) {
+        file.close();
+        throw new IOException("Not a SQLite database: " + db);
+      }
+      int size = ((header[16] & 0xff) << 8) | (header[17] & 0xff);
+      pageSize = size == 1 ? 65536 : size;
+      usableSize = pageSize - (header[20] & 0xff);
+      int encoding = readInt(header, 56);
+      if (encoding != UTF8 && encoding != 0) {
+        file.close();
+        throw new IOException("Unsupported SQLite text encoding: " + encoding);
+      }
+    }
+
+    private void close() throws IOException {
+      file.close();
+    }
+
+    /**
+     * Returns the {@code changed_revision} and {@code changed_date} of the base node with given path.
+     */
+    @Nullable
+    private Object[] findNode(final String relpath) throws IOException {
+      final Object[][] table = new Object[1][];
+      scan(1, new RowVisitor()
+      {
+        public boolean visit(final Object[] values) {
+          // type, name, tbl_name, rootpage, sql
+          if (values.length >= 5 && "table".equals(values[0]) && "NODES".equalsIgnoreCase((String) values[1])) {
+            table[0] = values;
+            return false;
+          }
+          return true;
+        }
+      });
+      if (table[0] == null || !(table[0][3] instanceof Long) || !(table[0][4] instanceof String)) {
+        return null;
+      }
+
+      List<String> columns = getColumns((String) table[0][4]);
+      final int relpathColumn = columns.indexOf("local_relpath");
+      final int depthColumn = columns.indexOf("op_depth");
+      final int revisionColumn = columns.indexOf("changed_revision");
+      final int dateColumn = columns.indexOf("changed_date");
+      if (relpathColumn == -1 || depthColumn == -1 || revisionColumn == -1 || dateColumn == -1) {
+        return null;
+      }
+
+      final Object[][] result = new Object[1][];
+      scan(((Long) table[0][3]).intValue(), new RowVisitor()
+      {
+        public boolean visit(final Object[] values) {
+          if (relpath.equals(get(values, relpathColumn)) && Long.valueOf(0).equals(get(values, depthColumn))) {
+            result[0] = new Object[]{get(values, revisionColumn), get(values, dateColumn)};
+            return false;
+          }
+          return true;
+        }
+      });
+      return result[0];
+    }
+
+    @Nullable
+    private static Object get(final Object[] values, final int index) {
+      // columns added by ALTER TABLE are missing from older records
+      return index < values.length ? values[index] : null;
+    }
+
+    /**
+     * Visits the rows of the table b-tree rooted at given page, in rowid order.
+     *
+     * @return {@code false} if the visitor stopped the scan.
+     */
+    private boolean scan(final int pageNumber, final RowVisitor visitor) throws IOException {
+      byte[] page = readPage(pageNumber);
+      int header = pageNumber == 1 ? HEADER_SIZE : 0;
+      int type = page[header] & 0xff;
+      int cells = readShort(page, header + 3);
+
+      if (type == INTERIOR_TABLE) {
+        for (int i = 0; i < cells; i++) {
+          int cell = readShort(page, header + 12 + i * 2);
+          if (!scan(readInt(page, cell), visitor)) {
+            return false;
+          }
+        }
+        return scan(readInt(page, header + 8), visitor);
+      }
+      if (type != LEAF_TABLE) {
+        throw new IOException("Unexpected b-tree page type " + type + " on page " + pageNumber);
+      }
+
+      int[] position = new int[1];
+      for (int i = 0; i < cells; i++) {
+        position[0] = readShort(page, header + 8 + i * 2);
+        long payloadSize = readVarint(page, position);
+        readVarint(page, position); // rowid
+        if (!visitor.visit(readRecord(readPayload(page, position[0], payloadSize)))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reads the payload of a table leaf cell, following overflow pages as needed.
+     */
+    private byte[] readPayload(final byte[] page, final int offset, final long size) throws IOException {
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Record too large: " + size);
+      }
+      byte[] payload = new byte[(int) size];
+
+      int maxLocal = usableSize - 35;
+      int local = (int) size;
+      if (size > maxLocal) {
+        int minLocal = ((usableSize - 12) * 32 / 255) - 23;
+        int k = minLocal + (int) ((size - minLocal) % (usableSize - 4));
+        local = k <= maxLocal ? k : minLocal;
+      }
+      System.arraycopy(page, offset, payload, 0, local);
+
+      int copied = local;
+      int overflow = local < size ? readInt(page, offset + local) : 0;
+      while (copied < size) {
+        if (overflow == 0) {
+          throw new IOException("Truncated overflow chain");
+        }
+        byte[] next = readPage(overflow);
+        int length = Math.min(usableSize - 4, (int) size - copied);
+        System.arraycopy(next, 4, payload, copied, length);
+        copied += length;
+        overflow = readInt(next, 0);
+      }
+      return payload;
+    }
+
+    private byte[] readPage(final int pageNumber) throws IOException {
+      byte[] page = new byte[pageSize];
+      file.seek((long) (pageNumber - 1) * pageSize);
+      file.readFully(page);
+      return page;
+    }
+  }
+
+  /**
+   * Decodes a record into {@link Long}, {@link Double}, {@link String}, {@code byte[]} or {@code null} values.
+   */
+  private static Object[] readRecord(final byte[] payload) throws IOException {
+    int[] position = new int[1];
+    int headerSize = (int) readVarint(payload, position);
+    List<Long> types = new ArrayList<Long>();
+    while (position[0] < headerSize) {
+      types.add(readVarint(payload, position));
+    }
+
+    Object[] values = new Object[types.size()];
+    int offset = headerSize;
+    for (int i = 0; i < values.length; i++) {
+      long type = types.get(i);
+      if (type == 0) {
+        values[i] = null;
+      }
+      else if (type >= 1 && type <= 6) {
+        int length = type == 5 ? 6 : type == 6 ? 8 : (int) type;
+        long value = payload[offset]; // sign extended
+        for (int j = 1; j < length; j++) {
+          value = (value << 8) | (payload[offset + j] & 0xff);
+        }
+        values[i] = value;
+        offset += length;
+      }
+      else if (type == 7) {
+        long bits = 0;
+        for (int j = 0; j < 8; j++) {
+          bits = (bits << 8) | (payload[offset + j] & 0xff);
+        }
+        values[i] = Double.longBitsToDouble(bits);
+        offset += 8;
+      }
+      else if (type == 8 || type == 9) {
+        values[i] = type - 8;
+      }
+      else if (type >= 12) {
+        int length = (int) ((type - 12) / 2);
+        if (type % 2 == 0) {
+          byte[] blob = new byte[length];
+          System.arraycopy(payload, offset, blob, 0, length);
+          values[i] = blob;
+        }
+        else {
+          values[i] = new String(payload, offset, length, "UTF-8");
+        }
+        offset += length;
+      }
+      else {
+        throw new IOException("Unsupported serial type " + type);
+      }
+    }
+    return values;
+  }
+
+  private static long readVarint(final byte[] bytes, final int[] position) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      int b = bytes[position[0]++] & 0xff;
+      value = (value << 7) | (b & 0x7f);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    return (value << 8) | (bytes[position[0]++] & 0xff);
+  }
+
+  private static int readShort(final byte[] bytes, final int offset) {
+    return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+  }
+
+  private static int readInt(final byte[] bytes, final int offset) {
+    return ((bytes[offset] & 0xff) << 24)
+        | ((bytes[offset + 1] & 0xff) << 16)
+        | ((bytes[offset + 2] & 0xff) << 8)
+        | (bytes[offset + 3] & 0xff);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ArtifactKeyMatcher}.
+ */
+public class ArtifactKeyMatcherTest
+    extends TestSupport
+{
+  @Test
+  public void ids() {
+    ArtifactKeyMatcher matcher = ArtifactKeyMatcher.ids(Arrays.asList("org.slf4j:slf4j-api", "com.google.guava"));
+
+    assertThat(matcher.matches("org.slf4j:slf4j-api:jar:1.7.2"), is(true));
+    assertThat(matcher.matches("org.slf4j:slf4j-api:jar:sources:1.7.2"), is(true));
+    // only full segments match
+    assertThat(matcher.matches("org.slf4j:slf4j-api-ext:jar:1.7.2"), is(false));
+    assertThat(matcher.matches("org.slf4j:slf4j-api"), is(false));
+    assertThat(matcher.matches("org.slf4j:slf4j-simple:jar:1.7.2"), is(false));
+    // an id without artifactId bans the whole group, as before
+    assertThat(matcher.matches("com.google.guava:guava:jar:14.0"), is(true));
+    assertThat(matcher.matches("com.google.guava.ext:guava:jar:14.0"), is(false));
+  }
+
+  @Test
+  public void noIds() {
+    assertThat(ArtifactKeyMatcher.ids(null).matches("g:a:jar:1"), is(false));
+    assertThat(ArtifactKeyMatcher.ids(Collections.<String>emptyList()).matches("g:a:jar:1"), is(false));
+  }
+
+  @Test
+  public void prefixes() {
+    ArtifactKeyMatcher matcher = ArtifactKeyMatcher.prefixes(Arrays.asList("org.slf4j:", "com.google.guava:guava"));
+
+    assertThat(matcher.matches("org.slf4j:slf4j-api:jar:1.7.2"), is(true));
+    assertThat(matcher.matches("org.slf4j.ext:slf4j-api:jar:1.7.2"), is(false));
+    // plain prefixes also match longer artifactIds
+    assertThat(matcher.matches("com.google.guava:guava-testlib:jar:14.0"), is(true));
+    assertThat(matcher.matches("com.google.guava:guava"), is(true));
+    assertThat(matcher.matches("com.google.guava:gua"), is(false));
+    assertThat(matcher.matches(""), is(false));
+  }
+
+  @Test
+  public void noPrefixes() {
+    assertThat(ArtifactKeyMatcher.prefixes(null).matches("g:a:jar:1"), is(false));
+    assertThat(ArtifactKeyMatcher.prefixes(Collections.<String>emptyList()).matches("g:a:jar:1"), is(false));
+  }
+
+  @Test
+  public void emptyPrefixMatchesEverything() {
+    ArtifactKeyMatcher matcher = ArtifactKeyMatcher.prefixes(Arrays.asList("org.foo", ""));
+
+    assertThat(matcher.matches("g:a:jar:1"), is(true));
+    assertThat(matcher.matches(""), is(true));
+  }
+
+  @Test
+  public void sameAsLinearScan() {
+    Random random = new Random(42);
+    String[] parts = {"g", "g.x", "a", "a-b", "jar", "tests", "1", ""};
+
+    for (int round = 0; round < 200; round++) {
+      List<String> patterns = new ArrayList<String>();
+      for (int i = random.nextInt(6); i > 0; i--) {
+        patterns.add(randomKey(random, parts, 1 + random.nextInt(3)));
+      }
+      ArtifactKeyMatcher ids = ArtifactKeyMatcher.ids(patterns);
+      ArtifactKeyMatcher prefixes = ArtifactKeyMatcher.prefixes(patterns);
+
+      for (int i = 0; i < 50; i++) {
+        String key = randomKey(random, parts, 1 + random.nextInt(5));
+        boolean id = false;
+        boolean prefix = false;
+        for (String pattern : patterns) {
+          id |= key.startsWith(pattern + ":");
+          prefix |= key.startsWith(pattern);
+        }
+        assertThat(patterns + " ids " + key, ids.matches(key), is(id));
+        assertThat(patterns + " prefixes " + key, prefixes.matches(key), is(prefix));
+      }
+    }
+  }
+
+  private static String randomKey(final Random random, final String[] parts, final int segments) {
+    StringBuilder buff = new StringBuilder();
+    for (int i = 0; i < segments; i++) {
+      if (i > 0) {
+        buff.append(':');
+      }
+      buff.append(parts[random.nextInt(parts.length)]);
+    }
+    return buff.toString();
+  }
+}
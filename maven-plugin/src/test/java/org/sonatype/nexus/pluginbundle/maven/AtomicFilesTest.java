@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link AtomicFiles}.
+ */
+public class AtomicFilesTest
+    extends TestSupport
+{
+  @Test
+  public void writeLinesReplacesFile() throws Exception {
+    File dir = new File(util.createTempDir(), "cache");
+    File file = new File(dir, "entry.txt");
+
+    AtomicFiles.writeLines(file, Arrays.asList("a", "b"));
+    assertThat(FileUtils.fileRead(file, "UTF-8"), is("a\nb\n"));
+
+    AtomicFiles.writeLines(file, Arrays.asList("c"));
+    assertThat(AtomicFiles.readLines(file), is(Arrays.asList("c")));
+    assertThat(dir.list().length, is(1));
+  }
+
+  @Test
+  public void tempFileNextToTarget() throws Exception {
+    File file = new File(util.createTempDir(), "a");
+    File temp = AtomicFiles.createTemp(file);
+    FileUtils.fileWrite(temp, "UTF-8", "content");
+
+    assertThat(temp.getParentFile(), is(file.getAbsoluteFile().getParentFile()));
+    assertThat(temp.getName().endsWith(".tmp"), is(true));
+
+    AtomicFiles.replace(temp, file);
+    assertThat(FileUtils.fileRead(file, "UTF-8"), is("content"));
+    assertThat(temp.exists(), is(false));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BannedDependencyCache}.
+ */
+public class BannedDependencyCacheTest
+    extends TestSupport
+{
+  private static final List<String> BANNED = Arrays.asList("org.slf4j:slf4j-api", "com.google.guava:guava");
+
+  private File directory;
+
+  private AtomicInteger collections;
+
+  private Callable<List<String>> collector;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = util.createTempDir();
+    collections = new AtomicInteger();
+    collector = new Callable<List<String>>()
+    {
+      public List<String> call() throws Exception {
+        collections.incrementAndGet();
+        return BANNED;
+      }
+    };
+  }
+
+  @Test
+  public void sharedBySession() throws Exception {
+    DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+    assertThat(BannedDependencyCache.get(session), sameInstance(BannedDependencyCache.get(session)));
+
+    String root = "org.sonatype.nexus:nexus-plugin-api:2.4-SNAPSHOT";
+    assertThat(BannedDependencyCache.get(session).get(root, directory, collector), is(BANNED));
+    assertThat(BannedDependencyCache.get(session).get(root, directory, collector), is(BANNED));
+    assertThat(collections.get(), is(1));
+
+    // snapshots are never persisted
+    assertThat(directory.list().length, is(0));
+  }
+
+  @Test
+  public void releasesArePersisted() throws Exception {
+    String root = "org.sonatype.nexus:nexus-plugin-api:2.4.0";
+    assertThat(new BannedDependencyCache().get(root, directory, collector), is(BANNED));
+    assertThat(new BannedDependencyCache().get(root, directory, collector), is(BANNED));
+    assertThat(collections.get(), is(1));
+  }
+
+  @Test
+  public void releaseCoordinates() {
+    assertThat(BannedDependencyCache.isRelease("g:a:1.0"), is(true));
+    assertThat(BannedDependencyCache.isRelease("g:a:jar:1.0"), is(true));
+    assertThat(BannedDependencyCache.isRelease("g:a:1.0-SNAPSHOT"), is(false));
+    assertThat(BannedDependencyCache.isRelease("g:a:1.0-20130314.104233-1"), is(false));
+    assertThat(BannedDependencyCache.isRelease("g:a:[1.0,2.0)"), is(false));
+    assertThat(BannedDependencyCache.isRelease("g:a:RELEASE"), is(false));
+    assertThat(BannedDependencyCache.isRelease("g:a"), is(false));
+  }
+}
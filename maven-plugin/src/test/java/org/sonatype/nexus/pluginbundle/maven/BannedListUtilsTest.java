@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.collection.CollectRequest;
+import org.sonatype.aether.graph.Dependency;
+import org.sonatype.aether.graph.DependencyNode;
+import org.sonatype.aether.graph.DependencyVisitor;
+import org.sonatype.aether.impl.ArtifactDescriptorReader;
+import org.sonatype.aether.impl.RemoteRepositoryManager;
+import org.sonatype.aether.impl.VersionRangeResolver;
+import org.sonatype.aether.impl.internal.DefaultDependencyCollector;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.repository.RepositoryPolicy;
+import org.sonatype.aether.resolution.ArtifactDescriptorRequest;
+import org.sonatype.aether.resolution.ArtifactDescriptorResult;
+import org.sonatype.aether.resolution.VersionRangeRequest;
+import org.sonatype.aether.resolution.VersionRangeResult;
+import org.sonatype.aether.spi.connector.RepositoryConnector;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.aether.util.filter.ScopeDependencyFilter;
+import org.sonatype.aether.util.version.GenericVersionScheme;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.repository.internal.MavenRepositorySystemSession;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BannedListUtils}.
+ */
+public class BannedListUtilsTest
+    extends TestSupport
+{
+  @Test
+  public void writeSortedAndUnique() throws Exception {
+    File file = new File(util.createTempDir(), "api-banned.txt");
+    BannedListUtils.write(new DefaultBuildContext(),
+        Arrays.asList("org.slf4j:slf4j-api", "com.google.guava:guava", "org.slf4j:slf4j-api"), file);
+
+    assertThat(FileUtils.fileRead(file, "UTF-8"), is("com.google.guava:guava\norg.slf4j:slf4j-api\n"));
+    assertThat(BannedListUtils.read(file), is(Arrays.asList("com.google.guava:guava", "org.slf4j:slf4j-api")));
+  }
+
+  @Test
+  public void readIgnoresCommentsAndBlankLines() throws Exception {
+    File file = new File(util.createTempDir(), "api-banned.txt");
+    FileUtils.fileWrite(file, "UTF-8", "# banned\n\n  javax.inject:javax.inject  \r\norg.slf4j:slf4j-api");
+
+    assertThat(BannedListUtils.read(file), is(Arrays.asList("javax.inject:javax.inject", "org.slf4j:slf4j-api")));
+  }
+
+  /**
+   * The list generated from the runtime dependencies of the api project bans what generate-metadata bans by
+   * collecting the dependency graph of the api artifact, also for optional and provided dependencies.
+   */
+  @Test
+  public void selectMatchesGraphCollection() throws Exception {
+    final Map<String, List<Dependency>> descriptors = new HashMap<String, List<Dependency>>();
+    descriptors.put("api", Arrays.asList(dependency("lib", "compile", false), dependency("opt", "compile", true),
+        dependency("prov", "provided", false), dependency("run", "runtime", false),
+        dependency("junit", "test", false)));
+    descriptors.put("lib",
+        Arrays.asList(dependency("lib-dep", "compile", false), dependency("lib-opt", "compile", true)));
+    descriptors.put("opt", Arrays.asList(dependency("opt-dep", "compile", false)));
+    descriptors.put("opt-dep", Arrays.asList(dependency("shared", "compile", false)));
+    descriptors.put("prov", Arrays.asList(dependency("prov-dep", "compile", false)));
+    descriptors.put("run", Arrays.asList(dependency("shared", "compile", false)));
+
+    DefaultDependencyCollector collector = new DefaultDependencyCollector();
+    collector.setArtifactDescriptorReader(new ArtifactDescriptorReader()
+    {
+      public ArtifactDescriptorResult readArtifactDescriptor(final RepositorySystemSession session,
+                                                             final ArtifactDescriptorRequest request)
+      {
+        List<Dependency> dependencies = descriptors.get(request.getArtifact().getArtifactId());
+        return new ArtifactDescriptorResult(request).setArtifact(request.getArtifact())
+            .setDependencies(dependencies != null ? dependencies : Collections.<Dependency>emptyList());
+      }
+    });
+    collector.setVersionRangeResolver(new VersionRangeResolver()
+    {
+      public VersionRangeResult resolveVersionRange(final RepositorySystemSession session,
+                                                    final VersionRangeRequest request)
+      {
+        GenericVersionScheme scheme = new GenericVersionScheme();
+        String version = request.getArtifact().getVersion();
+        try {
+          return new VersionRangeResult(request).addVersion(scheme.parseVersion(version))
+              .setVersionConstraint(scheme.parseVersionConstraint(version));
+        }
+        catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+    collector.setRemoteRepositoryManager(new RemoteRepositoryManager()
+    {
+      public List<RemoteRepository> aggregateRepositories(final RepositorySystemSession session,
+                                                          final List<RemoteRepository> dominant,
+                                                          final List<RemoteRepository> recessive,
+                                                          final boolean recessiveIsRaw)
+      {
+        return dominant;
+      }
+
+      public RepositoryPolicy getPolicy(final RepositorySystemSession session,
+                                        final RemoteRepository repository,
+                                        final boolean releases,
+                                        final boolean snapshots)
+      {
+        return new RepositoryPolicy();
+      }
+
+      public RepositoryConnector getRepositoryConnector(final RepositorySystemSession session,
+                                                        final RemoteRepository repository)
+      {
+        throw new UnsupportedOperationException();
+      }
+    });
+    RepositorySystemSession session = new MavenRepositorySystemSession();
+    Artifact api = artifact("api");
+
+    // graph collection of generate-metadata
+    CollectRequest graphRequest = new CollectRequest();
+    graphRequest.setRoot(new Dependency(api, "runtime"));
+    DependencyNode graph = collector.collectDependencies(session, graphRequest).getRoot();
+    final Set<String> collected = new TreeSet<String>();
+    graph.accept(new DependencyVisitor()
+    {
+      public boolean visitEnter(final DependencyNode node) {
+        Artifact artifact = node.getDependency().getArtifact();
+        if (!artifact.getArtifactId().equals("api")) {
+          collected.add(artifact.getGroupId() + ":" + artifact.getArtifactId());
+        }
+        return true;
+      }
+
+      public boolean visitLeave(final DependencyNode node) {
+        return true;
+      }
+    });
+
+    // runtime resolution of the api project, as seen by generate-banned-list
+    CollectRequest projectRequest = new CollectRequest();
+    projectRequest.setDependencies(descriptors.get("api"));
+    DependencyNode project = collector.collectDependencies(session, projectRequest).getRoot();
+    List<org.apache.maven.artifact.Artifact> artifacts = new ArrayList<org.apache.maven.artifact.Artifact>();
+    RepositoryUtils.toArtifacts(artifacts, project.getChildren(),
+        Collections.singletonList(RepositoryUtils.toArtifact(api).getId()),
+        new ScopeDependencyFilter("provided", "test"));
+
+    assertThat(artifacts.size(), is(6));
+    assertThat(collected.toString(), is("[org.example:lib, org.example:lib-dep, org.example:opt, org.example:opt-dep, "
+        + "org.example:run, org.example:shared]"));
+    assertThat(BannedListUtils.select(artifacts), is(collected));
+  }
+
+  private static Artifact artifact(final String artifactId) {
+    return new DefaultArtifact("org.example", artifactId, "jar", "1.0");
+  }
+
+  private static Dependency dependency(final String artifactId, final String scope, final boolean optional) {
+    return new Dependency(artifact(artifactId), scope, optional);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BuildMetrics}.
+ */
+public class BuildMetricsTest
+    extends TestSupport
+{
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = util.createTempDir();
+  }
+
+  @Test
+  public void measuresPhases() throws Exception {
+    BuildMetrics metrics = new BuildMetrics(true, "org.example:a:1.0", "create-bundle");
+    BuildMetrics.Phase phase = metrics.start("archive");
+    byte[][] garbage = new byte[64][];
+    for (int i = 0; i < garbage.length; i++) {
+      garbage[i] = new byte[16 * 1024];
+    }
+    Thread.sleep(5);
+    phase.end();
+    phase.end();
+
+    assertThat(metrics.getRecords().size(), is(1));
+    BuildMetrics.Record record = metrics.getRecords().get(0);
+    assertThat(record.getGoal(), is("create-bundle"));
+    assertThat(record.getPhase(), is("archive"));
+    assertThat(record.getWallNanos() >= 5000000L, is(true));
+    assertThat(record.getCpuNanos() <= record.getWallNanos(), is(true));
+    assertThat(record.getAllocatedBytes() == -1 || record.getAllocatedBytes() >= 1024 * 1024, is(true));
+  }
+
+  @Test
+  public void reportsModulesAndReactor() throws Exception {
+    Object build = new Object();
+    File reactor = new File(dir, "target/" + BuildMetrics.REACTOR_REPORT);
+
+    BuildMetrics a = new BuildMetrics(true, "org.example:a:1.0", "generate-metadata");
+    a.start("scm").end();
+    File aReport = new File(dir, "a/target/" + BuildMetrics.MODULE_REPORT);
+    a.report(build, aReport, reactor);
+
+    BuildMetrics b = new BuildMetrics(true, "org.example:b:1.0", "generate-metadata");
+    b.start("scm").end();
+    b.start("descriptor").end();
+    File bReport = new File(dir, "b/target/" + BuildMetrics.MODULE_REPORT);
+    b.report(build, bReport, reactor);
+
+    String aJson = FileUtils.fileRead(aReport, "UTF-8");
+    assertThat(aJson, containsString("\"module\": \"org.example:a:1.0\""));
+    assertThat(aJson, containsString("{\"goal\": \"generate-metadata\", \"phase\": \"scm\", \"wallNanos\": "));
+    assertThat(aJson, not(containsString("descriptor")));
+
+    String reactorJson = FileUtils.fileRead(reactor, "UTF-8");
+    assertThat(reactorJson, containsString("\"module\": \"org.example:a:1.0\""));
+    assertThat(reactorJson, containsString("\"module\": \"org.example:b:1.0\""));
+    assertThat(reactorJson, containsString("{\"goal\": \"generate-metadata\", \"phase\": \"scm\", \"count\": 2, "));
+
+    // a new build starts over
+    BuildMetrics next = new BuildMetrics(true, "org.example:b:1.0", "create-bundle");
+    next.start("archive").end();
+    next.report(new Object(), bReport, reactor);
+    assertThat(FileUtils.fileRead(reactor, "UTF-8"), not(containsString("org.example:a:1.0")));
+  }
+
+  @Test
+  public void disabledMetricsRecordNothing() throws Exception {
+    BuildMetrics metrics = new BuildMetrics(false, "org.example:a:1.0", "create-bundle");
+    metrics.start("archive").end();
+    File report = new File(dir, "report.json");
+    metrics.report(new Object(), report, report);
+
+    assertThat(metrics.getRecords().isEmpty(), is(true));
+    assertThat(report.exists(), is(false));
+  }
+
+  @Test
+  public void escapesStrings() {
+    StringBuilder buf = new StringBuilder();
+    BuildMetrics.appendString(buf, "a\"b\\c\n");
+    assertThat(buf.toString(), is("\"a\\\"b\\\\c\\u000a\""));
+  }
+}
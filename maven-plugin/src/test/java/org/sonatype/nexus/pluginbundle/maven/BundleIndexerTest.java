@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.binary.PluginIndex;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Writer;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BundleIndexer}.
+ */
+public class BundleIndexerTest
+    extends TestSupport
+{
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = util.createTempDir();
+  }
+
+  @Test
+  public void indexesBundlesAndEdges() throws Exception {
+    bundle("api", "1.0", null);
+    bundle("impl", "1.0", "api");
+    bundle("extra", "1.0", "missing");
+    File notABundle = new File(directory, "other-bundle.zip");
+    zip(notABundle, "other-1.0/other-1.0.jar", jar("readme.txt", new byte[0]));
+
+    BundleIndexer indexer = new BundleIndexer();
+    PluginIndex index = roundTrip(indexer.index(directory, null));
+
+    assertThat(indexer.getRead(), is(3));
+    assertThat(indexer.getSkipped().size(), is(1));
+    assertThat(index.getEntries().size(), is(3));
+    assertThat(index.getEntries().get(0).getName(), is("api-1.0-bundle.zip"));
+    assertThat(index.getEntry("missing-1.0-bundle.zip"), nullValue());
+    assertThat(index.getEntry("impl-1.0-bundle.zip").getMetadata().getArtifactId(), is("impl"));
+    assertThat(index.getEntry("impl-1.0-bundle.zip").getHash(),
+        is(Digests.sha1(new File(directory, "impl-1.0-bundle.zip"))));
+
+    assertThat(index.getEdges().size(), is(2));
+    PluginIndex.Edge extra = index.getEdges().get(0);
+    assertThat(extra.getFrom().getName(), is("extra-1.0-bundle.zip"));
+    assertThat(extra.getTo(), nullValue());
+    PluginIndex.Edge impl = index.getEdges().get(1);
+    assertThat(impl.getFrom().getName(), is("impl-1.0-bundle.zip"));
+    assertThat(impl.getTo(), sameInstance(index.getEntry("api-1.0-bundle.zip")));
+  }
+
+  @Test
+  public void rereadsOnlyChangedBundles() throws Exception {
+    bundle("api", "1.0", null);
+    File impl = bundle("impl", "1.0", "api");
+    PluginIndex first = roundTrip(new BundleIndexer().index(directory, null));
+
+    BundleIndexer unchanged = new BundleIndexer();
+    unchanged.index(directory, first);
+    assertThat(unchanged.getRead(), is(0));
+    assertThat(unchanged.getReused(), is(2));
+
+    // same content, new timestamp
+    assertThat(impl.setLastModified(impl.lastModified() - 60000), is(true));
+    BundleIndexer touched = new BundleIndexer();
+    PluginIndex second = touched.index(directory, first);
+    assertThat(touched.getRead(), is(0));
+    assertThat(second.getEntry(impl.getName()).getLastModified(), is(impl.lastModified()));
+
+    // new content
+    bundle("impl", "1.0", null);
+    assertThat(impl.setLastModified(impl.lastModified() - 120000), is(true));
+    BundleIndexer changed = new BundleIndexer();
+    PluginIndex third = changed.index(directory, second);
+    assertThat(changed.getRead(), is(1));
+    assertThat(changed.getReused(), is(1));
+    assertThat(third.getEdges().isEmpty(), is(true));
+  }
+
+  private static PluginIndex roundTrip(final PluginIndex index) throws Exception {
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    index.write(buff);
+    return PluginIndex.read(new ByteArrayInputStream(buff.toByteArray()));
+  }
+
+  private File bundle(final String artifactId, final String version, final String dependency) throws Exception {
+    PluginMetadata metadata = new PluginMetadata();
+    metadata.setGroupId("org.example");
+    metadata.setArtifactId(artifactId);
+    metadata.setVersion(version);
+    if (dependency != null) {
+      PluginDependency pluginDependency = new PluginDependency();
+      pluginDependency.setGroupId("org.example");
+      pluginDependency.setArtifactId(dependency);
+      pluginDependency.setVersion(version);
+      metadata.addPluginDependency(pluginDependency);
+    }
+    ByteArrayOutputStream descriptor = new ByteArrayOutputStream();
+    new PluginModelXpp3Writer().write(descriptor, metadata);
+
+    String base = artifactId + "-" + version;
+    File file = new File(directory, base + BundleIndexer.BUNDLE_SUFFIX);
+    zip(file, base + "/" + base + ".jar", jar("META-INF/nexus/plugin.xml", descriptor.toByteArray()));
+    return file;
+  }
+
+  private static byte[] jar(final String name, final byte[] content) throws Exception {
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    ZipOutputStream jar = new ZipOutputStream(buff);
+    jar.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+    jar.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+    jar.putNextEntry(new ZipEntry(name));
+    jar.write(content);
+    jar.close();
+    return buff.toByteArray();
+  }
+
+  private static void zip(final File file, final String name, final byte[] content) throws Exception {
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      zip.putNextEntry(new ZipEntry(name.substring(0, name.indexOf('/') + 1) + "dependencies/lib-1.0.jar"));
+      zip.write(jar("lib.txt", new byte[0]));
+      zip.putNextEntry(new ZipEntry(name));
+      zip.write(content);
+    }
+    finally {
+      zip.close();
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BundleWriter}.
+ */
+public class BundleWriterTest
+    extends TestSupport
+{
+  private File dir;
+
+  private File plugin;
+
+  private File lib;
+
+  private File manifest;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = util.createTempDir();
+    plugin = OSGiUtilsTest.jar(new File(dir, "plugin.jar"), "org/example/Plugin.class");
+    // larger than the size deflated in memory, so unaligned bundles deflate it into a temporary file
+    byte[] random = new byte[300 * 1024];
+    new Random(42).nextBytes(random);
+    lib = new File(dir, "lib.jar");
+    FileUtils.fileWrite(lib.getPath(), "ISO-8859-1", new String(random, "ISO-8859-1"));
+    manifest = new File(dir, "MANIFEST.MF");
+    FileUtils.fileWrite(manifest.getPath(), "UTF-8", "Manifest-Version: 1.0\r\n\r\n");
+  }
+
+  @Test
+  public void writesEntriesAndParentDirectories() throws Exception {
+    File bundle = new File(dir, "out/plugin-1.0-bundle.zip");
+    BundleWriter writer = new BundleWriter(4, null);
+    writer.add("plugin-1.0/dependencies/lib-1.0.jar", lib);
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin);
+    writer.add("plugin-1.0/META-INF/MANIFEST.MF", manifest);
+    writer.write(bundle);
+
+    assertThat(Arrays.asList(new File(dir, "out").list()), is(Arrays.asList("plugin-1.0-bundle.zip")));
+
+    ZipFile zip = new ZipFile(bundle);
+    try {
+      assertThat(names(zip).toString(), is("[plugin-1.0/, plugin-1.0/dependencies/, "
+          + "plugin-1.0/dependencies/lib-1.0.jar, plugin-1.0/plugin-1.0.jar, plugin-1.0/META-INF/, "
+          + "plugin-1.0/META-INF/MANIFEST.MF]"));
+      assertThat(zip.getEntry("plugin-1.0/").isDirectory(), is(true));
+      assertContent(zip, "plugin-1.0/dependencies/lib-1.0.jar", lib);
+      assertContent(zip, "plugin-1.0/plugin-1.0.jar", plugin);
+      assertContent(zip, "plugin-1.0/META-INF/MANIFEST.MF", manifest);
+    }
+    finally {
+      zip.close();
+    }
+
+    // local headers agree with the central directory
+    ZipInputStream input = new ZipInputStream(new FileInputStream(bundle));
+    try {
+      int count = 0;
+      for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+        IOUtil.toByteArray(input);
+        count++;
+      }
+      assertThat(count, is(6));
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  @Test
+  public void reproducibleBundlesAreSortedAndIdentical() throws Exception {
+    File first = new File(dir, "first.zip");
+    BundleWriter writer = new BundleWriter(1, ZipNormalizer.DEFAULT_TIMESTAMP);
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin);
+    writer.add("plugin-1.0/dependencies/lib-1.0.jar", lib);
+    writer.write(first);
+
+    assertThat(lib.setLastModified(lib.lastModified() - 60000), is(true));
+    File second = new File(dir, "second.zip");
+    writer = new BundleWriter(8, ZipNormalizer.DEFAULT_TIMESTAMP);
+    writer.add("plugin-1.0/dependencies/lib-1.0.jar", lib);
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin);
+    writer.write(second);
+
+    assertThat(FileUtils.contentEquals(first, second), is(true));
+    ZipFile zip = new ZipFile(first);
+    try {
+      assertThat(names(zip).toString(), is("[plugin-1.0/, plugin-1.0/dependencies/, "
+          + "plugin-1.0/dependencies/lib-1.0.jar, plugin-1.0/plugin-1.0.jar]"));
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  @Test
+  public void alignedBundlesStoreJarsInPlace() throws Exception {
+    assertAligned(4096, "plugin-1.0/dependencies/lib-1.0.jar");
+  }
+
+  /**
+   * Small alignments need more than one alignment unit of padding to fit the extra field header.
+   */
+  @Test
+  public void smallAlignments() throws Exception {
+    for (int alignment = 1; alignment <= 8; alignment++) {
+      assertAligned(alignment, "plugin-1.0/dependencies/lib-1.0.jar", "plugin-1.0/dependencies/lib2-1.0.jar",
+          "plugin-1.0/dependencies/lib33-1.0.jar", "plugin-1.0/dependencies/lib444-1.0.jar");
+    }
+  }
+
+  private void assertAligned(final int alignment, final String... libs) throws Exception {
+    File bundle = new File(dir, "aligned.zip");
+    BundleWriter writer = new BundleWriter(2, null);
+    writer.add("plugin-1.0/META-INF/MANIFEST.MF", manifest);
+    for (String path : libs) {
+      writer.add(path, lib);
+    }
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin);
+    writer.setAligned(alignment, "plugin-1.0/META-INF/bundle.index");
+    writer.write(bundle);
+
+    ZipFile zip = new ZipFile(bundle);
+    String[] index;
+    try {
+      assertThat(zip.getEntry("plugin-1.0/plugin-1.0.jar").getMethod(), is(ZipEntry.STORED));
+      assertThat(zip.getEntry("plugin-1.0/META-INF/MANIFEST.MF").getMethod(), is(ZipEntry.DEFLATED));
+      for (String path : libs) {
+        assertThat(zip.getEntry(path).getMethod(), is(ZipEntry.STORED));
+        assertContent(zip, path, lib);
+      }
+      assertContent(zip, "plugin-1.0/plugin-1.0.jar", plugin);
+      index = new String(IOUtil.toByteArray(zip.getInputStream(zip.getEntry("plugin-1.0/META-INF/bundle.index"))),
+          "UTF-8").split("\n");
+    }
+    finally {
+      zip.close();
+    }
+
+    assertThat(index.length, is(libs.length + 2));
+    assertThat(index[0], is(BundleWriter.INDEX_HEADER));
+    RandomAccessFile raf = new RandomAccessFile(bundle, "r");
+    try {
+      for (int i = 1; i < index.length; i++) {
+        String[] fields = index[i].split(" ", 3);
+        long offset = Long.parseLong(fields[0]);
+        int length = Integer.parseInt(fields[1]);
+        File expected = fields[2].endsWith("plugin-1.0.jar") ? plugin : lib;
+        assertThat(offset % alignment, is(0L));
+        assertThat((long) length, is(expected.length()));
+
+        MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        byte[] actual = new byte[length];
+        mapped.get(actual);
+        assertThat(actual, is(FileUtils.fileRead(expected, "ISO-8859-1").getBytes("ISO-8859-1")));
+      }
+    }
+    finally {
+      raf.close();
+    }
+
+    // stream readers cope with the padding too
+    ZipInputStream input = new ZipInputStream(new FileInputStream(bundle));
+    try {
+      int count = 0;
+      for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+        IOUtil.toByteArray(input);
+        count++;
+      }
+      assertThat(count, is(libs.length + 6));
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  private static List<String> names(final ZipFile zip) {
+    List<String> names = new ArrayList<String>();
+    for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+      names.add(e.nextElement().getName());
+    }
+    return names;
+  }
+
+  private static void assertContent(final ZipFile zip, final String name, final File expected) throws Exception {
+    byte[] actual = IOUtil.toByteArray(zip.getInputStream(zip.getEntry(name)));
+    assertThat(actual, is(FileUtils.fileRead(expected, "ISO-8859-1").getBytes("ISO-8859-1")));
+  }
+}
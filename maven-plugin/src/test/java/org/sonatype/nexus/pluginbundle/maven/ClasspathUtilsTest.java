@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ClasspathUtils}.
+ */
+public class ClasspathUtilsTest
+    extends TestSupport
+{
+  private static final String SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  private File dir;
+
+  private MavenProject project;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = util.createTempDir();
+    project = new MavenProject();
+    project.getBuild().setDirectory(new File(dir, "target").getPath());
+  }
+
+  private static Artifact artifact(final String groupId, final String artifactId, final String version,
+                                   final String classifier, final File file)
+  {
+    DefaultArtifact artifact = new DefaultArtifact(groupId, artifactId, version, Artifact.SCOPE_COMPILE, "jar",
+        classifier, new DefaultArtifactHandler("jar"));
+    artifact.setFile(file);
+    return artifact;
+  }
+
+  private static File file(final File file, final String content) throws IOException {
+    file.getParentFile().mkdirs();
+    FileUtils.fileWrite(file, "UTF-8", content);
+    return file;
+  }
+
+  @Test
+  public void roundTripRelocatesLocalRepository() throws Exception {
+    File repository = new File(dir, "repository");
+    File module = new File(dir, "module/target/classes");
+    module.mkdirs();
+    Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+    File b = file(new File(repository, "org/example/b/1.0/b.jar"), "b");
+    artifacts.add(artifact("org.example", "b", "1.0", null, b));
+    File jar = file(new File(repository, "a.jar"), "abc");
+    artifacts.add(artifact("org.example", "a", "1.0", "tests", jar));
+    artifacts.add(artifact("org.example", "c", "1.0-SNAPSHOT", null, module));
+
+    ClasspathUtils.write(new DefaultBuildContext(), artifacts, project, repository,
+        Collections.singletonMap(jar, SHA256));
+
+    String state = FileUtils.fileRead(ClasspathUtils.getFile(project), "UTF-8");
+    assertThat(state, is(ClasspathUtils.HEADER + "\n"
+        + "org.example\ta\tjar\ttests\t1.0\t3\t" + SHA256 + "\ta.jar\n"
+        + "org.example\tb\tjar\t\t1.0\t1\t\torg/example/b/1.0/b.jar\n"
+        + "org.example\tc\tjar\t\t1.0-SNAPSHOT\t-1\t\t" + module.getAbsolutePath() + "\n"));
+
+    File relocated = new File(dir, "relocated");
+    List<ClasspathEntry> entries = ClasspathUtils.read(project, relocated);
+    assertThat(entries.size(), is(3));
+
+    ClasspathEntry a = entries.get(0);
+    assertThat(a.getKey(), is("org.example:a:jar:tests:1.0"));
+    assertThat(a.getFile(), is(new File(relocated, "a.jar")));
+    assertThat(a.getSize(), is(3L));
+    assertThat(a.getChecksum(), is(SHA256));
+    assertThat(a.isStale(), is(true));
+    assertThat(ClasspathUtils.createFileItem(a).getDestName(), is("a-1.0-tests.jar"));
+
+    assertThat(entries.get(1).getClassifier(), nullValue());
+    assertThat(entries.get(1).getFile(), is(new File(relocated, "org/example/b/1.0/b.jar")));
+
+    ClasspathEntry c = entries.get(2);
+    assertThat(c.getFile(), is(module.getAbsoluteFile()));
+    assertThat(c.getSize(), is(ClasspathEntry.UNKNOWN_SIZE));
+    assertThat(c.getChecksum(), nullValue());
+    assertThat(c.isStale(), is(false));
+
+    assertThat(ClasspathUtils.read(project, repository).get(0).isStale(), is(false));
+  }
+
+  @Test
+  public void readsLegacyProperties() throws Exception {
+    File a = new File(dir, "a b.jar");
+    file(ClasspathUtils.getFile(project),
+        "org.example\\:b\\:war\\:1.0=" + new File(dir, "b.war").getAbsolutePath().replace("\\", "\\\\") + "\n"
+            + "org.example\\:a\\:jar\\:tests\\:1.0=" + a.getAbsolutePath().replace("\\", "\\\\") + "\n");
+
+    List<ClasspathEntry> entries = ClasspathUtils.read(project, new File(dir, "repository"));
+    assertThat(entries.size(), is(2));
+    assertThat(entries.get(0).getKey(), is("org.example:a:jar:tests:1.0"));
+    assertThat(entries.get(0).getFile(), is(a.getAbsoluteFile()));
+    assertThat(entries.get(0).getSize(), is(ClasspathEntry.UNKNOWN_SIZE));
+    assertThat(entries.get(1).getKey(), is("org.example:b:war:1.0"));
+    assertThat(ClasspathUtils.createFileItem(entries.get(1)).getDestName(), is("b-1.0.war"));
+  }
+
+  @Test
+  public void parsesArtifactKeys() throws Exception {
+    File file = new File("a.jar");
+    assertThat(ClasspathUtils.parseKey("g:a:1", file).getKey(), is("g:a:jar:1"));
+    assertThat(ClasspathUtils.parseKey("g:a::1", file).getKey(), is("g:a:jar:1"));
+    assertThat(ClasspathUtils.parseKey("g:a:zip:1", file).getKey(), is("g:a:zip:1"));
+    assertThat(ClasspathUtils.parseKey("g:a:zip:c:1", file).getKey(), is("g:a:zip:c:1"));
+
+    for (String key : new String[]{"g:a", "g:a:zip:c:1:x", "g::1", "g:a:zip::1", "g:a:1:", "g a:a:1"}) {
+      try {
+        ClasspathUtils.parseKey(key, file);
+        fail(key);
+      }
+      catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsMalformedLines() throws Exception {
+    ClasspathUtils.parse("g\ta\tjar\t\t1.0\t12\n", new File("repository"));
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DependencyGraph}.
+ */
+public class DependencyGraphTest
+    extends TestSupport
+{
+  private static final String PROJECT = "org.example:plugin:nexus-plugin:1.0";
+
+  @Test
+  public void depthFirstInIdOrderRegardlessOfInputOrder() throws Exception {
+    Artifact b = artifact("b", "compile", PROJECT);
+    Artifact a = artifact("a", "compile", PROJECT);
+    Artifact a2 = artifact("a2", "compile", PROJECT, a.getId());
+    Artifact a1 = artifact("a1", "runtime", PROJECT, a.getId());
+    Artifact a11 = artifact("a11", "runtime", PROJECT, a.getId(), a1.getId());
+    List<Artifact> artifacts = new ArrayList<Artifact>(Arrays.asList(b, a, a2, a1, a11));
+
+    Random random = new Random(42);
+    for (int i = 0; i < 10; i++) {
+      Collections.shuffle(artifacts, random);
+      assertThat(visit(artifacts, null), is(Arrays.asList("a", "a1", "a11", "a2", "b")));
+    }
+  }
+
+  @Test
+  public void prunedSubtrees() throws Exception {
+    Artifact api = artifact("api", "provided", PROJECT);
+    Artifact apiDep = artifact("api-dep", "provided", PROJECT, api.getId());
+    Artifact lib = artifact("lib", "compile", PROJECT);
+    Artifact libDep = artifact("lib-dep", "compile", PROJECT, lib.getId());
+
+    assertThat(visit(Arrays.asList(api, apiDep, lib, libDep), "api"), is(Arrays.asList("api", "lib", "lib-dep")));
+    assertThat(visit(Arrays.asList(api, apiDep, lib, libDep), "lib"), is(Arrays.asList("api", "api-dep", "lib")));
+  }
+
+  @Test
+  public void unknownParentIsDirectDependency() throws Exception {
+    Artifact orphan = artifact("orphan", "compile", PROJECT, "org.example:gone:jar:1.0");
+    Artifact untracked = artifact("untracked", "compile");
+
+    assertThat(visit(Arrays.asList(untracked, orphan), null), is(Arrays.asList("orphan", "untracked")));
+  }
+
+  private static List<String> visit(final List<Artifact> artifacts, final String prune) throws Exception {
+    final List<String> visited = new ArrayList<String>();
+    new DependencyGraph(artifacts).accept(new DependencyGraph.Visitor()
+    {
+      public boolean visit(final Artifact artifact) {
+        visited.add(artifact.getArtifactId());
+        return !artifact.getArtifactId().equals(prune);
+      }
+    });
+    return visited;
+  }
+
+  private static Artifact artifact(final String artifactId, final String scope, final String... parents) {
+    Artifact artifact = new DefaultArtifact("org.example", artifactId, "1.0", scope, "jar", null,
+        new DefaultArtifactHandler("jar"));
+    if (parents.length > 0) {
+      List<String> trail = new ArrayList<String>(Arrays.asList(parents));
+      trail.add(artifact.getId());
+      artifact.setDependencyTrail(trail);
+    }
+    return artifact;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DependencySelector}.
+ */
+public class DependencySelectorTest
+    extends TestSupport
+{
+  private static final String PROJECT = "org.example:plugin:nexus-plugin:1.0";
+
+  private static final ArtifactKeyMatcher BANNED =
+      ArtifactKeyMatcher.ids(Arrays.asList("org.example:banned", "org.example:banned-dep"));
+
+  private static final ArtifactKeyMatcher EXCLUDES =
+      ArtifactKeyMatcher.prefixes(Arrays.asList("org.example:excluded:"));
+
+  @Test
+  public void graphAndTrailsSelectSameDependencies() throws Exception {
+    Artifact other = artifact("other-plugin", "nexus-plugin", "provided", PROJECT);
+    Artifact otherLib = artifact("other-lib", "jar", "provided", PROJECT, other.getId());
+    Artifact api = artifact("api", "jar", "provided", PROJECT);
+    Artifact apiImpl = artifact("api-impl", "jar", "compile", PROJECT, api.getId());
+    Artifact lib = artifact("lib", "jar", "compile", PROJECT);
+    Artifact libDep = artifact("lib-dep", "jar", "runtime", PROJECT, lib.getId());
+    Artifact excluded = artifact("excluded", "jar", "compile", PROJECT, lib.getId());
+    Artifact excludedDep = artifact("excluded-dep", "jar", "compile", PROJECT, lib.getId(), excluded.getId());
+    Artifact banned = artifact("banned", "jar", "compile", PROJECT);
+    Artifact bannedDep = artifact("banned-dep", "jar", "runtime", PROJECT, banned.getId());
+    Artifact junit = artifact("junit", "jar", "test", PROJECT);
+
+    // resolved artifacts list parents before their dependencies
+    List<Artifact> artifacts = new ArrayList<Artifact>(Arrays.asList(other, otherLib, api, apiImpl, lib, libDep,
+        excluded, excludedDep, banned, bannedDep, junit));
+
+    Selection trails = select(artifacts, false);
+    assertThat(trails.classpath, is(Arrays.asList("excluded-dep", "lib", "lib-dep")));
+    assertThat(trails.plugins, is(Arrays.asList("other-plugin")));
+    assertThat(trails.excluded, is(Arrays.asList("org.example:excluded:jar:1.0")));
+    assertThat(trails.banned, is(Arrays.asList("org.example:banned-dep:jar:1.0", "org.example:banned:jar:1.0")));
+
+    Random random = new Random(42);
+    for (int i = 0; i < 10; i++) {
+      Selection graph = select(artifacts, true);
+      assertThat(graph, is(trails));
+      // the graph prunes the banned subtree at its root
+      assertThat(graph.banned, is(Arrays.asList("org.example:banned:jar:1.0")));
+      Collections.shuffle(artifacts, random);
+    }
+  }
+
+  private static Selection select(final List<Artifact> artifacts, final boolean graph) throws Exception {
+    final Selection selection = new Selection();
+    DependencySelector selector = new DependencySelector(new DependencySelector.Callback()
+    {
+      public boolean isBanned(final String key) {
+        return BANNED.matches(key);
+      }
+
+      public boolean isExcluded(final String key) {
+        return EXCLUDES.matches(key);
+      }
+
+      public void addPluginDependency(final Artifact artifact) {
+        selection.plugins.add(artifact.getArtifactId());
+      }
+
+      public void addClasspathDependency(final Artifact artifact) {
+        selection.classpath.add(artifact.getArtifactId());
+      }
+    }, new SystemStreamLog());
+
+    if (graph) {
+      selector.selectFromDependencyGraph(artifacts);
+    }
+    else {
+      selector.selectFromDependencyTrails(artifacts);
+    }
+
+    Collections.sort(selection.classpath);
+    Collections.sort(selection.plugins);
+    assertThat(selector.getClasspathArtifacts().size(), is(selection.classpath.size()));
+    selection.banned.addAll(sorted(selector.getAutoBannedIds()));
+    selection.excluded.addAll(sorted(selector.getUserExcludesIds()));
+    return selection;
+  }
+
+  private static List<String> sorted(final Collection<String> values) {
+    List<String> result = new ArrayList<String>(values);
+    Collections.sort(result);
+    return result;
+  }
+
+  private static Artifact artifact(final String artifactId,
+                                   final String type,
+                                   final String scope,
+                                   final String... parents)
+  {
+    Artifact artifact = new DefaultArtifact("org.example", artifactId, "1.0", scope, type, null,
+        new DefaultArtifactHandler(type));
+    List<String> trail = new ArrayList<String>(Arrays.asList(parents));
+    trail.add(artifact.getId());
+    artifact.setDependencyTrail(trail);
+    return artifact;
+  }
+
+  /**
+   * Dependencies selected by either strategy; banned keys are only reported, so they take no part in equality.
+   */
+  private static class Selection
+  {
+    private final List<String> classpath = new ArrayList<String>();
+
+    private final List<String> plugins = new ArrayList<String>();
+
+    private final List<String> banned = new ArrayList<String>();
+
+    private final List<String> excluded = new ArrayList<String>();
+
+    public boolean equals(final Object o) {
+      if (!(o instanceof Selection)) {
+        return false;
+      }
+      Selection that = (Selection) o;
+      return classpath.equals(that.classpath) && plugins.equals(that.plugins) && excluded.equals(that.excluded);
+    }
+
+    public int hashCode() {
+      return classpath.hashCode();
+    }
+
+    public String toString() {
+      return "classpath=" + classpath + ", plugins=" + plugins + ", banned=" + banned + ", excluded=" + excluded;
+    }
+  }
+}
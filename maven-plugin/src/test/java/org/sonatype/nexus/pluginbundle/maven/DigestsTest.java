@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link Digests}.
+ */
+public class DigestsTest
+    extends TestSupport
+{
+  @Test
+  public void digestsOfFilesAndBytes() throws Exception {
+    File file = new File(util.createTempDir(), "abc.jar");
+    FileUtils.fileWrite(file, "UTF-8", "abc");
+
+    assertThat(Digests.sha1(file), is("a9993e364706816aba3e25717850c26c9cd0d89d"));
+    assertThat(Digests.sha1("abc".getBytes("UTF-8")), is("a9993e364706816aba3e25717850c26c9cd0d89d"));
+    assertThat(Digests.digest(Digests.SHA256, file),
+        is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+  }
+
+  @Test
+  public void hexOfLeadingBytes() {
+    assertThat(Digests.toHex(new byte[] { 0x0f, (byte) 0xa0, 0x01 }, 2), is("0fa0"));
+  }
+}
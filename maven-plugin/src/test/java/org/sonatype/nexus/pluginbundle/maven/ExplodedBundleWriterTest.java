@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ExplodedBundleWriter}.
+ */
+public class ExplodedBundleWriterTest
+    extends TestSupport
+{
+  private File repository;
+
+  private File target;
+
+  @Before
+  public void setUp() throws Exception {
+    File dir = util.createTempDir();
+    repository = new File(dir, "repository");
+    target = new File(dir, "plugin-repository");
+  }
+
+  @Test
+  public void writesOnlyChanges() throws Exception {
+    File lib = file("lib-1.0.jar", "lib");
+    File old = file("old-1.0.jar", "old");
+    File plugin = file("plugin-1.0.jar", "plugin");
+    File manifest = file("MANIFEST.MF", "Manifest-Version: 1.0");
+    File other = new File(target, "other-1.0/other-1.0.jar");
+    other.getParentFile().mkdirs();
+    FileUtils.fileWrite(other.getPath(), "UTF-8", "other");
+
+    ExplodedBundleWriter first = writer(lib, plugin, manifest);
+    first.add("plugin-1.0/dependencies/old-1.0.jar", old, true);
+    first.write(target);
+    assertThat(first.getLinked() + first.getCopied(), is(4));
+    assertThat(content("plugin-1.0/dependencies/lib-1.0.jar"), is("lib"));
+    assertThat(content("plugin-1.0/plugin-1.0.jar"), is("plugin"));
+    assertThat(content("plugin-1.0/META-INF/MANIFEST.MF"), is("Manifest-Version: 1.0"));
+
+    // rebuild without old dependency and with a new manifest
+    assertThat(manifest.setLastModified(manifest.lastModified() - 60000), is(true));
+    ExplodedBundleWriter second = writer(lib, plugin, manifest);
+    second.write(target);
+    assertThat(second.getUnchanged(), is(2));
+    assertThat(second.getCopied(), is(1));
+    assertThat(second.getDeleted(), is(1));
+    assertThat(new File(target, "plugin-1.0/dependencies/old-1.0.jar").exists(), is(false));
+
+    // other plugins are left alone
+    assertThat(other.isFile(), is(true));
+  }
+
+  @Test
+  public void copiedFilesAreIndependent() throws Exception {
+    File plugin = file("plugin-1.0.jar", "plugin");
+
+    ExplodedBundleWriter writer = new ExplodedBundleWriter();
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin, false);
+    writer.write(target);
+    assertThat(writer.getCopied(), is(1));
+
+    FileUtils.fileWrite(plugin.getPath(), "UTF-8", "changed");
+    assertThat(content("plugin-1.0/plugin-1.0.jar"), is("plugin"));
+  }
+
+  private ExplodedBundleWriter writer(final File lib, final File plugin, final File manifest) {
+    ExplodedBundleWriter writer = new ExplodedBundleWriter();
+    writer.add("plugin-1.0/dependencies/lib-1.0.jar", lib, true);
+    writer.add("plugin-1.0/plugin-1.0.jar", plugin, false);
+    writer.add("plugin-1.0/META-INF/MANIFEST.MF", manifest, false);
+    return writer;
+  }
+
+  private File file(final String name, final String content) throws Exception {
+    File file = new File(repository, name);
+    file.getParentFile().mkdirs();
+    FileUtils.fileWrite(file.getPath(), "UTF-8", content);
+    return file;
+  }
+
+  private String content(final String path) throws Exception {
+    return FileUtils.fileRead(new File(target, path), "UTF-8");
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link MetadataFingerprint}.
+ */
+public class MetadataFingerprintTest
+    extends TestSupport
+{
+  @Test
+  public void sameInputsSameFingerprint() {
+    String first = new MetadataFingerprint().add("groupId", "foo").add("artifactId", "bar").compute();
+    String second = new MetadataFingerprint().add("groupId", "foo").add("artifactId", "bar").compute();
+    assertThat(first, is(second));
+    assertThat(first.length(), is(40));
+  }
+
+  @Test
+  public void changedInputsChangeFingerprint() {
+    String first = new MetadataFingerprint().add("groupId", "foo").add("artifactId", "bar").compute();
+    String second = new MetadataFingerprint().add("groupId", "foo").add("artifactId", "baz").compute();
+    assertThat(first, is(not(second)));
+  }
+
+  @Test
+  public void gitHeadChangesFingerprint() throws Exception {
+    File basedir = util.createTempDir();
+    File git = new File(basedir, ".git");
+    new File(git, "refs/heads").mkdirs();
+    FileUtils.fileWrite(new File(git, "HEAD"), "UTF-8", "ref: refs/heads/master\n");
+    FileUtils.fileWrite(new File(git, "refs/heads/master"), "UTF-8", "1111111111111111111111111111111111111111\n");
+    String first = new MetadataFingerprint().addScmHead(new File(basedir, "module")).compute();
+    assertThat(first, is(new MetadataFingerprint().addScmHead(new File(basedir, "module")).compute()));
+
+    FileUtils.fileWrite(new File(git, "refs/heads/master"), "UTF-8", "2222222222222222222222222222222222222222\n");
+    String second = new MetadataFingerprint().addScmHead(new File(basedir, "module")).compute();
+    assertThat(first, is(not(second)));
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.plugin.assembly.model.FileItem;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link OSGiUtils}.
+ */
+public class OSGiUtilsTest
+    extends TestSupport
+{
+  @Test
+  public void exportedPackagesInContentOrder() throws Exception {
+    File dir = util.createTempDir();
+    List<FileItem> content = new ArrayList<FileItem>();
+    for (int i = 0; i < 20; i++) {
+      content.add(fileItem(jar(new File(dir, "dep-" + i + ".jar"),
+          "META-INF/MANIFEST.MF",
+          "z" + i + "/Foo.class",
+          "a" + i + "/b/Bar.class",
+          "static/index.html")));
+    }
+
+    String serial = OSGiUtils.getExportedPackages(content, 1, null);
+    assertThat(serial.startsWith("a0.b,z0,a1.b,z1,"), is(true));
+    assertThat(OSGiUtils.getExportedPackages(content, 4, null), is(serial));
+    assertThat(OSGiUtils.getExportedPackages(content, 32, null), is(serial));
+  }
+
+  @Test
+  public void manifestAttributesSorted() throws Exception {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      longValue.append("org.example.package").append(i).append(',');
+    }
+    Manifest mf = new Manifest();
+    mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    mf.getMainAttributes().putValue("Require-Bundle", "b");
+    mf.getMainAttributes().putValue("Export-Package", longValue.toString());
+    mf.getMainAttributes().putValue("Bundle-Version", "1.0.0");
+
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    OSGiUtils.writeSorted(mf, buff);
+    String text = buff.toString("UTF-8");
+
+    assertThat(text.startsWith("Manifest-Version: 1.0\r\nBundle-Version: 1.0.0\r\nExport-Package: "), is(true));
+    assertThat(text.endsWith("\r\nRequire-Bundle: b\r\n\r\n"), is(true));
+    Manifest read = new Manifest(new ByteArrayInputStream(buff.toByteArray()));
+    assertThat(read.getMainAttributes(), is(mf.getMainAttributes()));
+  }
+
+  static File jar(final File file, final String... entries) throws Exception {
+    ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (String entry : entries) {
+        output.putNextEntry(new ZipEntry(entry));
+        output.write(entry.getBytes("UTF-8"));
+        output.closeEntry();
+      }
+    }
+    finally {
+      output.close();
+    }
+    return file;
+  }
+
+  private static FileItem fileItem(final File file) {
+    FileItem item = new FileItem();
+    item.setSource(file.getPath());
+    return item;
+  }
+}
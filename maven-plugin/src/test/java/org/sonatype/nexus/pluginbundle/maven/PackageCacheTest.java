@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link PackageCache}.
+ */
+public class PackageCacheTest
+    extends TestSupport
+{
+  private File dir;
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = util.createTempDir();
+    cacheDir = new File(dir, "cache");
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    File jar = file("foo-1.0.jar", "content");
+    List<String> packages = Arrays.asList("a", "a.b");
+
+    PackageCache cache = new PackageCache(cacheDir, 10, null);
+    assertThat(cache.get(jar), nullValue());
+    cache.put(jar, packages);
+    assertThat(cache.get(jar), is(packages));
+    assertThat(new PackageCache(cacheDir, 10, null).get(jar), is(packages));
+  }
+
+  @Test
+  public void changedSnapshotIsRescanned() throws Exception {
+    File jar = file("foo-1.0-SNAPSHOT.jar", "content");
+    long modified = jar.lastModified();
+
+    PackageCache cache = new PackageCache(cacheDir, 10, null);
+    cache.put(jar, Arrays.asList("a"));
+    assertThat(cache.get(jar), is(Arrays.asList("a")));
+
+    // same size and timestamp, different content
+    FileUtils.fileWrite(jar, "UTF-8", "CONTENT");
+    jar.setLastModified(modified);
+    assertThat(cache.get(jar), nullValue());
+  }
+
+  @Test
+  public void buildOutputIsNotCached() throws Exception {
+    File jar = file("foo-1.0.jar", "content");
+
+    PackageCache cache = new PackageCache(cacheDir, 10, dir);
+    cache.put(jar, Arrays.asList("a"));
+    assertThat(cache.get(jar), nullValue());
+  }
+
+  @Test
+  public void leastRecentlyUsedIsEvicted() throws Exception {
+    PackageCache cache = new PackageCache(cacheDir, 2, null);
+    File first = file("first-1.0.jar", "1");
+    File second = file("second-1.0.jar", "2");
+    File third = file("third-1.0.jar", "3");
+    cache.put(first, Arrays.asList("a"));
+    cache.put(second, Arrays.asList("b"));
+    cache.put(third, Arrays.asList("c"));
+
+    long now = System.currentTimeMillis();
+    File[] entries = cacheDir.listFiles();
+    for (File entry : entries) {
+      entry.setLastModified(now - 60000);
+    }
+    cache.get(first);
+    cache.get(third);
+
+    cache.evict();
+    assertThat(cacheDir.listFiles().length, is(2));
+    assertThat(cache.get(first), is(Arrays.asList("a")));
+    assertThat(cache.get(second), nullValue());
+    assertThat(cache.get(third), is(Arrays.asList("c")));
+  }
+
+  @Test
+  public void evictionKeepsEntriesBeingWritten() throws Exception {
+    PackageCache cache = new PackageCache(cacheDir, 1, null);
+    cache.put(file("first-1.0.jar", "1"), Arrays.asList("a"));
+    File temp = new File(cacheDir, "entry123.tmp");
+    FileUtils.fileWrite(temp, "UTF-8", "in flight");
+    temp.setLastModified(System.currentTimeMillis() - 60000);
+
+    cache.evict();
+    assertThat(temp.isFile(), is(true));
+    assertThat(cacheDir.listFiles().length, is(2));
+  }
+
+  private File file(final String name, final String content) throws Exception {
+    File file = new File(dir, name);
+    FileUtils.fileWrite(file, "UTF-8", content);
+    return file;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Parallel}.
+ */
+public class ParallelTest
+    extends TestSupport
+{
+  private static final Parallel.Function<Integer, String> SQUARE = new Parallel.Function<Integer, String>()
+  {
+    public String apply(final Integer input) throws Exception {
+      if (input < 0) {
+        throw new FileNotFoundException(String.valueOf(input));
+      }
+      return Thread.currentThread().getName().startsWith("test-") + ":" + input * input;
+    }
+  };
+
+  @Test
+  public void resultsInInputOrder() throws Exception {
+    List<Integer> inputs = new ArrayList<Integer>();
+    List<String> sequential = new ArrayList<String>();
+    List<String> concurrent = new ArrayList<String>();
+    for (int i = 0; i < 20; i++) {
+      inputs.add(i);
+      sequential.add("false:" + i * i);
+      concurrent.add("true:" + i * i);
+    }
+
+    assertThat(Parallel.map(inputs, 1, "test", SQUARE), is(sequential));
+    assertThat(Parallel.map(inputs, 4, "test", SQUARE), is(concurrent));
+  }
+
+  @Test
+  public void firstFailureInInputOrder() throws Exception {
+    for (int threads : new int[] { 1, 4 }) {
+      try {
+        Parallel.map(Arrays.asList(1, -2, 3, -4), threads, "test", SQUARE);
+        fail();
+      }
+      catch (FileNotFoundException e) {
+        assertThat(e.getMessage(), is("-2"));
+      }
+    }
+  }
+
+  @Test
+  public void checkedFailuresWrapped() throws Exception {
+    try {
+      Parallel.map(Arrays.asList(1, 2), 2, "test", new Parallel.Function<Integer, String>()
+      {
+        public String apply(final Integer input) throws Exception {
+          throw new Exception("failed " + input);
+        }
+      });
+      fail();
+    }
+    catch (IOException e) {
+      assertThat(e.getCause().getMessage(), is("failed 1"));
+    }
+  }
+}
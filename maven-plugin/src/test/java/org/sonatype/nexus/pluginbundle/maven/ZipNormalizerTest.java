@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ZipNormalizer}.
+ */
+public class ZipNormalizerTest
+    extends TestSupport
+{
+  @Test
+  public void sameContentGivesSameBytes() throws Exception {
+    File dir = util.createTempDir();
+    File first = zip(new File(dir, "first.zip"), 1000000000000L, "b/lib.jar", "a/", "a/plugin.jar");
+    File second = zip(new File(dir, "second.zip"), 1300000000000L, "a/", "a/plugin.jar", "b/lib.jar");
+
+    ZipNormalizer.normalize(first, ZipNormalizer.DEFAULT_TIMESTAMP);
+    ZipNormalizer.normalize(second, ZipNormalizer.DEFAULT_TIMESTAMP);
+
+    assertThat(FileUtils.contentEquals(first, second), is(true));
+
+    ZipFile zip = new ZipFile(first);
+    try {
+      List<String> names = new ArrayList<String>();
+      for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+        ZipEntry entry = e.nextElement();
+        names.add(entry.getName());
+        long local = entry.getTime();
+        assertThat(local + TimeZone.getDefault().getOffset(local), is(ZipNormalizer.DEFAULT_TIMESTAMP));
+      }
+      assertThat(names.toString(), is("[a/, a/plugin.jar, b/lib.jar]"));
+      assertThat(zip.getEntry("a/plugin.jar").getMethod(), is(ZipEntry.STORED));
+      assertThat(zip.getEntry("b/lib.jar").getMethod(), is(ZipEntry.DEFLATED));
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  @Test
+  public void parseTimestamp() {
+    assertThat(ZipNormalizer.parseTimestamp(null), nullValue());
+    assertThat(ZipNormalizer.parseTimestamp("0"), nullValue());
+    assertThat(ZipNormalizer.parseTimestamp("1363257753"), is(1363257753000L));
+    assertThat(ZipNormalizer.parseTimestamp("2013-03-14T10:42:33Z"), is(1363257753000L));
+    assertThat(ZipNormalizer.parseTimestamp("2013-03-14T11:42:33+01:00"), is(1363257753000L));
+    try {
+      ZipNormalizer.parseTimestamp("yesterday");
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Creates a zip with the given entries, storing jars and deflating everything else.
+   */
+  private static File zip(final File file, final long time, final String... names) throws Exception {
+    ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      for (String name : names) {
+        byte[] content = name.getBytes("UTF-8");
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        entry.setComment("created at " + time);
+        if (name.endsWith("plugin.jar")) {
+          CRC32 crc = new CRC32();
+          crc.update(content);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(content.length);
+          entry.setCrc(crc.getValue());
+        }
+        output.putNextEntry(entry);
+        output.write(content);
+        output.closeEntry();
+      }
+    }
+    finally {
+      output.close();
+    }
+    return file;
+  }
+}
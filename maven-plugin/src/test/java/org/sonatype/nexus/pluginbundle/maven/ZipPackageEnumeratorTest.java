@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import aQute.bnd.osgi.Jar;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ZipPackageEnumerator}.
+ */
+public class ZipPackageEnumeratorTest
+    extends TestSupport
+{
+  @Test
+  public void sameAsBnd() throws Exception {
+    File file = OSGiUtilsTest.jar(new File(util.createTempDir(), "test.jar"),
+        "META-INF/MANIFEST.MF",
+        "emptydir/",
+        "a/",
+        "a/b/",
+        "a/b/C.class",
+        "a/b/D.class",
+        "Root.class",
+        "x/y/z/E.txt",
+        "dironly/sub/",
+        "a.b/c",
+        "a/b/c/F.class",
+        "u\u00e9/G.class");
+
+    Jar jar = new Jar(file);
+    try {
+      assertThat(ZipPackageEnumerator.getPackages(file), is(jar.getPackages()));
+    }
+    finally {
+      jar.close();
+    }
+    assertThat(ZipPackageEnumerator.getPackages(file),
+        is(Arrays.asList("", "META-INF", "a.b", "a.b", "a.b.c", "u\u00e9", "x.y.z")));
+  }
+
+  @Test
+  public void directoryIsNotEnumerated() throws Exception {
+    assertThat(ZipPackageEnumerator.getPackages(util.createTempDir()), nullValue());
+  }
+
+  @Test
+  public void notZipIsNotEnumerated() throws Exception {
+    File file = new File(util.createTempDir(), "test.jar");
+    org.codehaus.plexus.util.FileUtils.fileWrite(file, "UTF-8", "not a zip file, but long enough to search");
+    assertThat(ZipPackageEnumerator.getPackages(file), nullValue());
+  }
+}
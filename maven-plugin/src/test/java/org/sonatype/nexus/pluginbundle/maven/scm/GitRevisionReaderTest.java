@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link GitRevisionReader}.
+ */
+public class GitRevisionReaderTest
+    extends TestSupport
+{
+  private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+  private File basedir;
+
+  private File git;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = util.createTempDir();
+    git = new File(basedir, ".git");
+    new File(git, "refs/heads").mkdirs();
+    new File(basedir, "module").mkdirs();
+    FileUtils.fileWrite(new File(git, "HEAD"), "UTF-8", "ref: refs/heads/master\n");
+    writeCommit(HASH, "committer Jane Doe <jane@example.com> 1363254153 +0100\n");
+  }
+
+  @Test
+  public void looseRef() throws Exception {
+    FileUtils.fileWrite(new File(git, "refs/heads/master"), "UTF-8", HASH + "\n");
+
+    ScmRevision revision = GitRevisionReader.read(new File(basedir, "module"));
+    assertThat(revision.getVersion(), is(HASH));
+    assertThat(revision.getTimestamp(), is("2013-03-14 10:42:33 +0100"));
+  }
+
+  @Test
+  public void packedRef() throws Exception {
+    FileUtils.fileWrite(new File(git, "packed-refs"), "UTF-8",
+        "# pack-refs with: peeled fully-peeled\n" + HASH + " refs/heads/master\n");
+
+    assertThat(GitRevisionReader.read(basedir).getVersion(), is(HASH));
+  }
+
+  @Test
+  public void detachedHead() throws Exception {
+    FileUtils.fileWrite(new File(git, "HEAD"), "UTF-8", HASH + "\n");
+
+    assertThat(GitRevisionReader.read(basedir).getVersion(), is(HASH));
+  }
+
+  @Test
+  public void negativeTimeZone() throws Exception {
+    FileUtils.fileWrite(new File(git, "refs/heads/master"), "UTF-8", HASH + "\n");
+    writeCommit(HASH, "committer Jane Doe <jane@example.com> 978327000 -0530\n");
+
+    assertThat(GitRevisionReader.read(basedir).getTimestamp(), is("2001-01-01 00:00:00 -0530"));
+  }
+
+  @Test
+  public void missingObjectIsUnsupported() throws Exception {
+    FileUtils.fileWrite(new File(git, "refs/heads/master"), "UTF-8", "1111111111111111111111111111111111111111\n");
+
+    assertThat(GitRevisionReader.read(basedir), nullValue());
+  }
+
+  @Test
+  public void unbornBranch() throws Exception {
+    assertThat(GitRevisionReader.read(basedir), nullValue());
+  }
+
+  @Test
+  public void packedCommitWithIndexVersion2() throws Exception {
+    Pack pack = new Pack();
+    String hash = pack.add(commit("committer Jane Doe <jane@example.com> 1363254153 +0100\n"));
+    pack.write(2);
+    packRef(hash);
+
+    ScmRevision revision = GitRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is(hash));
+    assertThat(revision.getTimestamp(), is("2013-03-14 10:42:33 +0100"));
+  }
+
+  @Test
+  public void packedCommitWithIndexVersion1() throws Exception {
+    Pack pack = new Pack();
+    pack.add(commit("committer John Doe <john@example.com> 1000000000 +0000\n"));
+    String hash = pack.add(commit("committer Jane Doe <jane@example.com> 1363254153 +0100\n"));
+    pack.write(1);
+    packRef(hash);
+
+    ScmRevision revision = GitRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is(hash));
+    assertThat(revision.getTimestamp(), is("2013-03-14 10:42:33 +0100"));
+  }
+
+  @Test
+  public void offsetDeltaCommit() throws Exception {
+    Pack pack = new Pack();
+    String base = pack.add(commit("committer Jane Doe <jane@example.com> 1363254153 +0100\n"));
+    String hash = pack.addOffsetDelta(base, commit("committer Jane Doe <jane@example.com> 978327000 -0530\n"));
+    pack.write(2);
+    packRef(hash);
+
+    ScmRevision revision = GitRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is(hash));
+    assertThat(revision.getTimestamp(), is("2001-01-01 00:00:00 -0530"));
+  }
+
+  @Test
+  public void refDeltaCommit() throws Exception {
+    Pack pack = new Pack();
+    String base = pack.add(commit("committer Jane Doe <jane@example.com> 1363254153 +0100\n"));
+    String hash = pack.addRefDelta(base, commit("committer Jane Doe <jane@example.com> 978327000 -0530\n"));
+    pack.write(1);
+    packRef(hash);
+
+    ScmRevision revision = GitRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is(hash));
+    assertThat(revision.getTimestamp(), is("2001-01-01 00:00:00 -0530"));
+  }
+
+  private void packRef(final String hash) throws Exception {
+    FileUtils.fileWrite(new File(git, "packed-refs"), "UTF-8",
+        "# pack-refs with: peeled fully-peeled\n" + hash + " refs/heads/master\n");
+  }
+
+  private static byte[] commit(final String committer) throws Exception {
+    String content = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n" +
+        "author Jane Doe <jane@example.com> 1363254153 +0100\n" +
+        committer +
+        "\n" +
+        "Commit message\n";
+    return content.getBytes("UTF-8");
+  }
+
+  private void writeCommit(final String hash, final String committer) throws Exception {
+    String content = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n" +
+        "author Jane Doe <jane@example.com> 1363254153 +0100\n" +
+        committer +
+        "\n" +
+        "Commit message\n";
+    byte[] bytes = content.getBytes("UTF-8");
+
+    File file = new File(git, "objects/" + hash.substring(0, 2) + "/" + hash.substring(2));
+    file.getParentFile().mkdirs();
+    DeflaterOutputStream output = new DeflaterOutputStream(new FileOutputStream(file));
+    try {
+      output.write(("commit " + bytes.length + "\0").getBytes("UTF-8"));
+      output.write(bytes);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Writes a pack holding commits, either whole or deltified against an earlier commit, and its index.
+   */
+  private class Pack
+  {
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+    private final List<String> ids = new ArrayList<String>();
+
+    private final List<Integer> offsets = new ArrayList<Integer>();
+
+    private final List<byte[]> contents = new ArrayList<byte[]>();
+
+    private String add(final byte[] content) throws Exception {
+      int offset = begin(content);
+      header(1, content.length);
+      deflate(content);
+      return end(offset);
+    }
+
+    private String addOffsetDelta(final String base, final byte[] content) throws Exception {
+      byte[] delta = delta(contents.get(ids.indexOf(base)), content);
+      int offset = begin(content);
+      header(6, delta.length);
+
+      // big endian, each continued byte adding one
+      long distance = offset - offsets.get(ids.indexOf(base));
+      byte[] buff = new byte[10];
+      int pos = buff.length - 1;
+      buff[pos] = (byte) (distance & 0x7f);
+      while ((distance >>= 7) != 0) {
+        buff[--pos] = (byte) (0x80 | (--distance & 0x7f));
+      }
+      entries.write(buff, pos, buff.length - pos);
+
+      deflate(delta);
+      return end(offset);
+    }
+
+    private String addRefDelta(final String base, final byte[] content) throws Exception {
+      byte[] delta = delta(contents.get(ids.indexOf(base)), content);
+      int offset = begin(content);
+      header(7, delta.length);
+      entries.write(toBytes(base));
+      deflate(delta);
+      return end(offset);
+    }
+
+    private int begin(final byte[] content) {
+      contents.add(content);
+      return 12 + entries.size();
+    }
+
+    private String end(final int offset) throws Exception {
+      byte[] content = contents.get(contents.size() - 1);
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(("commit " + content.length + "\0").getBytes("UTF-8"));
+      String id = toHex(digest.digest(content));
+      ids.add(id);
+      offsets.add(offset);
+      return id;
+    }
+
+    private void header(final int type, final long size) {
+      long rest = size >> 4;
+      entries.write((int) ((rest != 0 ? 0x80 : 0) | type << 4 | size & 0x0f));
+      while (rest != 0) {
+        int b = (int) (rest & 0x7f);
+        rest >>= 7;
+        entries.write((rest != 0 ? 0x80 : 0) | b);
+      }
+    }
+
+    private void deflate(final byte[] data) throws IOException {
+      DeflaterOutputStream output = new DeflaterOutputStream(entries);
+      output.write(data);
+      output.finish();
+    }
+
+    /**
+     * Copies the common prefix of base and target, and inserts the rest of the target.
+     */
+    private byte[] delta(final byte[] base, final byte[] target) {
+      ByteArrayOutputStream delta = new ByteArrayOutputStream();
+      varint(delta, base.length);
+      varint(delta, target.length);
+      int prefix = 0;
+      while (prefix < base.length && prefix < target.length && base[prefix] == target[prefix]) {
+        prefix++;
+      }
+      // copy from offset 0, two size bytes
+      delta.write(0x80 | 0x10 | 0x20);
+      delta.write(prefix & 0xff);
+      delta.write(prefix >> 8 & 0xff);
+      for (int i = prefix; i < target.length; i += 127) {
+        int length = Math.min(127, target.length - i);
+        delta.write(length);
+        delta.write(target, i, length);
+      }
+      return delta.toByteArray();
+    }
+
+    private void varint(final ByteArrayOutputStream output, int value) {
+      while ((value & ~0x7f) != 0) {
+        output.write(0x80 | value & 0x7f);
+        value >>>= 7;
+      }
+      output.write(value);
+    }
+
+    private void write(final int indexVersion) throws Exception {
+      File dir = new File(git, "objects/pack");
+      dir.mkdirs();
+
+      ByteArrayOutputStream pack = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(pack);
+      data.writeBytes("PACK");
+      data.writeInt(2);
+      data.writeInt(ids.size());
+      entries.writeTo(data);
+      data.write(MessageDigest.getInstance("SHA-1").digest(pack.toByteArray()));
+      writeFile(new File(dir, "pack-test.pack"), pack.toByteArray());
+
+      List<Integer> order = new ArrayList<Integer>();
+      for (int i = 0; i < ids.size(); i++) {
+        int at = 0;
+        while (at < order.size() && ids.get(order.get(at)).compareTo(ids.get(i)) < 0) {
+          at++;
+        }
+        order.add(at, i);
+      }
+
+      ByteArrayOutputStream index = new ByteArrayOutputStream();
+      data = new DataOutputStream(index);
+      if (indexVersion == 2) {
+        data.writeInt(0xff744f63);
+        data.writeInt(2);
+      }
+      for (int bucket = 0; bucket < 256; bucket++) {
+        int count = 0;
+        for (String id : ids) {
+          if (Integer.parseInt(id.substring(0, 2), 16) <= bucket) {
+            count++;
+          }
+        }
+        data.writeInt(count);
+      }
+      for (int i : order) {
+        if (indexVersion == 1) {
+          data.writeInt(offsets.get(i));
+        }
+        data.write(toBytes(ids.get(i)));
+      }
+      if (indexVersion == 2) {
+        for (int i : order) {
+          data.writeInt(0); // crc32, not verified
+        }
+        for (int i : order) {
+          data.writeInt(offsets.get(i));
+        }
+      }
+      data.write(new byte[40]); // pack and index checksums, not verified
+      writeFile(new File(dir, "pack-test.idx"), index.toByteArray());
+    }
+
+    private void writeFile(final File file, final byte[] bytes) throws IOException {
+      FileOutputStream output = new FileOutputStream(file);
+      try {
+        output.write(bytes);
+      }
+      finally {
+        output.close();
+      }
+    }
+  }
+
+  private static byte[] toBytes(final String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+
+  private static String toHex(final byte[] bytes) {
+    StringBuilder buff = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buff.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return buff.toString();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link HgRevisionReader}.
+ */
+public class HgRevisionReaderTest
+    extends TestSupport
+{
+  private static final String NODE0 = "0123456789abcdef0123456789abcdef01234567";
+
+  private static final String NODE1 = "89abcdef0123456789abcdef0123456789abcdef";
+
+  private static final String TEXT0 =
+      "1111111111111111111111111111111111111111\nJane Doe <jane@example.com>\n1357126496 -3600\npom.xml\n\nFirst";
+
+  private static final String DATE1 = "1363254153 0";
+
+  private File basedir;
+
+  private File hg;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = util.createTempDir();
+    hg = new File(basedir, ".hg");
+    new File(hg, "store").mkdirs();
+    new File(basedir, "module").mkdirs();
+    FileUtils.fileWrite(new File(hg, "requires"), "UTF-8", "dotencode\nfncache\nrevlogv1\nstore\n");
+    writeChangelog(false);
+  }
+
+  @Test
+  public void firstRevision() throws Exception {
+    writeDirstate("", NODE0);
+
+    ScmRevision revision = HgRevisionReader.read(new File(basedir, "module"));
+    assertThat(revision.getVersion(), is(NODE0));
+    assertThat(revision.getTimestamp(), is("2013-01-02 12:34 +0100"));
+  }
+
+  @Test
+  public void deltaRevision() throws Exception {
+    writeDirstate("", NODE1);
+
+    ScmRevision revision = HgRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is(NODE1));
+    assertThat(revision.getTimestamp(), is("2013-03-14 09:42 +0000"));
+  }
+
+  @Test
+  public void dirstateV2() throws Exception {
+    writeDirstate("dirstate-v2\n", NODE1);
+
+    assertThat(HgRevisionReader.read(basedir).getVersion(), is(NODE1));
+  }
+
+  @Test
+  public void noCheckout() throws Exception {
+    writeDirstate("", "0000000000000000000000000000000000000000");
+
+    assertThat(HgRevisionReader.read(basedir), nullValue());
+  }
+
+  @Test
+  public void unsupportedCompression() throws Exception {
+    writeChangelog(true);
+    writeDirstate("", NODE0);
+
+    assertThat(HgRevisionReader.read(basedir), nullValue());
+  }
+
+  private void writeDirstate(final String prefix, final String node) throws Exception {
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    buff.write(prefix.getBytes("UTF-8"));
+    buff.write(fromHex(node));
+    buff.write(new byte[20]);
+    FileOutputStream output = new FileOutputStream(new File(hg, "dirstate"));
+    try {
+      output.write(buff.toByteArray());
+    }
+    finally {
+      IOUtil.close(output);
+    }
+  }
+
+  /**
+   * Writes an inline changelog with a full first revision and a second revision stored as a delta.
+   */
+  private void writeChangelog(final boolean zstd) throws Exception {
+    byte[] text0 = TEXT0.getBytes("UTF-8");
+    byte[] chunk0;
+    if (zstd) {
+      chunk0 = new byte[]{'(', 0, 0, 0};
+    }
+    else {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      DeflaterOutputStream deflater = new DeflaterOutputStream(compressed);
+      deflater.write(text0);
+      deflater.close();
+      chunk0 = compressed.toByteArray();
+    }
+
+    // replace the date line; raw chunks starting with a NUL byte are stored uncompressed
+    int start = TEXT0.indexOf("1357126496");
+    int end = TEXT0.indexOf('\n', start);
+    ByteArrayOutputStream delta = new ByteArrayOutputStream();
+    DataOutputStream hunk = new DataOutputStream(delta);
+    hunk.writeInt(start);
+    hunk.writeInt(end);
+    hunk.writeInt(DATE1.length());
+    hunk.write(DATE1.getBytes("UTF-8"));
+    hunk.close();
+    byte[] chunk1 = delta.toByteArray();
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(index);
+    // version 1, inline data
+    writeEntry(out, 0x00010001L << 32, chunk0.length, text0.length, 0, NODE0);
+    out.write(chunk0);
+    writeEntry(out, (long) chunk0.length << 16, chunk1.length, text0.length, 0, NODE1);
+    out.write(chunk1);
+    out.close();
+
+    FileOutputStream output = new FileOutputStream(new File(hg, "store/00changelog.i"));
+    try {
+      output.write(index.toByteArray());
+    }
+    finally {
+      IOUtil.close(output);
+    }
+  }
+
+  private static void writeEntry(final DataOutputStream out,
+                                 final long offsetFlags,
+                                 final int compressed,
+                                 final int uncompressed,
+                                 final int base,
+                                 final String node)
+      throws Exception
+  {
+    out.writeLong(offsetFlags);
+    out.writeInt(compressed);
+    out.writeInt(uncompressed);
+    out.writeInt(base);
+    out.writeInt(0);
+    out.writeInt(-1);
+    out.writeInt(-1);
+    out.write(fromHex(node));
+    out.write(new byte[12]);
+  }
+
+  private static byte[] fromHex(final String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.scm.ScmException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ScmRevisionCache}.
+ */
+public class ScmRevisionCacheTest
+    extends TestSupport
+{
+  @Test
+  public void attachedToSession() {
+    DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+
+    assertThat(ScmRevisionCache.get(session), sameInstance(ScmRevisionCache.get(session)));
+    assertThat(ScmRevisionCache.get(session),
+        not(sameInstance(ScmRevisionCache.get(new DefaultRepositorySystemSession()))));
+  }
+
+  @Test
+  public void loadedOnceUnderConcurrency() throws Exception {
+    final ScmRevisionCache cache = new ScmRevisionCache();
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ScmRevision>> results = new ArrayList<Future<ScmRevision>>();
+      for (int i = 0; i < 32; i++) {
+        results.add(executor.submit(new Callable<ScmRevision>()
+        {
+          public ScmRevision call() throws Exception {
+            start.await();
+            return cache.get("git:/work", new Callable<ScmRevision>()
+            {
+              public ScmRevision call() throws Exception {
+                loads.incrementAndGet();
+                Thread.sleep(50);
+                return new ScmRevision("abc", null);
+              }
+            });
+          }
+        }));
+      }
+      start.countDown();
+
+      ScmRevision first = results.get(0).get();
+      for (Future<ScmRevision> result : results) {
+        assertThat(result.get(), sameInstance(first));
+      }
+      assertThat(loads.get(), is(1));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void failuresAreCached() throws Exception {
+    ScmRevisionCache cache = new ScmRevisionCache();
+    final AtomicInteger loads = new AtomicInteger();
+    Callable<ScmRevision> loader = new Callable<ScmRevision>()
+    {
+      public ScmRevision call() throws Exception {
+        loads.incrementAndGet();
+        throw new ScmException("no svn");
+      }
+    };
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get("svn:/work", loader);
+        fail();
+      }
+      catch (ScmException e) {
+        assertThat(e.getMessage(), is("no svn"));
+      }
+    }
+    assertThat(loads.get(), is(1));
+  }
+
+  @Test
+  public void keys() throws Exception {
+    File basedir = util.createTempDir();
+    new File(basedir, ".git").mkdirs();
+    new File(basedir, ".hg").mkdirs();
+    File module = new File(basedir, "module");
+    module.mkdirs();
+
+    assertThat(ScmRevisionCache.getKey("git", module), is(ScmRevisionCache.getKey("git", basedir)));
+    assertThat(ScmRevisionCache.getKey("hg", module), is(ScmRevisionCache.getKey("hg", basedir)));
+    assertThat(ScmRevisionCache.getKey("svn", module), not(ScmRevisionCache.getKey("svn", basedir)));
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.apache.maven.scm.ScmException;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ScmRevisions}.
+ */
+public class ScmRevisionsTest
+    extends TestSupport
+{
+  private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+  private Map<String, String> environment;
+
+  @Before
+  public void setUp() {
+    environment = new HashMap<String, String>();
+  }
+
+  @Test
+  public void infoFileTakesPrecedence() throws Exception {
+    File file = new File(util.createTempDir(), "build-info.properties");
+    FileUtils.fileWrite(file, "ISO-8859-1", "scm.version=" + HASH + "\nscm.timestamp=2013-03-14 10:42:33 +0100\n");
+    environment.put("GIT_COMMIT", "fedcba9876543210fedcba9876543210fedcba98");
+
+    ScmRevision revision = ScmRevisions.read(file, "git", "GIT_COMMIT", null, environment);
+    assertThat(revision.getVersion(), is(HASH));
+    assertThat(revision.getTimestamp(), is("2013-03-14 10:42:33 +0100"));
+  }
+
+  @Test
+  public void infoFileWithoutVersionFallsBackToEnvironment() throws Exception {
+    File file = new File(util.createTempDir(), "build-info.properties");
+    FileUtils.fileWrite(file, "ISO-8859-1", "scm.timestamp=2013-03-14 10:42:33 +0100\n");
+    environment.put("GIT_COMMIT", HASH);
+
+    assertThat(ScmRevisions.read(file, "git", "GIT_COMMIT", null, environment).getVersion(), is(HASH));
+    assertThat(ScmRevisions.read(new File(file.getParentFile(), "missing.properties"), "git", "GIT_COMMIT", null,
+        environment).getVersion(), is(HASH));
+  }
+
+  @Test
+  public void environmentNotUsedByDefault() throws Exception {
+    environment.put("GIT_COMMIT", HASH);
+
+    assertThat(ScmRevisions.read(null, "git", null, null, environment), nullValue());
+  }
+
+  @Test
+  public void firstSetVariableWins() {
+    environment.put("BUILD_REVISION", " ");
+    environment.put("GIT_COMMIT", HASH);
+    environment.put("BUILD_TIMESTAMP", "2013-03-14 10:42:33 +0100");
+
+    ScmRevision revision = ScmRevisions.readEnvironment("git", "BUILD_REVISION, GIT_COMMIT", "BUILD_TIMESTAMP",
+        environment);
+    assertThat(revision.getVersion(), is(HASH));
+    assertThat(revision.getTimestamp(), is("2013-03-14 10:42:33 +0100"));
+  }
+
+  @Test
+  public void timestampMayBeMissing() {
+    environment.put("GIT_COMMIT", HASH);
+
+    ScmRevision revision = ScmRevisions.readEnvironment("git", "GIT_COMMIT", "BUILD_TIMESTAMP", environment);
+    assertThat(revision.getVersion(), is(HASH));
+    assertThat(revision.getTimestamp(), nullValue());
+  }
+
+  @Test
+  public void variablesOfOtherScmIgnored() {
+    environment.put("SVN_REVISION", "1234");
+    environment.put("GIT_COMMIT", HASH);
+
+    assertThat(ScmRevisions.readEnvironment("git", "SVN_REVISION,GIT_COMMIT", null, environment).getVersion(),
+        is(HASH));
+    assertThat(ScmRevisions.readEnvironment("hg", "SVN_REVISION,GIT_COMMIT", null, environment), nullValue());
+    assertThat(ScmRevisions.readEnvironment("svn", "SVN_REVISION,GIT_COMMIT", null, environment).getVersion(),
+        is("1234"));
+  }
+
+  @Test
+  public void queryWithinTimeout() throws Exception {
+    ScmRevision revision = ScmRevisions.callWithTimeout(new Callable<ScmRevision>()
+    {
+      public ScmRevision call() {
+        return new ScmRevision(HASH, null);
+      }
+    }, 10);
+    assertThat(revision.getVersion(), is(HASH));
+  }
+
+  @Test
+  public void queryTimesOut() throws Exception {
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    try {
+      ScmRevisions.callWithTimeout(new Callable<ScmRevision>()
+      {
+        public ScmRevision call() {
+          try {
+            Thread.sleep(60000);
+          }
+          catch (InterruptedException e) {
+            interrupted.countDown();
+          }
+          return null;
+        }
+      }, 1);
+      fail();
+    }
+    catch (ScmException e) {
+      assertThat(e.getMessage(), is("Timed out after 1 seconds"));
+    }
+    interrupted.await();
+  }
+
+  @Test
+  public void queryFailureRethrown() throws Exception {
+    try {
+      ScmRevisions.callWithTimeout(new Callable<ScmRevision>()
+      {
+        public ScmRevision call() throws Exception {
+          throw new ScmException("svn: E155007");
+        }
+      }, 10);
+      fail();
+    }
+    catch (ScmException e) {
+      assertThat(e.getMessage(), is("svn: E155007"));
+    }
+  }
+}
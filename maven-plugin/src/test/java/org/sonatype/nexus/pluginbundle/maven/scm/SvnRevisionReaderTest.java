@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.nexus.pluginbundle.maven.scm;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link SvnRevisionReader}.
+ */
+public class SvnRevisionReaderTest
+    extends TestSupport
+{
+  private File basedir;
+
+  @Before
+  public void setUp() throws Exception {
+    basedir = util.createTempDir();
+    new File(basedir, ".svn").mkdirs();
+    new File(basedir, "plugin/added").mkdirs();
+    FileUtils.copyURLToFile(getClass().getResource("wc.db"), new File(basedir, ".svn/wc.db"));
+  }
+
+  @Test
+  public void workingCopyRoot() throws Exception {
+    ScmRevision revision = SvnRevisionReader.read(basedir);
+    assertThat(revision.getVersion(), is("3990"));
+    assertThat(revision.getTimestamp(), is(SvnRevisionReader.format(1357126496123L)));
+  }
+
+  @Test
+  public void module() throws Exception {
+    // base node has an overflowing properties blob and a working node on top
+    ScmRevision revision = SvnRevisionReader.read(new File(basedir, "plugin"));
+    assertThat(revision.getVersion(), is("3712"));
+    assertThat(revision.getTimestamp(), is(SvnRevisionReader.format(1357040096000L)));
+  }
+
+  @Test
+  public void notCommitted() throws Exception {
+    assertThat(SvnRevisionReader.read(new File(basedir, "plugin/added")), nullValue());
+  }
+
+  @Test
+  public void pendingJournal() throws Exception {
+    FileUtils.fileWrite(new File(basedir, ".svn/wc.db-journal"), "UTF-8", "journal");
+
+    assertThat(SvnRevisionReader.read(basedir), nullValue());
+  }
+
+  @Test
+  public void legacyWorkingCopy() throws Exception {
+    new File(basedir, ".svn/wc.db").delete();
+    FileUtils.fileWrite(new File(basedir, ".svn/entries"), "UTF-8", "10\n");
+
+    assertThat(SvnRevisionReader.read(basedir), nullValue());
+  }
+
+  @Test
+  public void columns() {
+    assertThat(SvnRevisionReader.getColumns(
+        "CREATE TABLE T (a INTEGER, /* b, c */ \"d\" TEXT CHECK (d IN ('x', 'y')), -- e,\n f, PRIMARY KEY (a, f))"),
+        is(Arrays.asList("a", "d", "f")));
+  }
+}
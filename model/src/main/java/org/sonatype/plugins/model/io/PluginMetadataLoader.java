@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.binary.PluginModelBinaryReader;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Reader;
+
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Loads plugin descriptors for long lived use, sharing equal strings and dependency records across all descriptors
+ * loaded by the same instance.
+ *
+ * Licenses and dependencies of loaded descriptors are shared between descriptors and can not be changed, their
+ * setters and package name lists throw {@link UnsupportedOperationException}. The lists holding them, and the
+ * descriptors themselves, are not shared.
+ *
+ * @since 1.4
+ */
+public class PluginMetadataLoader
+{
+  /**
+   * Estimated size of a string besides its characters: object header, fields and array header.
+   */
+  static final int STRING_OVERHEAD = 40;
+
+  /**
+   * Estimated size of a license or dependency record, not counting its strings.
+   */
+  static final int RECORD_SIZE = 32;
+
+  private final Map<String, String> strings = new HashMap<String, String>();
+
+  private final Map<Object, Object> records = new HashMap<Object, Object>();
+
+  private final Statistics statistics = new Statistics();
+
+  public PluginMetadata readXml(final InputStream in) throws IOException, XmlPullParserException {
+    return intern(new PluginModelXpp3Reader().read(in));
+  }
+
+  public PluginMetadata readBinary(final InputStream in) throws IOException {
+    return intern(new PluginModelBinaryReader().read(in));
+  }
+
+  /**
+   * Replaces the strings and records of the given descriptor with shared instances.
+   *
+   * @return the given descriptor.
+   */
+  public synchronized PluginMetadata intern(final PluginMetadata metadata) {
+    statistics.descriptors++;
+
+    metadata.setModelVersion(intern(metadata.getModelVersion()));
+    metadata.setModelEncoding(intern(metadata.getModelEncoding()));
+    metadata.setGroupId(intern(metadata.getGroupId()));
+    metadata.setArtifactId(intern(metadata.getArtifactId()));
+    metadata.setVersion(intern(metadata.getVersion()));
+    metadata.setName(intern(metadata.getName()));
+    metadata.setDescription(intern(metadata.getDescription()));
+    metadata.setPluginSite(intern(metadata.getPluginSite()));
+    metadata.setApplicationId(intern(metadata.getApplicationId()));
+    metadata.setApplicationEdition(intern(metadata.getApplicationEdition()));
+    metadata.setApplicationMinVersion(intern(metadata.getApplicationMinVersion()));
+    metadata.setApplicationMaxVersion(intern(metadata.getApplicationMaxVersion()));
+    metadata.setScmUri(intern(metadata.getScmUri()));
+    metadata.setScmVersion(intern(metadata.getScmVersion()));
+    metadata.setScmTimestamp(intern(metadata.getScmTimestamp()));
+
+    List<PluginLicense> licenses = new ArrayList<PluginLicense>(metadata.getLicenses().size());
+    for (PluginLicense license : metadata.getLicenses()) {
+      licenses.add(share(new SharedLicense(this, license)));
+    }
+    metadata.setLicenses(licenses);
+
+    List<ClasspathDependency> classpathDependencies =
+        new ArrayList<ClasspathDependency>(metadata.getClasspathDependencies().size());
+    for (ClasspathDependency dependency : metadata.getClasspathDependencies()) {
+      classpathDependencies.add(share(new SharedClasspathDependency(this, dependency)));
+    }
+    metadata.setClasspathDependencies(classpathDependencies);
+
+    List<PluginDependency> pluginDependencies = new ArrayList<PluginDependency>(metadata.getPluginDependencies().size());
+    for (PluginDependency dependency : metadata.getPluginDependencies()) {
+      pluginDependencies.add(share(new SharedPluginDependency(this, dependency)));
+    }
+    metadata.setPluginDependencies(pluginDependencies);
+
+    return metadata;
+  }
+
+  /**
+   * Returns a snapshot of what was shared so far.
+   */
+  public synchronized Statistics getStatistics() {
+    return statistics.copy();
+  }
+
+  private String intern(final String value) {
+    if (value == null) {
+      return null;
+    }
+    statistics.strings++;
+    String shared = strings.get(value);
+    if (shared == null) {
+      strings.put(value, value);
+      return value;
+    }
+    if (shared != value) {
+      statistics.sharedStrings++;
+      statistics.savedBytes += STRING_OVERHEAD + 2L * value.length();
+    }
+    return shared;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T share(final T record) {
+    statistics.records++;
+    Object shared = records.get(record);
+    if (shared == null) {
+      records.put(record, record);
+      return record;
+    }
+    statistics.sharedRecords++;
+    statistics.savedBytes += RECORD_SIZE;
+    return (T) shared;
+  }
+
+  private static boolean eq(final Object a, final Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static int hash(final Object... values) {
+    int hash = 1;
+    for (Object value : values) {
+      hash = 31 * hash + (value == null ? 0 : value.hashCode());
+    }
+    return hash;
+  }
+
+  /**
+   * What a loader shared so far. Byte counts are estimates.
+   */
+  public static class Statistics
+  {
+    private int descriptors;
+
+    private long strings;
+
+    private long sharedStrings;
+
+    private long records;
+
+    private long sharedRecords;
+
+    private long savedBytes;
+
+    public int getDescriptors() {
+      return descriptors;
+    }
+
+    public long getStrings() {
+      return strings;
+    }
+
+    public long getSharedStrings() {
+      return sharedStrings;
+    }
+
+    public long getRecords() {
+      return records;
+    }
+
+    public long getSharedRecords() {
+      return sharedRecords;
+    }
+
+    public long getSavedBytes() {
+      return savedBytes;
+    }
+
+    private Statistics copy() {
+      Statistics copy = new Statistics();
+      copy.descriptors = descriptors;
+      copy.strings = strings;
+      copy.sharedStrings = sharedStrings;
+      copy.records = records;
+      copy.sharedRecords = sharedRecords;
+      copy.savedBytes = savedBytes;
+      return copy;
+    }
+
+    @Override
+    public String toString() {
+      return descriptors + " descriptors, " + sharedStrings + "/" + strings + " strings and " + sharedRecords + "/"
+          + records + " records shared, ~" + savedBytes / 1024 + " KiB saved";
+    }
+  }
+
+  private static class SharedLicense
+      extends PluginLicense
+  {
+    private SharedLicense(final PluginMetadataLoader loader, final PluginLicense license) {
+      super.setType(loader.intern(license.getType()));
+      super.setUrl(loader.intern(license.getUrl()));
+    }
+
+    @Override
+    public void setType(final String type) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setUrl(final String url) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof SharedLicense)) {
+        return false;
+      }
+      SharedLicense that = (SharedLicense) o;
+      return eq(getType(), that.getType()) && eq(getUrl(), that.getUrl());
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(getType(), getUrl());
+    }
+  }
+
+  private static class SharedClasspathDependency
+      extends ClasspathDependency
+  {
+    private SharedClasspathDependency(final PluginMetadataLoader loader, final ClasspathDependency dependency) {
+      super.setGroupId(loader.intern(dependency.getGroupId()));
+      super.setArtifactId(loader.intern(dependency.getArtifactId()));
+      super.setVersion(loader.intern(dependency.getVersion()));
+      super.setClassifier(loader.intern(dependency.getClassifier()));
+      super.setType(loader.intern(dependency.getType()));
+      super.setHasComponents(dependency.isHasComponents());
+      super.setShared(dependency.isShared());
+      List<String> packageNames = new ArrayList<String>(dependency.getPackageNames().size());
+      for (String packageName : dependency.getPackageNames()) {
+        packageNames.add(loader.intern(packageName));
+      }
+      super.setPackageNames(Collections.unmodifiableList(packageNames));
+      super.setSha256(loader.intern(dependency.getSha256()));
+      super.setSize(dependency.getSize());
+    }
+
+    @Override
+    public void setGroupId(final String groupId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setArtifactId(final String artifactId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setVersion(final String version) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setClassifier(final String classifier) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setType(final String type) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setHasComponents(final boolean hasComponents) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setShared(final boolean shared) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPackageNames(final List<String> packageNames) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setSha256(final String sha256) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setSize(final long size) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof SharedClasspathDependency)) {
+        return false;
+      }
+      SharedClasspathDependency that = (SharedClasspathDependency) o;
+      return eq(getGroupId(), that.getGroupId()) && eq(getArtifactId(), that.getArtifactId())
+          && eq(getVersion(), that.getVersion()) && eq(getClassifier(), that.getClassifier())
+          && eq(getType(), that.getType()) && isHasComponents() == that.isHasComponents()
+          && isShared() == that.isShared() && getPackageNames().equals(that.getPackageNames())
+          && eq(getSha256(), that.getSha256()) && getSize() == that.getSize();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(getGroupId(), getArtifactId(), getVersion(), getClassifier(), getType(), isHasComponents(),
+          isShared(), getPackageNames(), getSha256(), getSize());
+    }
+  }
+
+  private static class SharedPluginDependency
+      extends PluginDependency
+  {
+    private SharedPluginDependency(final PluginMetadataLoader loader, final PluginDependency dependency) {
+      super.setGroupId(loader.intern(dependency.getGroupId()));
+      super.setArtifactId(loader.intern(dependency.getArtifactId()));
+      super.setVersion(loader.intern(dependency.getVersion()));
+      super.setOptional(dependency.isOptional());
+    }
+
+    @Override
+    public void setGroupId(final String groupId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setArtifactId(final String artifactId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setVersion(final String version) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setOptional(final boolean optional) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof SharedPluginDependency)) {
+        return false;
+      }
+      SharedPluginDependency that = (SharedPluginDependency) o;
+      return eq(getGroupId(), that.getGroupId()) && eq(getArtifactId(), that.getArtifactId())
+          && eq(getVersion(), that.getVersion()) && isOptional() == that.isOptional();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash(getGroupId(), getArtifactId(), getVersion(), isOptional());
+    }
+  }
+}
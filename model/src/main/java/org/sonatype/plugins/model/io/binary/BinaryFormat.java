@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.binary;
+
+/**
+ * Constants of the binary plugin descriptor format.
+ *
+ * <pre>
+ * descriptor := MAGIC version:varint strings record
+ * strings    := count:varint (length:varint utf8-bytes)*
+ * record     := (tag:varint value)* END
+ * tag        := field &lt;&lt; 3 | wire type
+ * value      := varint                  ; {@link #VARINT}, string table index or boolean
+ *             | count:varint record*    ; {@link #RECORDS}
+ * </pre>
+ *
+ * All varints are unsigned LEB128, those of sizes may be up to 64 bits long. Fields are only written when set
+ * (strings) or {@code true} (booleans), absent fields keep their model default. Repeated fields add one element per
+ * occurrence. Readers skip fields they do not know, so new fields can be added without bumping {@link #VERSION};
+ * field numbers must never be reused.
+ *
+ * @since 1.4
+ */
+final class BinaryFormat
+{
+  static final byte[] MAGIC = {'N', 'X', 'P', 'M'};
+
+  static final int VERSION = 1;
+
+  static final int END = 0;
+
+  static final int VARINT = 0;
+
+  static final int RECORDS = 1;
+
+  static final int WIRE_TYPE_BITS = 3;
+
+  static final int WIRE_TYPE_MASK = (1 << WIRE_TYPE_BITS) - 1;
+
+  // PluginMetadata
+
+  static final int METADATA_MODEL_VERSION = 1 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_GROUP_ID = 2 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_ARTIFACT_ID = 3 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_VERSION = 4 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_NAME = 5 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_DESCRIPTION = 6 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_PLUGIN_SITE = 7 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_APPLICATION_ID = 8 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_APPLICATION_EDITION = 9 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_APPLICATION_MIN_VERSION = 10 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_APPLICATION_MAX_VERSION = 11 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_SCM_URI = 12 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_SCM_VERSION = 13 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_SCM_TIMESTAMP = 14 << WIRE_TYPE_BITS | VARINT;
+
+  static final int METADATA_LICENSES = 15 << WIRE_TYPE_BITS | RECORDS;
+
+  static final int METADATA_CLASSPATH_DEPENDENCIES = 16 << WIRE_TYPE_BITS | RECORDS;
+
+  static final int METADATA_PLUGIN_DEPENDENCIES = 17 << WIRE_TYPE_BITS | RECORDS;
+
+  static final int METADATA_MODEL_ENCODING = 18 << WIRE_TYPE_BITS | VARINT;
+
+  // PluginLicense
+
+  static final int LICENSE_TYPE = 1 << WIRE_TYPE_BITS | VARINT;
+
+  static final int LICENSE_URL = 2 << WIRE_TYPE_BITS | VARINT;
+
+  // ClasspathDependency
+
+  static final int CLASSPATH_GROUP_ID = 1 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_ARTIFACT_ID = 2 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_VERSION = 3 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_CLASSIFIER = 4 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_TYPE = 5 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_HAS_COMPONENTS = 6 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_SHARED = 7 << WIRE_TYPE_BITS | VARINT;
+
+  /**
+   * Repeated, one field per package name.
+   */
+  static final int CLASSPATH_PACKAGE_NAME = 8 << WIRE_TYPE_BITS | VARINT;
+
+  static final int CLASSPATH_SHA256 = 9 << WIRE_TYPE_BITS | VARINT;
+
+  /**
+   * Only written when recorded, may exceed the int range.
+   */
+  static final int CLASSPATH_SIZE = 10 << WIRE_TYPE_BITS | VARINT;
+
+  // PluginDependency
+
+  static final int PLUGIN_DEPENDENCY_GROUP_ID = 1 << WIRE_TYPE_BITS | VARINT;
+
+  static final int PLUGIN_DEPENDENCY_ARTIFACT_ID = 2 << WIRE_TYPE_BITS | VARINT;
+
+  static final int PLUGIN_DEPENDENCY_VERSION = 3 << WIRE_TYPE_BITS | VARINT;
+
+  static final int PLUGIN_DEPENDENCY_OPTIONAL = 4 << WIRE_TYPE_BITS | VARINT;
+
+  private BinaryFormat() {
+    // empty
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginMetadata;
+
+/**
+ * Index of a directory of plugin bundles: the descriptor and content hash of each bundle, and the dependency edges
+ * between the indexed plugins.
+ *
+ * <pre>
+ * index := MAGIC version:int count:int entry* count:int edge*
+ * entry := name:utf size:long lastModified:long hash:utf length:int descriptor
+ * edge  := from:int groupId:str artifactId:str version:str optional:boolean to:int
+ * str   := present:boolean utf?
+ * </pre>
+ *
+ * Descriptors are in the format written by {@link PluginModelBinaryWriter}, edges refer to entries by position and
+ * {@code to} is {@code -1} for dependencies on plugins missing from the index.
+ *
+ * @since 1.4
+ */
+public class PluginIndex
+{
+  private static final byte[] MAGIC = {'N', 'X', 'P', 'I'};
+
+  private static final int VERSION = 1;
+
+  private static final Comparator<Entry> BY_NAME = new Comparator<Entry>()
+  {
+    public int compare(final Entry a, final Entry b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+
+  private final List<Entry> entries;
+
+  private final List<Edge> edges;
+
+  private final Map<String, Entry> byName;
+
+  /**
+   * Creates an index of the given entries, resolving the dependencies between them.
+   */
+  public PluginIndex(final Collection<Entry> entries) {
+    this.entries = new ArrayList<Entry>(entries);
+    Collections.sort(this.entries, BY_NAME);
+    this.edges = resolveEdges(this.entries);
+    this.byName = byName(this.entries);
+  }
+
+  private PluginIndex(final List<Entry> entries, final List<Edge> edges) {
+    this.entries = entries;
+    this.edges = edges;
+    this.byName = byName(entries);
+  }
+
+  private static Map<String, Entry> byName(final List<Entry> entries) {
+    Map<String, Entry> byName = new HashMap<String, Entry>(entries.size() * 2);
+    for (Entry entry : entries) {
+      byName.put(entry.getName(), entry);
+    }
+    return byName;
+  }
+
+  /**
+   * Returns the entries, sorted by name.
+   */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  public List<Edge> getEdges() {
+    return Collections.unmodifiableList(edges);
+  }
+
+  /**
+   * Returns the entry of the given bundle file name, or {@code null}.
+   */
+  public Entry getEntry(final String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * Resolves plugin dependencies to the plugin with the same coordinates, or else to the first plugin with the same
+   * groupId and artifactId.
+   */
+  private static List<Edge> resolveEdges(final List<Entry> entries) {
+    Map<String, Entry> byGav = new HashMap<String, Entry>();
+    Map<String, Entry> byGa = new HashMap<String, Entry>();
+    for (Entry entry : entries) {
+      PluginMetadata metadata = entry.getMetadata();
+      String ga = metadata.getGroupId() + ":" + metadata.getArtifactId();
+      byGav.put(ga + ":" + metadata.getVersion(), entry);
+      if (!byGa.containsKey(ga)) {
+        byGa.put(ga, entry);
+      }
+    }
+
+    List<Edge> edges = new ArrayList<Edge>();
+    for (Entry entry : entries) {
+      for (PluginDependency dependency : entry.getMetadata().getPluginDependencies()) {
+        String ga = dependency.getGroupId() + ":" + dependency.getArtifactId();
+        Entry target = byGav.get(ga + ":" + dependency.getVersion());
+        if (target == null) {
+          target = byGa.get(ga);
+        }
+        edges.add(new Edge(entry, dependency, target));
+      }
+    }
+    return edges;
+  }
+
+  public void write(final OutputStream output) throws IOException {
+    DataOutputStream out = new DataOutputStream(output);
+    out.write(MAGIC);
+    out.writeInt(VERSION);
+
+    Map<Entry, Integer> positions = new HashMap<Entry, Integer>();
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      positions.put(entry, positions.size());
+      out.writeUTF(entry.getName());
+      out.writeLong(entry.getSize());
+      out.writeLong(entry.getLastModified());
+      out.writeUTF(entry.getHash());
+      ByteArrayOutputStream descriptor = new ByteArrayOutputStream();
+      new PluginModelBinaryWriter().write(descriptor, entry.getMetadata());
+      out.writeInt(descriptor.size());
+      descriptor.writeTo(out);
+    }
+
+    out.writeInt(edges.size());
+    for (Edge edge : edges) {
+      out.writeInt(positions.get(edge.getFrom()));
+      writeString(out, edge.getDependency().getGroupId());
+      writeString(out, edge.getDependency().getArtifactId());
+      writeString(out, edge.getDependency().getVersion());
+      out.writeBoolean(edge.getDependency().isOptional());
+      out.writeInt(edge.getTo() == null ? -1 : positions.get(edge.getTo()));
+    }
+    out.flush();
+  }
+
+  public static PluginIndex read(final InputStream input) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    byte[] magic = new byte[MAGIC.length];
+    in.readFully(magic);
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (magic[i] != MAGIC[i]) {
+        throw new IOException("Not a plugin index");
+      }
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported plugin index version: " + version);
+    }
+
+    int count = in.readInt();
+    List<Entry> entries = new ArrayList<Entry>();
+    for (int i = 0; i < count; i++) {
+      String name = in.readUTF();
+      long size = in.readLong();
+      long lastModified = in.readLong();
+      String hash = in.readUTF();
+      byte[] descriptor = new byte[in.readInt()];
+      in.readFully(descriptor);
+      PluginMetadata metadata = new PluginModelBinaryReader().read(new ByteArrayInputStream(descriptor));
+      entries.add(new Entry(name, size, lastModified, hash, metadata));
+    }
+
+    count = in.readInt();
+    List<Edge> edges = new ArrayList<Edge>();
+    for (int i = 0; i < count; i++) {
+      Entry from = entry(entries, in.readInt());
+      PluginDependency dependency = new PluginDependency();
+      dependency.setGroupId(readString(in));
+      dependency.setArtifactId(readString(in));
+      dependency.setVersion(readString(in));
+      dependency.setOptional(in.readBoolean());
+      int to = in.readInt();
+      edges.add(new Edge(from, dependency, to == -1 ? null : entry(entries, to)));
+    }
+    return new PluginIndex(entries, edges);
+  }
+
+  private static Entry entry(final List<Entry> entries, final int position) throws IOException {
+    if (position < 0 || position >= entries.size()) {
+      throw new IOException("Invalid plugin index entry: " + position);
+    }
+    return entries.get(position);
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * An indexed bundle.
+   */
+  public static class Entry
+  {
+    private final String name;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final String hash;
+
+    private final PluginMetadata metadata;
+
+    /**
+     * @param name         file name of the bundle.
+     * @param size         size of the bundle in bytes.
+     * @param lastModified last modification time of the bundle, as reported by the file system.
+     * @param hash         content hash of the bundle.
+     * @param metadata     descriptor of the plugin in the bundle.
+     */
+    public Entry(final String name, final long size, final long lastModified, final String hash,
+                 final PluginMetadata metadata)
+    {
+      this.name = name;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.metadata = metadata;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    public PluginMetadata getMetadata() {
+      return metadata;
+    }
+  }
+
+  /**
+   * A plugin dependency of an indexed bundle.
+   */
+  public static class Edge
+  {
+    private final Entry from;
+
+    private final PluginDependency dependency;
+
+    private final Entry to;
+
+    public Edge(final Entry from, final PluginDependency dependency, final Entry to) {
+      this.from = from;
+      this.dependency = dependency;
+      this.to = to;
+    }
+
+    public Entry getFrom() {
+      return from;
+    }
+
+    public PluginDependency getDependency() {
+      return dependency;
+    }
+
+    /**
+     * Returns the bundle satisfying the dependency, or {@code null} if it is not in the index.
+     */
+    public Entry getTo() {
+      return to;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.binary;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+
+import static org.sonatype.plugins.model.io.binary.BinaryFormat.*;
+
+/**
+ * Reads {@link PluginMetadata} from the compact binary format described in {@link BinaryFormat}.
+ *
+ * @since 1.4
+ */
+public class PluginModelBinaryReader
+{
+  public PluginMetadata read(final InputStream input) throws IOException {
+    return new Decoder(input).descriptor();
+  }
+
+  private static class Decoder
+  {
+    private final DataInputStream input;
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private Decoder(final InputStream input) {
+      this.input = new DataInputStream(
+          input instanceof BufferedInputStream ? input : new BufferedInputStream(input, 8192));
+    }
+
+    private PluginMetadata descriptor() throws IOException {
+      byte[] magic = new byte[MAGIC.length];
+      input.readFully(magic);
+      for (int i = 0; i < MAGIC.length; i++) {
+        if (magic[i] != MAGIC[i]) {
+          throw new IOException("Not a binary plugin descriptor");
+        }
+      }
+      int version = varint();
+      if (version > VERSION) {
+        throw new IOException("Unsupported binary plugin descriptor version: " + version);
+      }
+      for (int count = varint(); count > 0; count--) {
+        byte[] bytes = new byte[varint()];
+        input.readFully(bytes);
+        strings.add(new String(bytes, "UTF-8"));
+      }
+      return metadata();
+    }
+
+    private PluginMetadata metadata() throws IOException {
+      PluginMetadata metadata = new PluginMetadata();
+      for (int tag = varint(); tag != END; tag = varint()) {
+        switch (tag) {
+          case METADATA_MODEL_VERSION:
+            metadata.setModelVersion(string());
+            break;
+          case METADATA_GROUP_ID:
+            metadata.setGroupId(string());
+            break;
+          case METADATA_ARTIFACT_ID:
+            metadata.setArtifactId(string());
+            break;
+          case METADATA_VERSION:
+            metadata.setVersion(string());
+            break;
+          case METADATA_NAME:
+            metadata.setName(string());
+            break;
+          case METADATA_DESCRIPTION:
+            metadata.setDescription(string());
+            break;
+          case METADATA_PLUGIN_SITE:
+            metadata.setPluginSite(string());
+            break;
+          case METADATA_APPLICATION_ID:
+            metadata.setApplicationId(string());
+            break;
+          case METADATA_APPLICATION_EDITION:
+            metadata.setApplicationEdition(string());
+            break;
+          case METADATA_APPLICATION_MIN_VERSION:
+            metadata.setApplicationMinVersion(string());
+            break;
+          case METADATA_APPLICATION_MAX_VERSION:
+            metadata.setApplicationMaxVersion(string());
+            break;
+          case METADATA_SCM_URI:
+            metadata.setScmUri(string());
+            break;
+          case METADATA_SCM_VERSION:
+            metadata.setScmVersion(string());
+            break;
+          case METADATA_SCM_TIMESTAMP:
+            metadata.setScmTimestamp(string());
+            break;
+          case METADATA_MODEL_ENCODING:
+            metadata.setModelEncoding(string());
+            break;
+          case METADATA_LICENSES:
+            for (int count = varint(); count > 0; count--) {
+              metadata.addLicense(license());
+            }
+            break;
+          case METADATA_CLASSPATH_DEPENDENCIES:
+            for (int count = varint(); count > 0; count--) {
+              metadata.addClasspathDependency(classpathDependency());
+            }
+            break;
+          case METADATA_PLUGIN_DEPENDENCIES:
+            for (int count = varint(); count > 0; count--) {
+              metadata.addPluginDependency(pluginDependency());
+            }
+            break;
+          default:
+            skip(tag);
+        }
+      }
+      return metadata;
+    }
+
+    private PluginLicense license() throws IOException {
+      PluginLicense license = new PluginLicense();
+      for (int tag = varint(); tag != END; tag = varint()) {
+        switch (tag) {
+          case LICENSE_TYPE:
+            license.setType(string());
+            break;
+          case LICENSE_URL:
+            license.setUrl(string());
+            break;
+          default:
+            skip(tag);
+        }
+      }
+      return license;
+    }
+
+    private ClasspathDependency classpathDependency() throws IOException {
+      ClasspathDependency dependency = new ClasspathDependency();
+      for (int tag = varint(); tag != END; tag = varint()) {
+        switch (tag) {
+          case CLASSPATH_GROUP_ID:
+            dependency.setGroupId(string());
+            break;
+          case CLASSPATH_ARTIFACT_ID:
+            dependency.setArtifactId(string());
+            break;
+          case CLASSPATH_VERSION:
+            dependency.setVersion(string());
+            break;
+          case CLASSPATH_CLASSIFIER:
+            dependency.setClassifier(string());
+            break;
+          case CLASSPATH_TYPE:
+            dependency.setType(string());
+            break;
+          case CLASSPATH_HAS_COMPONENTS:
+            dependency.setHasComponents(varint() != 0);
+            break;
+          case CLASSPATH_SHARED:
+            dependency.setShared(varint() != 0);
+            break;
+          case CLASSPATH_PACKAGE_NAME:
+            dependency.addPackageName(string());
+            break;
+          case CLASSPATH_SHA256:
+            dependency.setSha256(string());
+            break;
+          case CLASSPATH_SIZE:
+            dependency.setSize(varlong());
+            break;
+          default:
+            skip(tag);
+        }
+      }
+      return dependency;
+    }
+
+    private PluginDependency pluginDependency() throws IOException {
+      PluginDependency dependency = new PluginDependency();
+      for (int tag = varint(); tag != END; tag = varint()) {
+        switch (tag) {
+          case PLUGIN_DEPENDENCY_GROUP_ID:
+            dependency.setGroupId(string());
+            break;
+          case PLUGIN_DEPENDENCY_ARTIFACT_ID:
+            dependency.setArtifactId(string());
+            break;
+          case PLUGIN_DEPENDENCY_VERSION:
+            dependency.setVersion(string());
+            break;
+          case PLUGIN_DEPENDENCY_OPTIONAL:
+            dependency.setOptional(varint() != 0);
+            break;
+          default:
+            skip(tag);
+        }
+      }
+      return dependency;
+    }
+
+    /**
+     * Skips the value of a field this reader does not know.
+     */
+    private void skip(final int tag) throws IOException {
+      switch (tag & WIRE_TYPE_MASK) {
+        case VARINT:
+          varlong();
+          break;
+        case RECORDS:
+          for (int count = varint(); count > 0; count--) {
+            for (int field = varint(); field != END; field = varint()) {
+              skip(field);
+            }
+          }
+          break;
+        default:
+          throw new IOException("Unknown wire type of tag: " + tag);
+      }
+    }
+
+    private String string() throws IOException {
+      int index = varint();
+      if (index >= strings.size()) {
+        throw new IOException("Invalid string index: " + index);
+      }
+      return strings.get(index);
+    }
+
+    private int varint() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = input.read();
+        if (b == -1) {
+          throw new EOFException();
+        }
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0 && value >= 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    private long varlong() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = input.read();
+        if (b == -1) {
+          throw new EOFException();
+        }
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+  }
+}
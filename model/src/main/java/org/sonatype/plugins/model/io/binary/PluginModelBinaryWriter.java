@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+
+import static org.sonatype.plugins.model.io.binary.BinaryFormat.*;
+
+/**
+ * Writes {@link PluginMetadata} in the compact binary format described in {@link BinaryFormat}.
+ *
+ * @since 1.4
+ */
+public class PluginModelBinaryWriter
+{
+  public void write(final OutputStream output, final PluginMetadata metadata) throws IOException {
+    Encoder body = new Encoder();
+    body.metadata(metadata);
+
+    Encoder header = new Encoder();
+    header.bytes(MAGIC);
+    header.varint(VERSION);
+    header.varint(body.strings.size());
+    for (String string : body.strings.keySet()) {
+      byte[] bytes = string.getBytes("UTF-8");
+      header.varint(bytes.length);
+      header.bytes(bytes);
+    }
+
+    header.buff.writeTo(output);
+    body.buff.writeTo(output);
+    output.flush();
+  }
+
+  /**
+   * Encodes records into a buffer, collecting the string table as it goes.
+   */
+  private static class Encoder
+  {
+    private final ByteArrayOutputStream buff = new ByteArrayOutputStream(1024);
+
+    private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+    private void metadata(final PluginMetadata metadata) {
+      string(METADATA_MODEL_VERSION, metadata.getModelVersion());
+      string(METADATA_GROUP_ID, metadata.getGroupId());
+      string(METADATA_ARTIFACT_ID, metadata.getArtifactId());
+      string(METADATA_VERSION, metadata.getVersion());
+      string(METADATA_NAME, metadata.getName());
+      string(METADATA_DESCRIPTION, metadata.getDescription());
+      string(METADATA_PLUGIN_SITE, metadata.getPluginSite());
+      string(METADATA_APPLICATION_ID, metadata.getApplicationId());
+      string(METADATA_APPLICATION_EDITION, metadata.getApplicationEdition());
+      string(METADATA_APPLICATION_MIN_VERSION, metadata.getApplicationMinVersion());
+      string(METADATA_APPLICATION_MAX_VERSION, metadata.getApplicationMaxVersion());
+      string(METADATA_SCM_URI, metadata.getScmUri());
+      string(METADATA_SCM_VERSION, metadata.getScmVersion());
+      string(METADATA_SCM_TIMESTAMP, metadata.getScmTimestamp());
+      string(METADATA_MODEL_ENCODING, metadata.getModelEncoding());
+
+      List<PluginLicense> licenses = metadata.getLicenses();
+      if (!licenses.isEmpty()) {
+        tag(METADATA_LICENSES);
+        varint(licenses.size());
+        for (PluginLicense license : licenses) {
+          string(LICENSE_TYPE, license.getType());
+          string(LICENSE_URL, license.getUrl());
+          varint(END);
+        }
+      }
+
+      List<ClasspathDependency> classpathDependencies = metadata.getClasspathDependencies();
+      if (!classpathDependencies.isEmpty()) {
+        tag(METADATA_CLASSPATH_DEPENDENCIES);
+        varint(classpathDependencies.size());
+        for (ClasspathDependency dependency : classpathDependencies) {
+          string(CLASSPATH_GROUP_ID, dependency.getGroupId());
+          string(CLASSPATH_ARTIFACT_ID, dependency.getArtifactId());
+          string(CLASSPATH_VERSION, dependency.getVersion());
+          string(CLASSPATH_CLASSIFIER, dependency.getClassifier());
+          string(CLASSPATH_TYPE, dependency.getType());
+          bool(CLASSPATH_HAS_COMPONENTS, dependency.isHasComponents());
+          bool(CLASSPATH_SHARED, dependency.isShared());
+          for (String packageName : dependency.getPackageNames()) {
+            string(CLASSPATH_PACKAGE_NAME, packageName);
+          }
+          string(CLASSPATH_SHA256, dependency.getSha256());
+          if (dependency.getSize() >= 0) {
+            tag(CLASSPATH_SIZE);
+            varlong(dependency.getSize());
+          }
+          varint(END);
+        }
+      }
+
+      List<PluginDependency> pluginDependencies = metadata.getPluginDependencies();
+      if (!pluginDependencies.isEmpty()) {
+        tag(METADATA_PLUGIN_DEPENDENCIES);
+        varint(pluginDependencies.size());
+        for (PluginDependency dependency : pluginDependencies) {
+          string(PLUGIN_DEPENDENCY_GROUP_ID, dependency.getGroupId());
+          string(PLUGIN_DEPENDENCY_ARTIFACT_ID, dependency.getArtifactId());
+          string(PLUGIN_DEPENDENCY_VERSION, dependency.getVersion());
+          bool(PLUGIN_DEPENDENCY_OPTIONAL, dependency.isOptional());
+          varint(END);
+        }
+      }
+
+      varint(END);
+    }
+
+    private void string(final int tag, final String value) {
+      if (value == null) {
+        return;
+      }
+      Integer index = strings.get(value);
+      if (index == null) {
+        index = strings.size();
+        strings.put(value, index);
+      }
+      tag(tag);
+      varint(index);
+    }
+
+    private void bool(final int tag, final boolean value) {
+      if (value) {
+        tag(tag);
+        varint(1);
+      }
+    }
+
+    private void tag(final int tag) {
+      varint(tag);
+    }
+
+    private void varint(int value) {
+      while ((value & ~0x7F) != 0) {
+        buff.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buff.write(value);
+    }
+
+    private void varlong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        buff.write((int) (value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buff.write((int) value);
+    }
+
+    private void bytes(final byte[] bytes) {
+      buff.write(bytes, 0, bytes.length);
+    }
+  }
+}
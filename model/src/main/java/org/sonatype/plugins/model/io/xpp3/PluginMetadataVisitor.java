@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.xpp3;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+
+/**
+ * Receives the content of a plugin descriptor from {@link PluginModelXpp3StreamReader}, in document order.
+ *
+ * All methods do nothing by default, so implementations only override what they need. The reader stops as soon as
+ * {@link #isDone()} returns {@code true}.
+ *
+ * @since 1.4
+ */
+public abstract class PluginMetadataVisitor
+{
+  /**
+   * Visits a simple property of the plugin, eg. {@code groupId}.
+   */
+  public void visitProperty(final String name, final String value) {
+    // empty
+  }
+
+  /**
+   * Visits the start of a list, see {@link PluginModelXpp3StreamReader#LICENSES},
+   * {@link PluginModelXpp3StreamReader#CLASSPATH_DEPENDENCIES} and
+   * {@link PluginModelXpp3StreamReader#PLUGIN_DEPENDENCIES}.
+   *
+   * @return {@code false} to skip the entries of the list without creating them.
+   */
+  public boolean visitSection(final String name) {
+    return true;
+  }
+
+  /**
+   * Visits the end of a list whose entries were visited.
+   */
+  public void visitSectionEnd(final String name) {
+    // empty
+  }
+
+  public void visitLicense(final PluginLicense license) {
+    // empty
+  }
+
+  public void visitClasspathDependency(final ClasspathDependency dependency) {
+    // empty
+  }
+
+  public void visitPluginDependency(final PluginDependency dependency) {
+    // empty
+  }
+
+  /**
+   * @return {@code true} when the rest of the descriptor is not needed.
+   */
+  public boolean isDone() {
+    return false;
+  }
+}
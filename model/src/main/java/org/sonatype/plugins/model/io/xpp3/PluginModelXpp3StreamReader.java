@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.xpp3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import static org.codehaus.plexus.util.xml.pull.XmlPullParser.END_TAG;
+import static org.codehaus.plexus.util.xml.pull.XmlPullParser.START_TAG;
+
+/**
+ * Streaming reader of plugin descriptors, handing their content to a {@link PluginMetadataVisitor} instead of
+ * building the whole model like {@link PluginModelXpp3Reader} does.
+ *
+ * Skipped lists are only tokenized, and reading stops as soon as the visitor is done, so callers that only need
+ * the coordinates or the plugin dependencies of many descriptors do not pay for their classpath. Unknown elements
+ * are ignored.
+ *
+ * @since 1.4
+ */
+public class PluginModelXpp3StreamReader
+{
+  public static final String LICENSES = "licenses";
+
+  public static final String CLASSPATH_DEPENDENCIES = "classpathDependencies";
+
+  public static final String PLUGIN_DEPENDENCIES = "pluginDependencies";
+
+  private static final Set<String> PROPERTIES = new HashSet<String>(Arrays.asList(
+      "modelVersion", "groupId", "artifactId", "version", "name", "description", "pluginSite", "applicationId",
+      "applicationEdition", "applicationMinVersion", "applicationMaxVersion", "scmUri", "scmVersion", "scmTimestamp"
+  ));
+
+  /**
+   * @return {@code true} if the whole descriptor was read, {@code false} if the visitor stopped early.
+   */
+  public boolean read(final Reader reader, final PluginMetadataVisitor visitor)
+      throws IOException, XmlPullParserException
+  {
+    XmlPullParser parser = new MXParser();
+    parser.setInput(reader);
+
+    if (parser.nextTag() != START_TAG || !"plugin".equals(parser.getName())) {
+      throw new XmlPullParserException("Expected root element 'plugin' but found '" + parser.getName() + "'",
+          parser, null);
+    }
+
+    while (parser.nextTag() == START_TAG) {
+      String name = parser.getName();
+      if (PROPERTIES.contains(name)) {
+        visitor.visitProperty(name, parser.nextText().trim());
+      }
+      else if (LICENSES.equals(name) || CLASSPATH_DEPENDENCIES.equals(name) || PLUGIN_DEPENDENCIES.equals(name)) {
+        if (!visitor.visitSection(name)) {
+          if (visitor.isDone()) {
+            return false;
+          }
+          skip(parser);
+          continue;
+        }
+        while (parser.nextTag() == START_TAG) {
+          String entry = parser.getName();
+          if (LICENSES.equals(name) && "license".equals(entry)) {
+            visitor.visitLicense(parseLicense(parser));
+          }
+          else if (CLASSPATH_DEPENDENCIES.equals(name) && "classpathDependency".equals(entry)) {
+            visitor.visitClasspathDependency(parseClasspathDependency(parser));
+          }
+          else if (PLUGIN_DEPENDENCIES.equals(name) && "pluginDependency".equals(entry)) {
+            visitor.visitPluginDependency(parsePluginDependency(parser));
+          }
+          else {
+            skip(parser);
+          }
+          if (visitor.isDone()) {
+            return false;
+          }
+        }
+        visitor.visitSectionEnd(name);
+      }
+      else {
+        skip(parser);
+      }
+      if (visitor.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @see ReaderFactory#newXmlReader
+   */
+  public boolean read(final InputStream in, final PluginMetadataVisitor visitor)
+      throws IOException, XmlPullParserException
+  {
+    return read(ReaderFactory.newXmlReader(in), visitor);
+  }
+
+  /**
+   * Reads the properties of the plugin and the given lists only, stopping once all of them were read. Without any
+   * lists, reading stops at the first list.
+   *
+   * This relies on the properties preceding the lists, as in all descriptors written by {@link
+   * PluginModelXpp3Writer}.
+   */
+  public PluginMetadata read(final Reader reader, final Collection<String> sections)
+      throws IOException, XmlPullParserException
+  {
+    SelectingVisitor visitor = new SelectingVisitor(sections);
+    read(reader, visitor);
+    return visitor.metadata;
+  }
+
+  /**
+   * @see ReaderFactory#newXmlReader
+   */
+  public PluginMetadata read(final InputStream in, final Collection<String> sections)
+      throws IOException, XmlPullParserException
+  {
+    return read(ReaderFactory.newXmlReader(in), sections);
+  }
+
+  private static PluginLicense parseLicense(final XmlPullParser parser) throws IOException, XmlPullParserException {
+    PluginLicense license = new PluginLicense();
+    while (parser.nextTag() == START_TAG) {
+      String name = parser.getName();
+      if ("type".equals(name)) {
+        license.setType(parser.nextText().trim());
+      }
+      else if ("url".equals(name)) {
+        license.setUrl(parser.nextText().trim());
+      }
+      else {
+        skip(parser);
+      }
+    }
+    return license;
+  }
+
+  private static ClasspathDependency parseClasspathDependency(final XmlPullParser parser)
+      throws IOException, XmlPullParserException
+  {
+    ClasspathDependency dependency = new ClasspathDependency();
+    while (parser.nextTag() == START_TAG) {
+      String name = parser.getName();
+      if ("groupId".equals(name)) {
+        dependency.setGroupId(parser.nextText().trim());
+      }
+      else if ("artifactId".equals(name)) {
+        dependency.setArtifactId(parser.nextText().trim());
+      }
+      else if ("version".equals(name)) {
+        dependency.setVersion(parser.nextText().trim());
+      }
+      else if ("classifier".equals(name)) {
+        dependency.setClassifier(parser.nextText().trim());
+      }
+      else if ("type".equals(name)) {
+        dependency.setType(parser.nextText().trim());
+      }
+      else if ("hasComponents".equals(name)) {
+        dependency.setHasComponents(Boolean.valueOf(parser.nextText().trim()));
+      }
+      else if ("shared".equals(name)) {
+        dependency.setShared(Boolean.valueOf(parser.nextText().trim()));
+      }
+      else if ("packageNames".equals(name)) {
+        while (parser.nextTag() == START_TAG) {
+          if ("packageName".equals(parser.getName())) {
+            dependency.addPackageName(parser.nextText().trim());
+          }
+          else {
+            skip(parser);
+          }
+        }
+      }
+      else if ("sha256".equals(name)) {
+        dependency.setSha256(parser.nextText().trim());
+      }
+      else if ("size".equals(name)) {
+        String size = parser.nextText().trim();
+        try {
+          dependency.setSize(Long.parseLong(size));
+        }
+        catch (NumberFormatException e) {
+          throw new XmlPullParserException("Invalid size of classpath dependency: " + size, parser, e);
+        }
+      }
+      else {
+        skip(parser);
+      }
+    }
+    return dependency;
+  }
+
+  private static PluginDependency parsePluginDependency(final XmlPullParser parser)
+      throws IOException, XmlPullParserException
+  {
+    PluginDependency dependency = new PluginDependency();
+    while (parser.nextTag() == START_TAG) {
+      String name = parser.getName();
+      if ("groupId".equals(name)) {
+        dependency.setGroupId(parser.nextText().trim());
+      }
+      else if ("artifactId".equals(name)) {
+        dependency.setArtifactId(parser.nextText().trim());
+      }
+      else if ("version".equals(name)) {
+        dependency.setVersion(parser.nextText().trim());
+      }
+      else if ("optional".equals(name)) {
+        dependency.setOptional(Boolean.valueOf(parser.nextText().trim()));
+      }
+      else {
+        skip(parser);
+      }
+    }
+    return dependency;
+  }
+
+  /**
+   * Moves past the end of the current element without looking at its content.
+   */
+  private static void skip(final XmlPullParser parser) throws IOException, XmlPullParserException {
+    for (int depth = 1; depth > 0; ) {
+      int eventType = parser.next();
+      if (eventType == START_TAG) {
+        depth++;
+      }
+      else if (eventType == END_TAG) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Builds the metadata from the properties and the selected lists.
+   */
+  private static class SelectingVisitor
+      extends PluginMetadataVisitor
+  {
+    private final PluginMetadata metadata = new PluginMetadata();
+
+    private final Set<String> sections;
+
+    private final Set<String> remaining;
+
+    private boolean done;
+
+    private SelectingVisitor(final Collection<String> sections) {
+      this.sections = new HashSet<String>(sections);
+      this.remaining = new HashSet<String>(sections);
+    }
+
+    @Override
+    public void visitProperty(final String name, final String value) {
+      if ("modelVersion".equals(name)) {
+        metadata.setModelVersion(value);
+      }
+      else if ("groupId".equals(name)) {
+        metadata.setGroupId(value);
+      }
+      else if ("artifactId".equals(name)) {
+        metadata.setArtifactId(value);
+      }
+      else if ("version".equals(name)) {
+        metadata.setVersion(value);
+      }
+      else if ("name".equals(name)) {
+        metadata.setName(value);
+      }
+      else if ("description".equals(name)) {
+        metadata.setDescription(value);
+      }
+      else if ("pluginSite".equals(name)) {
+        metadata.setPluginSite(value);
+      }
+      else if ("applicationId".equals(name)) {
+        metadata.setApplicationId(value);
+      }
+      else if ("applicationEdition".equals(name)) {
+        metadata.setApplicationEdition(value);
+      }
+      else if ("applicationMinVersion".equals(name)) {
+        metadata.setApplicationMinVersion(value);
+      }
+      else if ("applicationMaxVersion".equals(name)) {
+        metadata.setApplicationMaxVersion(value);
+      }
+      else if ("scmUri".equals(name)) {
+        metadata.setScmUri(value);
+      }
+      else if ("scmVersion".equals(name)) {
+        metadata.setScmVersion(value);
+      }
+      else if ("scmTimestamp".equals(name)) {
+        metadata.setScmTimestamp(value);
+      }
+    }
+
+    @Override
+    public boolean visitSection(final String name) {
+      done = remaining.isEmpty();
+      return !done && sections.contains(name);
+    }
+
+    @Override
+    public void visitSectionEnd(final String name) {
+      remaining.remove(name);
+      done = remaining.isEmpty();
+    }
+
+    @Override
+    public void visitLicense(final PluginLicense license) {
+      metadata.addLicense(license);
+    }
+
+    @Override
+    public void visitClasspathDependency(final ClasspathDependency dependency) {
+      metadata.addClasspathDependency(dependency);
+    }
+
+    @Override
+    public void visitPluginDependency(final PluginDependency dependency) {
+      metadata.addPluginDependency(dependency);
+    }
+
+    @Override
+    public boolean isDone() {
+      return done;
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.binary.PluginModelBinaryWriter;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Reader;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Writer;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PluginMetadataLoader}.
+ */
+public class PluginMetadataLoaderTest
+    extends TestSupport
+{
+  private static final int PLUGINS = 200;
+
+  /**
+   * Compares the heap actually in use after garbage collection while holding the descriptors of a deployment, read
+   * plainly and through the loader (including its tables). The statistics of the loader are only an estimate.
+   */
+  @Test
+  public void retainsLessHeapForDeployment() throws Exception {
+    List<byte[]> descriptors = deployment();
+    long base = usedHeap();
+
+    List<PluginMetadata> plain = new ArrayList<PluginMetadata>();
+    for (byte[] descriptor : descriptors) {
+      plain.add(new PluginModelXpp3Reader().read(new ByteArrayInputStream(descriptor)));
+    }
+    long plainBytes = usedHeap() - base;
+
+    PluginMetadataLoader loader = new PluginMetadataLoader();
+    List<PluginMetadata> lean = new ArrayList<PluginMetadata>();
+    for (byte[] descriptor : descriptors) {
+      lean.add(loader.readXml(new ByteArrayInputStream(descriptor)));
+    }
+    long leanBytes = usedHeap() - base - plainBytes;
+
+    PluginMetadataLoader.Statistics statistics = loader.getStatistics();
+    log(statistics);
+    log("retained " + plainBytes / 1024 + " KiB plain, " + leanBytes / 1024 + " KiB with loader");
+
+    assertThat(statistics.getDescriptors(), is(PLUGINS));
+    assertThat(statistics.getSavedBytes() > 0, is(true));
+    assertThat(leanBytes * 4 < plainBytes, is(true));
+
+    // nothing was lost
+    for (int i = 0; i < PLUGINS; i++) {
+      assertThat(toXml(lean.get(i)), is(toXml(plain.get(i))));
+    }
+  }
+
+  @Test
+  public void sharesRecordsAcrossDescriptors() throws Exception {
+    List<byte[]> descriptors = deployment();
+    PluginMetadataLoader loader = new PluginMetadataLoader();
+
+    PluginMetadata first = loader.readXml(new ByteArrayInputStream(descriptors.get(0)));
+    PluginMetadata second = loader.readXml(new ByteArrayInputStream(descriptors.get(1)));
+
+    assertThat(second.getLicenses().get(0), sameInstance(first.getLicenses().get(0)));
+    assertThat(second.getGroupId(), sameInstance(first.getGroupId()));
+    assertThat(second.getClasspathDependencies(), is(not(sameInstance(first.getClasspathDependencies()))));
+  }
+
+  @Test
+  public void readsBinaryDescriptors() throws Exception {
+    PluginMetadataLoader loader = new PluginMetadataLoader();
+    byte[] xml = deployment().get(0);
+    PluginMetadata metadata = new PluginModelXpp3Reader().read(new ByteArrayInputStream(xml));
+    ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    new PluginModelBinaryWriter().write(binary, metadata);
+
+    PluginMetadata fromXml = loader.readXml(new ByteArrayInputStream(xml));
+    PluginMetadata fromBinary = loader.readBinary(new ByteArrayInputStream(binary.toByteArray()));
+
+    assertThat(toXml(fromBinary), is(toXml(fromXml)));
+    assertThat(fromBinary.getClasspathDependencies().get(0), sameInstance(fromXml.getClasspathDependencies().get(0)));
+  }
+
+  @Test
+  public void sharedRecordsCanNotBeChanged() throws Exception {
+    PluginMetadata metadata = new PluginMetadataLoader().readXml(new ByteArrayInputStream(deployment().get(5)));
+
+    try {
+      metadata.getClasspathDependencies().get(0).setVersion("2.0");
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      metadata.getClasspathDependencies().get(0).addPackageName("org.example.other");
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      metadata.getClasspathDependencies().get(0).setSize(0);
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      metadata.getPluginDependencies().get(0).setOptional(true);
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+
+    // the descriptor itself still can
+    metadata.setVersion("2.0");
+    metadata.getClasspathDependencies().clear();
+    assertThat(metadata.getVersion(), is("2.0"));
+  }
+
+  /**
+   * Descriptors of plugins using a common pool of libraries, as in a typical distribution.
+   */
+  private static List<byte[]> deployment() throws Exception {
+    Random random = new Random(42);
+    List<byte[]> descriptors = new ArrayList<byte[]>();
+    for (int i = 0; i < PLUGINS; i++) {
+      PluginMetadata metadata = new PluginMetadata();
+      metadata.setGroupId("org.sonatype.nexus.plugins");
+      metadata.setArtifactId("nexus-plugin-" + i);
+      metadata.setVersion("2.4.0-SNAPSHOT");
+      metadata.setName("Nexus Plugin " + i);
+      metadata.setApplicationId("nexus");
+      metadata.setScmUri("scm:git:git@github.com:sonatype/nexus-oss.git");
+      metadata.setScmVersion("0123456789abcdef0123456789abcdef01234567");
+
+      PluginLicense license = new PluginLicense();
+      license.setType("ASL2");
+      license.setUrl("http://www.apache.org/licenses/LICENSE-2.0.html");
+      metadata.addLicense(license);
+
+      for (int j = 0; j < 30; j++) {
+        int library = random.nextInt(100);
+        ClasspathDependency dependency = new ClasspathDependency();
+        dependency.setGroupId("org.example.group" + library % 10);
+        dependency.setArtifactId("library-" + library);
+        dependency.setVersion("1." + library % 3 + ".0");
+        dependency.setType("jar");
+        dependency.setShared(library % 7 == 0);
+        dependency.addPackageName("org.example.library" + library);
+        metadata.addClasspathDependency(dependency);
+      }
+
+      for (int j = 0; j < 3 && j < i; j++) {
+        PluginDependency dependency = new PluginDependency();
+        dependency.setGroupId("org.sonatype.nexus.plugins");
+        dependency.setArtifactId("nexus-plugin-" + random.nextInt(i));
+        dependency.setVersion("2.4.0-SNAPSHOT");
+        metadata.addPluginDependency(dependency);
+      }
+
+      ByteArrayOutputStream buff = new ByteArrayOutputStream();
+      new PluginModelXpp3Writer().write(buff, metadata);
+      descriptors.add(buff.toByteArray());
+    }
+    return descriptors;
+  }
+
+  /**
+   * Returns the heap in use after requesting garbage collection a few times, taking the lowest reading.
+   */
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(20);
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+
+  private static String toXml(final PluginMetadata metadata) throws Exception {
+    StringWriter writer = new StringWriter();
+    new PluginModelXpp3Writer().write(writer, metadata);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.plugins.model.io.xpp3.PluginModelXpp3Writer;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PluginModelBinaryReader} and {@link PluginModelBinaryWriter}.
+ */
+public class PluginModelBinaryReaderTest
+    extends TestSupport
+{
+  @Test
+  public void roundTripEveryField() throws Exception {
+    PluginMetadata metadata = new PluginMetadata();
+    metadata.setModelVersion("1.0.0");
+    metadata.setModelEncoding("ISO-8859-1");
+    metadata.setGroupId("org.example");
+    metadata.setArtifactId("example-plugin");
+    metadata.setVersion("1.0");
+    metadata.setName("Example Plugin");
+    metadata.setDescription("An example plugin \u00e9\u4e2d\ud83d\ude00");
+    metadata.setPluginSite("http://example.org/plugin");
+    metadata.setApplicationId("nexus");
+    metadata.setApplicationEdition("OSS");
+    metadata.setApplicationMinVersion("2.0");
+    metadata.setApplicationMaxVersion("3.0");
+    metadata.setScmUri("scm:git:git://example.org/plugin.git");
+    metadata.setScmVersion("0123456789abcdef");
+    metadata.setScmTimestamp("2013-01-02 10:00 +0100");
+
+    PluginLicense license = new PluginLicense();
+    license.setType("ASL2");
+    license.setUrl("http://www.apache.org/licenses/LICENSE-2.0");
+    metadata.addLicense(license);
+    metadata.addLicense(new PluginLicense());
+
+    ClasspathDependency lib = new ClasspathDependency();
+    lib.setGroupId("org.example");
+    lib.setArtifactId("example-lib");
+    lib.setVersion("1.0");
+    lib.setClassifier("tests");
+    lib.setType("test-jar");
+    lib.setHasComponents(true);
+    lib.setShared(true);
+    lib.addPackageName("org.example.lib");
+    lib.addPackageName("org.example.lib.internal");
+    lib.setSha256("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    lib.setSize(5000000000L);
+    metadata.addClasspathDependency(lib);
+    ClasspathDependency plain = new ClasspathDependency();
+    plain.setGroupId("org.example");
+    plain.setArtifactId("example-plain");
+    plain.setVersion("1.0");
+    metadata.addClasspathDependency(plain);
+
+    PluginDependency optional = new PluginDependency();
+    optional.setGroupId("org.example");
+    optional.setArtifactId("other-plugin");
+    optional.setVersion("1.0");
+    optional.setOptional(true);
+    metadata.addPluginDependency(optional);
+    PluginDependency required = new PluginDependency();
+    required.setGroupId("org.example");
+    required.setArtifactId("required-plugin");
+    required.setVersion("2.0");
+    metadata.addPluginDependency(required);
+
+    PluginMetadata read = roundTrip(metadata);
+
+    assertThat(read.getModelVersion(), is("1.0.0"));
+    assertThat(read.getModelEncoding(), is("ISO-8859-1"));
+    assertThat(read.getGroupId(), is("org.example"));
+    assertThat(read.getArtifactId(), is("example-plugin"));
+    assertThat(read.getVersion(), is("1.0"));
+    assertThat(read.getName(), is("Example Plugin"));
+    assertThat(read.getDescription(), is("An example plugin \u00e9\u4e2d\ud83d\ude00"));
+    assertThat(read.getPluginSite(), is("http://example.org/plugin"));
+    assertThat(read.getApplicationId(), is("nexus"));
+    assertThat(read.getApplicationEdition(), is("OSS"));
+    assertThat(read.getApplicationMinVersion(), is("2.0"));
+    assertThat(read.getApplicationMaxVersion(), is("3.0"));
+    assertThat(read.getScmUri(), is("scm:git:git://example.org/plugin.git"));
+    assertThat(read.getScmVersion(), is("0123456789abcdef"));
+    assertThat(read.getScmTimestamp(), is("2013-01-02 10:00 +0100"));
+
+    assertThat(read.getLicenses().size(), is(2));
+    assertThat(read.getLicenses().get(0).getType(), is("ASL2"));
+    assertThat(read.getLicenses().get(0).getUrl(), is("http://www.apache.org/licenses/LICENSE-2.0"));
+    assertThat(read.getLicenses().get(1).getType(), nullValue());
+    assertThat(read.getLicenses().get(1).getUrl(), nullValue());
+
+    assertThat(read.getClasspathDependencies().size(), is(2));
+    ClasspathDependency readLib = read.getClasspathDependencies().get(0);
+    assertThat(readLib.getGroupId(), is("org.example"));
+    assertThat(readLib.getArtifactId(), is("example-lib"));
+    assertThat(readLib.getVersion(), is("1.0"));
+    assertThat(readLib.getClassifier(), is("tests"));
+    assertThat(readLib.getType(), is("test-jar"));
+    assertThat(readLib.isHasComponents(), is(true));
+    assertThat(readLib.isShared(), is(true));
+    assertThat(readLib.getPackageNames(), is(Arrays.asList("org.example.lib", "org.example.lib.internal")));
+    assertThat(readLib.getSha256(), is("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
+    assertThat(readLib.getSize(), is(5000000000L));
+    ClasspathDependency readPlain = read.getClasspathDependencies().get(1);
+    assertThat(readPlain.getArtifactId(), is("example-plain"));
+    assertThat(readPlain.getClassifier(), nullValue());
+    assertThat(readPlain.getType(), nullValue());
+    assertThat(readPlain.isHasComponents(), is(false));
+    assertThat(readPlain.isShared(), is(false));
+    assertThat(readPlain.getPackageNames().isEmpty(), is(true));
+    assertThat(readPlain.getSha256(), nullValue());
+    assertThat(readPlain.getSize(), is(-1L));
+
+    assertThat(read.getPluginDependencies().size(), is(2));
+    PluginDependency readOptional = read.getPluginDependencies().get(0);
+    assertThat(readOptional.getGroupId(), is("org.example"));
+    assertThat(readOptional.getArtifactId(), is("other-plugin"));
+    assertThat(readOptional.getVersion(), is("1.0"));
+    assertThat(readOptional.isOptional(), is(true));
+    assertThat(read.getPluginDependencies().get(1).getArtifactId(), is("required-plugin"));
+    assertThat(read.getPluginDependencies().get(1).isOptional(), is(false));
+
+    // and nothing the XML descriptor carries got lost on the way
+    assertThat(toXml(read), is(toXml(metadata)));
+  }
+
+  @Test
+  public void emptyMetadata() throws Exception {
+    PluginMetadata metadata = new PluginMetadata();
+    metadata.setModelVersion(null);
+
+    PluginMetadata read = roundTrip(metadata);
+
+    // absent fields keep their model defaults
+    assertThat(read.getModelVersion(), is(new PluginMetadata().getModelVersion()));
+    assertThat(read.getGroupId(), nullValue());
+    assertThat(read.getLicenses().isEmpty(), is(true));
+    assertThat(read.getClasspathDependencies().isEmpty(), is(true));
+    assertThat(read.getPluginDependencies().isEmpty(), is(true));
+  }
+
+  @Test
+  public void stringsAreWrittenOnce() throws Exception {
+    PluginMetadata metadata = new PluginMetadata();
+    for (int i = 0; i < 100; i++) {
+      ClasspathDependency dependency = new ClasspathDependency();
+      dependency.setGroupId("org.example.some.long.group.id");
+      dependency.setArtifactId("lib-" + i);
+      dependency.setVersion("1.0.0-SNAPSHOT");
+      metadata.addClasspathDependency(dependency);
+    }
+
+    byte[] bytes = write(metadata);
+
+    assertThat(bytes.length < 1500, is(true));
+    assertThat(read(bytes).getClasspathDependencies().get(99).getGroupId(), is("org.example.some.long.group.id"));
+  }
+
+  @Test
+  public void unknownFieldsAreSkipped() throws Exception {
+    ByteArrayOutputStream buff = new ByteArrayOutputStream();
+    buff.write(BinaryFormat.MAGIC);
+    buff.write(BinaryFormat.VERSION);
+    // string table
+    buff.write(2);
+    buff.write(1);
+    buff.write('a');
+    buff.write(1);
+    buff.write('b');
+    // unknown varint field 100, with a two byte tag and value
+    buff.write(0xA0);
+    buff.write(0x06);
+    buff.write(0xFF);
+    buff.write(0x01);
+    // unknown records field 99 holding one record with a nested unknown records field
+    buff.write(0x99);
+    buff.write(0x06);
+    buff.write(1);
+    buff.write(BinaryFormat.METADATA_LICENSES);
+    buff.write(1);
+    buff.write(BinaryFormat.LICENSE_TYPE);
+    buff.write(0);
+    buff.write(BinaryFormat.END);
+    buff.write(BinaryFormat.END);
+    // known field after the unknown ones
+    buff.write(BinaryFormat.METADATA_GROUP_ID);
+    buff.write(1);
+    // known field number with an unexpected wire type
+    buff.write(BinaryFormat.METADATA_ARTIFACT_ID | BinaryFormat.RECORDS);
+    buff.write(0);
+    buff.write(BinaryFormat.END);
+
+    PluginMetadata read = read(buff.toByteArray());
+
+    assertThat(read.getGroupId(), is("b"));
+    assertThat(read.getArtifactId(), nullValue());
+    assertThat(read.getLicenses().isEmpty(), is(true));
+  }
+
+  @Test
+  public void rejectsOtherContent() throws Exception {
+    assertInvalid("<plugin/>".getBytes("UTF-8"));
+    assertInvalid(new byte[]{'N', 'X', 'P', 'M', 2});
+    // truncated
+    byte[] bytes = write(new PluginMetadata());
+    byte[] truncated = new byte[bytes.length - 1];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertInvalid(truncated);
+    // string index out of table
+    assertInvalid(new byte[]{'N', 'X', 'P', 'M', 1, 0, BinaryFormat.METADATA_GROUP_ID, 0, 0});
+  }
+
+  private static void assertInvalid(final byte[] bytes) {
+    try {
+      read(bytes);
+      fail();
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static PluginMetadata roundTrip(final PluginMetadata metadata) throws IOException {
+    return read(write(metadata));
+  }
+
+  private static byte[] write(final PluginMetadata metadata) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new PluginModelBinaryWriter().write(output, metadata);
+    return output.toByteArray();
+  }
+
+  private static PluginMetadata read(final byte[] bytes) throws IOException {
+    return new PluginModelBinaryReader().read(new ByteArrayInputStream(bytes));
+  }
+
+  private static String toXml(final PluginMetadata metadata) throws IOException {
+    StringWriter writer = new StringWriter();
+    new PluginModelXpp3Writer().write(writer, metadata);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2007-2013 Sonatype, Inc. All rights reserved.
+ *
+ * This program is licensed to you under the Apache License Version 2.0,
+ * and you may not use this file except in compliance with the Apache License Version 2.0.
+ * You may obtain a copy of the Apache License Version 2.0 at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the Apache License Version 2.0 is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Apache License Version 2.0 for the specific language governing permissions and limitations there under.
+ */
+
+package org.sonatype.plugins.model.io.xpp3;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonatype.plugins.model.ClasspathDependency;
+import org.sonatype.plugins.model.PluginDependency;
+import org.sonatype.plugins.model.PluginLicense;
+import org.sonatype.plugins.model.PluginMetadata;
+import org.sonatype.sisu.litmus.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.sonatype.plugins.model.io.xpp3.PluginModelXpp3StreamReader.CLASSPATH_DEPENDENCIES;
+import static org.sonatype.plugins.model.io.xpp3.PluginModelXpp3StreamReader.LICENSES;
+import static org.sonatype.plugins.model.io.xpp3.PluginModelXpp3StreamReader.PLUGIN_DEPENDENCIES;
+
+/**
+ * Tests for {@link PluginModelXpp3StreamReader}.
+ */
+public class PluginModelXpp3StreamReaderTest
+    extends TestSupport
+{
+  private final PluginModelXpp3StreamReader underTest = new PluginModelXpp3StreamReader();
+
+  @Test
+  public void readsSameAsGeneratedReader() throws Exception {
+    String xml = toXml(metadata());
+
+    PluginMetadata read = underTest.read(new StringReader(xml),
+        Arrays.asList(LICENSES, CLASSPATH_DEPENDENCIES, PLUGIN_DEPENDENCIES));
+
+    assertThat(toXml(read), is(toXml(new PluginModelXpp3Reader().read(new StringReader(xml)))));
+    assertThat(toXml(read), is(xml));
+  }
+
+  @Test
+  public void visitsInDocumentOrder() throws Exception {
+    final List<String> events = new ArrayList<String>();
+
+    boolean complete = underTest.read(new StringReader(toXml(metadata())), new PluginMetadataVisitor()
+    {
+      @Override
+      public void visitProperty(final String name, final String value) {
+        events.add(name + "=" + value);
+      }
+
+      @Override
+      public boolean visitSection(final String name) {
+        events.add(name);
+        return !CLASSPATH_DEPENDENCIES.equals(name);
+      }
+
+      @Override
+      public void visitSectionEnd(final String name) {
+        events.add("/" + name);
+      }
+
+      @Override
+      public void visitLicense(final PluginLicense license) {
+        events.add(license.getType());
+      }
+
+      @Override
+      public void visitClasspathDependency(final ClasspathDependency dependency) {
+        events.add(dependency.getArtifactId());
+      }
+
+      @Override
+      public void visitPluginDependency(final PluginDependency dependency) {
+        events.add(dependency.getArtifactId() + (dependency.isOptional() ? "?" : ""));
+      }
+    });
+
+    assertThat(complete, is(true));
+    assertThat(events, is(Arrays.asList(
+        "modelVersion=1.1.0", "groupId=org.example", "artifactId=example-plugin", "version=1.0",
+        "name=Example Plugin", "applicationId=nexus",
+        LICENSES, "ASL2", "/" + LICENSES,
+        CLASSPATH_DEPENDENCIES,
+        PLUGIN_DEPENDENCIES, "other-plugin?", "required-plugin", "/" + PLUGIN_DEPENDENCIES
+    )));
+  }
+
+  @Test
+  public void stopsAfterProperties() throws Exception {
+    String xml = toXml(metadata());
+    // anything after the first list is never looked at
+    String truncated = xml.substring(0, xml.indexOf("<licenses>") + "<licenses>".length()) + "<broken";
+
+    PluginMetadata read = underTest.read(new StringReader(truncated), Collections.<String>emptyList());
+
+    assertThat(read.getArtifactId(), is("example-plugin"));
+    assertThat(read.getApplicationId(), is("nexus"));
+    assertThat(read.getLicenses().isEmpty(), is(true));
+  }
+
+  @Test
+  public void skipsUnselectedLists() throws Exception {
+    String xml = toXml(metadata());
+    String truncated = xml.substring(0, xml.indexOf("</pluginDependencies>") + "</pluginDependencies>".length())
+        + "<broken";
+
+    PluginMetadata read = underTest.read(new StringReader(truncated), Collections.singleton(PLUGIN_DEPENDENCIES));
+
+    assertThat(read.getLicenses().isEmpty(), is(true));
+    assertThat(read.getClasspathDependencies().isEmpty(), is(true));
+    assertThat(read.getPluginDependencies().size(), is(2));
+    assertThat(read.getPluginDependencies().get(0).getArtifactId(), is("other-plugin"));
+    assertThat(read.getPluginDependencies().get(0).isOptional(), is(true));
+  }
+
+  @Test
+  public void ignoresUnknownElements() throws Exception {
+    String xml = "<plugin><future><nested>x</nested></future><groupId> g </groupId>"
+        + "<pluginDependencies><other/><pluginDependency><artifactId>a</artifactId><extra>e</extra>"
+        + "</pluginDependency></pluginDependencies></plugin>";
+
+    PluginMetadata read = underTest.read(new StringReader(xml), Collections.singleton(PLUGIN_DEPENDENCIES));
+
+    assertThat(read.getGroupId(), is("g"));
+    assertThat(read.getPluginDependencies().size(), is(1));
+    assertThat(read.getPluginDependencies().get(0).getArtifactId(), is("a"));
+  }
+
+  private static PluginMetadata metadata() {
+    PluginMetadata metadata = new PluginMetadata();
+    metadata.setGroupId("org.example");
+    metadata.setArtifactId("example-plugin");
+    metadata.setVersion("1.0");
+    metadata.setName("Example Plugin");
+    metadata.setApplicationId("nexus");
+
+    PluginLicense license = new PluginLicense();
+    license.setType("ASL2");
+    license.setUrl("http://www.apache.org/licenses/LICENSE-2.0");
+    metadata.addLicense(license);
+
+    for (int i = 0; i < 3; i++) {
+      ClasspathDependency dependency = new ClasspathDependency();
+      dependency.setGroupId("org.example");
+      dependency.setArtifactId("lib-" + i);
+      dependency.setVersion("1.0");
+      dependency.setType("jar");
+      dependency.setHasComponents(i == 0);
+      dependency.setShared(i == 1);
+      if (i == 2) {
+        dependency.addPackageName("org.example.lib");
+        dependency.addPackageName("org.example.lib.spi");
+        dependency.setSha256("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        dependency.setSize(1024);
+      }
+      metadata.addClasspathDependency(dependency);
+    }
+
+    PluginDependency optional = new PluginDependency();
+    optional.setGroupId("org.example");
+    optional.setArtifactId("other-plugin");
+    optional.setVersion("1.0");
+    optional.setOptional(true);
+    metadata.addPluginDependency(optional);
+    PluginDependency required = new PluginDependency();
+    required.setGroupId("org.example");
+    required.setArtifactId("required-plugin");
+    required.setVersion("1.0");
+    metadata.addPluginDependency(required);
+
+    return metadata;
+  }
+
+  private static String toXml(final PluginMetadata metadata) throws Exception {
+    StringWriter writer = new StringWriter();
+    new PluginModelXpp3Writer().write(writer, metadata);
+    return writer.toString();
+  }
+}